@@ -0,0 +1,59 @@
+package org.dehydrogenaza.benchmarks;
+
+import org.dehydrogenaza.data.DataProvider;
+import org.dehydrogenaza.data.Form;
+import org.dehydrogenaza.data.VaccinationCalendar;
+import org.dehydrogenaza.data.datasources.FakeVaccinationSource;
+import org.dehydrogenaza.data.datasources.FreeVaccinationSource;
+import org.dehydrogenaza.data.datasources.IVaccineSource;
+
+/**
+ * Shared fixtures for the benchmarks.
+ */
+final class BenchmarkData {
+    static final String DATE_OF_BIRTH = "2021-05-14";
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Returns a source by name: <i>free</i>, <i>fake</i>, or <i>synthetic-N</i> (a {@link SyntheticVaccinationSource}
+     * with roughly N doses in total).
+     */
+    static IVaccineSource source(String name) {
+        if (name.equals("free")) {
+            return new FreeVaccinationSource();
+        }
+        if (name.equals("fake")) {
+            return new FakeVaccinationSource();
+        }
+        if (name.startsWith("synthetic-")) {
+            int doses = Integer.parseInt(name.substring("synthetic-".length()));
+            //a scheme is limited to DataProvider.MAX_VACCINES, so larger calendars get more doses per vaccine
+            int vaccines = Math.max(1, Math.min(doses / 8, DataProvider.MAX_VACCINES));
+            return new SyntheticVaccinationSource(vaccines, (doses + vaccines - 1) / vaccines);
+        }
+        throw new IllegalArgumentException("Unknown source: " + name);
+    }
+
+    /**
+     * Creates a submitted {@link Form} for the given source, with form-data handlers already applied, ready to be
+     * passed to {@link VaccinationCalendar#VaccinationCalendar(Form)}.
+     */
+    static Form submittedForm(IVaccineSource source) {
+        DataProvider dataProvider = new DataProvider(source);
+        Form form = new Form(dataProvider);
+        form.setDateOfBirth(DATE_OF_BIRTH);
+        form.setLicenseAccepted(true);
+        form.submit();
+        dataProvider.applyFormDataHandlers(form);
+        return form;
+    }
+
+    /**
+     * Creates a calendar with roughly the given number of doses.
+     */
+    static VaccinationCalendar calendarWithDoses(int doses) {
+        return new VaccinationCalendar(submittedForm(source("synthetic-" + doses)));
+    }
+}
@@ -0,0 +1,34 @@
+package org.dehydrogenaza.benchmarks;
+
+import org.dehydrogenaza.data.Form;
+import org.dehydrogenaza.data.VaccinationCalendar;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction of a whole {@link VaccinationCalendar} from a submitted {@link Form}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CalendarBuildBenchmark {
+
+    @Param({"free", "fake", "synthetic-256", "synthetic-4096"})
+    public String source;
+
+    private Form form;
+
+    @Setup
+    public void setUp() {
+        form = BenchmarkData.submittedForm(BenchmarkData.source(source));
+    }
+
+    @Benchmark
+    public VaccinationCalendar build() {
+        return new VaccinationCalendar(form);
+    }
+}
@@ -0,0 +1,75 @@
+package org.dehydrogenaza.benchmarks;
+
+import org.dehydrogenaza.data.Dose;
+import org.dehydrogenaza.data.ScheduleForDay;
+import org.dehydrogenaza.data.VaccinationCalendar;
+import org.dehydrogenaza.data.utils.TinyDate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single edits ({@link VaccinationCalendar#updateDate}, {@link VaccinationCalendar#updateDose}) on calendars of
+ * growing size.
+ * <p>The synthetic calendars only use every 4th day, so every edit moves a day or dose to the (free) following day
+ * and the next edit of the same row moves it back. The shape of the calendar stays the same throughout an
+ * iteration.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CalendarEditBenchmark {
+
+    /**
+     * Approximate number of doses in the calendar.
+     */
+    @Param({"16", "256", "4096"})
+    public int doses;
+
+    private final int startDay = TinyDate.of(BenchmarkData.DATE_OF_BIRTH).toEpochDay();
+
+    private VaccinationCalendar calendar;
+    private ScheduleForDay[] days;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        calendar = BenchmarkData.calendarWithDoses(doses);
+        List<ScheduleForDay> sorted = calendar.get();
+        days = sorted.toArray(new ScheduleForDay[0]);
+        next = 0;
+    }
+
+    @Benchmark
+    public List<ScheduleForDay> updateDate() {
+        ScheduleForDay date = days[next++ % days.length];
+        date.setTempDate(neighbour(date.getEpochDay()));
+        calendar.updateDate(date);
+        return calendar.get();
+    }
+
+    @Benchmark
+    public List<ScheduleForDay> updateDose() {
+        int index = next++ % days.length;
+        ScheduleForDay date = days[index];
+        Dose dose = date.getDoses().get(0);
+        dose.setTempDate(neighbour(dose.getDate().toEpochDay()));
+        calendar.updateDose(date, dose);
+
+        //the moved dose now lives alone on its new day; track that day for the next round
+        days[index] = calendar.getDate(TinyDate.of(dose.getTempDate()).toEpochDay());
+        return calendar.get();
+    }
+
+    /**
+     * Scheduled days move forward by one, moved days move back by one.
+     */
+    private String neighbour(int epochDay) {
+        int target = ((epochDay - startDay) & 3) == 0 ? epochDay + 1 : epochDay - 1;
+        return TinyDate.ofEpochDay(target).toString();
+    }
+}
@@ -0,0 +1,156 @@
+package org.dehydrogenaza.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Closed-loop load test of the calendar endpoint (<code>org.dehydrogenaza.server.CalendarServlet</code>) running in
+ * a local Tomcat. Not a JMH benchmark: each of N threads sends requests back to back for a fixed time, after a warmup,
+ * and the latencies of all requests are merged to report percentiles and throughput.
+ * <pre>
+ * mvn tomcat7:run
+ * mvn -P benchmarks compile exec:exec -Dbenchmark.main=org.dehydrogenaza.benchmarks.CalendarLoadTest \
+ *     -Dbenchmark.args="http://localhost:8080/api/calendar 16 30 10"
+ * </pre>
+ * <p>Arguments (all optional): endpoint URL, number of threads, measured seconds, warmup seconds. Requests use random
+ * dates of birth and selections, and alternate between JSON and CSV.</p>
+ */
+public class CalendarLoadTest {
+    private static final String[] SELECTIONS = {
+            null,
+            "BCG,HBV,DTP,IPV,Hib,PCV,RV,MMR",
+            "BCG,HBV,DTP,IPV,Hib,PCV,RV,MMR,MenB,MenC",
+            "BCG,HBV,DTP,MMR,MenB,MenACWY",
+    };
+
+    public static void main(String[] args) throws Exception {
+        String endpoint = args.length > 0 ? args[0] : "http://localhost:8080/api/calendar";
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int warmupSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        System.out.printf("%s: %d threads, %d s warmup, %d s measured%n", endpoint, threads, warmupSeconds, seconds);
+        run(endpoint, threads, warmupSeconds, false);
+        run(endpoint, threads, seconds, true);
+    }
+
+    private static void run(String endpoint, int threads, int seconds, boolean report) throws InterruptedException {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Worker> workers = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            Worker worker = new Worker(endpoint, deadline, done);
+            workers.add(worker);
+            new Thread(worker, "load-" + t).start();
+        }
+        done.await();
+        if (!report) {
+            return;
+        }
+
+        int total = 0;
+        int errors = 0;
+        for (Worker worker : workers) {
+            total += worker.count;
+            errors += worker.errors;
+        }
+        long[] latencies = new long[total];
+        int n = 0;
+        for (Worker worker : workers) {
+            System.arraycopy(worker.latencies, 0, latencies, n, worker.count);
+            n += worker.count;
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("requests: %d (%d errors), throughput: %.0f req/s%n",
+                total, errors, total / (double) seconds);
+        if (total > 0) {
+            System.out.printf("latency [ms]: p50 %.3f, p90 %.3f, p99 %.3f, p99.9 %.3f, max %.3f%n",
+                    percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+                    percentile(latencies, 99.9), latencies[total - 1] / 1e6);
+        }
+    }
+
+    /**
+     * Nearest-rank percentile of sorted latencies, in milliseconds.
+     */
+    private static double percentile(long[] sorted, double percent) {
+        int rank = (int) Math.ceil(percent / 100 * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    private static class Worker implements Runnable {
+        private final String endpoint;
+        private final long deadline;
+        private final CountDownLatch done;
+        private long[] latencies = new long[1 << 14];
+        private int count;
+        private int errors;
+
+        private Worker(String endpoint, long deadline, CountDownLatch done) {
+            this.endpoint = endpoint;
+            this.deadline = deadline;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[8192];
+            try {
+                while (System.nanoTime() < deadline) {
+                    URL url = new URL(endpoint + "?" + randomQuery());
+                    long start = System.nanoTime();
+                    try {
+                        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                        int status = connection.getResponseCode();
+                        //read the body fully, so that the connection is kept alive and reused
+                        try (InputStream in = status < 400
+                                ? connection.getInputStream()
+                                : connection.getErrorStream()) {
+                            while (in != null && in.read(buffer) >= 0) {
+                                //discard
+                            }
+                        }
+                        if (status != 200) {
+                            errors++;
+                        }
+                    } catch (IOException e) {
+                        errors++;
+                    }
+                    record(System.nanoTime() - start);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                done.countDown();
+            }
+        }
+
+        private void record(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+
+        private static String randomQuery() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            String dob = String.format("%04d-%02d-%02d",
+                    2005 + random.nextInt(18), 1 + random.nextInt(12), 1 + random.nextInt(28));
+            StringBuilder query = new StringBuilder("dob=").append(dob);
+            String selection = SELECTIONS[random.nextInt(SELECTIONS.length)];
+            if (selection != null) {
+                query.append("&vaccines=").append(selection);
+            }
+            query.append("&format=").append(random.nextBoolean() ? "json" : "csv");
+            return query.toString();
+        }
+    }
+}
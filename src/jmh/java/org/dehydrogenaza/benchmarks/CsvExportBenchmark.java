@@ -0,0 +1,35 @@
+package org.dehydrogenaza.benchmarks;
+
+import org.dehydrogenaza.data.ScheduleForDay;
+import org.dehydrogenaza.data.utils.CSVWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CSV export, as used by the "Eksport do pliku" button.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvExportBenchmark {
+
+    @Param({"16", "256", "4096"})
+    public int doses;
+
+    private List<ScheduleForDay> dates;
+
+    @Setup
+    public void setUp() {
+        dates = BenchmarkData.calendarWithDoses(doses).get();
+    }
+
+    @Benchmark
+    public String getDataURI() {
+        return CSVWriter.getDataURI(dates);
+    }
+}
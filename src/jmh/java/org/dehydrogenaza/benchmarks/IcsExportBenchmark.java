@@ -0,0 +1,36 @@
+package org.dehydrogenaza.benchmarks;
+
+import org.dehydrogenaza.data.ScheduleForDay;
+import org.dehydrogenaza.data.utils.ICalendarWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The iCalendar export, as used by the "Eksport do kalendarza" button.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IcsExportBenchmark {
+    private static final long STAMP = 1_620_950_400_000L;
+
+    @Param({"16", "256", "4096"})
+    public int doses;
+
+    private List<ScheduleForDay> dates;
+
+    @Setup
+    public void setUp() {
+        dates = BenchmarkData.calendarWithDoses(doses).get();
+    }
+
+    @Benchmark
+    public String getDataURI() {
+        return ICalendarWriter.getDataURI(dates, BenchmarkData.DATE_OF_BIRTH, STAMP);
+    }
+}
@@ -0,0 +1,129 @@
+package org.dehydrogenaza.benchmarks;
+
+import org.dehydrogenaza.batch.CapacityLeveller;
+import org.dehydrogenaza.batch.LevellingStats;
+import org.dehydrogenaza.data.DataProvider;
+import org.dehydrogenaza.data.Form;
+import org.dehydrogenaza.data.ScheduleForDay;
+import org.dehydrogenaza.data.VaccinationCalendar;
+import org.dehydrogenaza.data.VaccineChoice;
+import org.dehydrogenaza.data.datasources.FreeVaccinationSource;
+import org.dehydrogenaza.data.utils.TinyDate;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs the {@link CapacityLeveller} on a synthetic registry, and reports the peak clinic-day load before and after
+ * levelling, together with the time it took. Not a JMH benchmark: levelling a whole registry takes seconds, and the
+ * load reduction matters as much as the time.
+ * <pre>
+ * mvn -P benchmarks compile exec:exec -Dbenchmark.main=org.dehydrogenaza.benchmarks.LevellingHarness \
+ *     -Dbenchmark.args="100000 50 14"
+ * </pre>
+ * <p>Arguments (all optional): number of children, number of clinics, days a dose may be postponed, visits a day per
+ * clinic (by default, 10% above the average load of the busiest four weeks of any clinic). Children are born on
+ * random days of a single year and first vaccinated on their clinic's weekly vaccination day, with the free scheme
+ * and a random choice of the optional vaccines.</p>
+ */
+public class LevellingHarness {
+    private static final long SEED = 42;
+    /**
+     * The length of the period over which the load of the busiest clinic is averaged, to choose the capacity.
+     */
+    private static final int BUSY_DAYS = 28;
+
+    public static void main(String[] args) {
+        int patients = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int clinics = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int daysLater = args.length > 2 ? Integer.parseInt(args[2]) : 14;
+
+        long buildStart = System.nanoTime();
+        VaccinationCalendar[] calendars = new VaccinationCalendar[patients];
+        int[] clinicOf = new int[patients];
+        generate(calendars, clinicOf, clinics);
+        int firstDay = Integer.MAX_VALUE;
+        int lastDay = Integer.MIN_VALUE;
+        for (VaccinationCalendar calendar : calendars) {
+            List<ScheduleForDay> dates = calendar.get();
+            firstDay = Math.min(firstDay, dates.get(0).getEpochDay());
+            lastDay = Math.max(lastDay, dates.get(dates.size() - 1).getEpochDay());
+        }
+        int[][] load = new int[clinics][lastDay - firstDay + 1];
+        long visits = 0;
+        for (int p = 0; p < patients; p++) {
+            for (ScheduleForDay date : calendars[p].get()) {
+                load[clinicOf[p]][date.getEpochDay() - firstDay]++;
+                visits++;
+            }
+        }
+        double averageLoad = busiestAverage(load);
+        int capacity = args.length > 3
+                ? Integer.parseInt(args[3])
+                : Math.max(1, (int) Math.ceil(averageLoad * 1.1));
+        System.out.printf("%d children in %d clinics, %d visits built in %.3f s; capacity %d visits/day "
+                        + "(busiest %d days: %.2f a day), doses may be postponed by %d days%n",
+                patients, clinics, visits, (System.nanoTime() - buildStart) / 1e9, capacity, BUSY_DAYS, averageLoad,
+                daysLater);
+
+        //the first run warms up the JIT, the second is reported
+        for (int run = 0; run < 2; run++) {
+            long start = System.nanoTime();
+            CapacityLeveller leveller = new CapacityLeveller(0, daysLater, capacity);
+            for (int p = 0; p < patients; p++) {
+                leveller.addPatient("clinic-" + clinicOf[p], calendars[p]);
+            }
+            long added = System.nanoTime() - start;
+            LevellingStats stats = leveller.level();
+            if (run == 1) {
+                System.out.printf("adding children: %.3f s%n", added / 1e9);
+                System.out.println(stats);
+            }
+        }
+    }
+
+    /**
+     * @return
+     *          the highest average number of visits a day of any clinic, over any {@link #BUSY_DAYS} days.
+     */
+    private static double busiestAverage(int[][] load) {
+        int busiest = 0;
+        for (int[] days : load) {
+            int sum = 0;
+            for (int day = 0; day < days.length; day++) {
+                sum += days[day];
+                if (day >= BUSY_DAYS) {
+                    sum -= days[day - BUSY_DAYS];
+                }
+                busiest = Math.max(busiest, sum);
+            }
+        }
+        return busiest / (double) BUSY_DAYS;
+    }
+
+    private static void generate(VaccinationCalendar[] calendars, int[] clinicOf, int clinics) {
+        Random random = new Random(SEED);
+        DataProvider dataProvider = new DataProvider(new FreeVaccinationSource());
+        Form form = new Form(dataProvider);
+        form.setLicenseAccepted(true);
+        int firstBirth = new TinyDate("2021-01-01").toEpochDay();
+
+        for (int p = 0; p < calendars.length; p++) {
+            int birth = firstBirth + random.nextInt(365);
+            int clinic = random.nextInt(clinics);
+            //each clinic starts new children on its own weekly vaccination day, so their visits bunch up
+            int firstVaccination = birth + Math.floorMod(clinic - birth, 7);
+            form.setDateOfBirth(TinyDate.ofEpochDay(birth).toString());
+            form.setDateOfFirstVaccination(TinyDate.ofEpochDay(firstVaccination).toString());
+            form.submit();
+            for (VaccineChoice vax : form.getVaccines()) {
+                if (!vax.getType().isSelectedByDefault()) {
+                    vax.setSelected(random.nextInt(4) == 0);
+                }
+            }
+            dataProvider.applyFormDataHandlers(form);
+            calendars[p] = new VaccinationCalendar(form);
+            clinicOf[p] = clinic;
+        }
+    }
+}
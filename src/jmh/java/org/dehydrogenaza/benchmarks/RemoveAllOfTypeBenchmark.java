@@ -0,0 +1,38 @@
+package org.dehydrogenaza.benchmarks;
+
+import org.dehydrogenaza.data.VaccinationCalendar;
+import org.dehydrogenaza.data.VaccineType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removal of a whole vaccine series. Removal is destructive, so a fresh calendar is built before every invocation
+ * (outside of the measured time).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RemoveAllOfTypeBenchmark {
+
+    @Param({"16", "256", "4096"})
+    public int doses;
+
+    private VaccinationCalendar calendar;
+    private VaccineType type;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        calendar = BenchmarkData.calendarWithDoses(doses);
+        type = calendar.get().get(0).getDoses().get(0).getType();
+    }
+
+    @Benchmark
+    public VaccinationCalendar removeAllOfType() {
+        calendar.removeAllOfType(type);
+        return calendar;
+    }
+}
@@ -0,0 +1,59 @@
+package org.dehydrogenaza.benchmarks;
+
+import org.dehydrogenaza.data.Dose;
+import org.dehydrogenaza.data.ScheduleForDay;
+import org.dehydrogenaza.data.VaccinationCalendar;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A render pass of the calendar section: every row-level property the template binds ({@code inBounds},
+ * {@code setToConfirm}, {@code setToRemove}) is read for every day and every dose, after the user typed into a single
+ * input field. Only that one row should be re-evaluated; the rest return their cached values.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+    /**
+     * Approximate number of doses in the calendar.
+     */
+    @Param({"16", "256", "4096"})
+    public int doses;
+
+    private VaccinationCalendar calendar;
+    private Dose edited;
+    private String[] inputs;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        calendar = BenchmarkData.calendarWithDoses(doses);
+        edited = calendar.get().get(0).getDoses().get(0);
+        inputs = new String[]{edited.getDate().addDays(1).toString(), edited.getDate().toString()};
+        next = 0;
+    }
+
+    @Benchmark
+    public int renderAfterOneInput() {
+        edited.setTempDate(inputs[next++ & 1]);
+
+        int visible = 0;
+        for (ScheduleForDay date : calendar.get()) {
+            if (date.isInBounds()) visible++;
+            if (date.isSetToConfirm()) visible++;
+            if (date.isSetToRemove()) visible++;
+            for (Dose dose : date.getDoses()) {
+                if (dose.isInBounds()) visible++;
+                if (dose.isSetToConfirm()) visible++;
+                if (dose.isSetToRemove()) visible++;
+            }
+        }
+        return visible;
+    }
+}
@@ -0,0 +1,90 @@
+package org.dehydrogenaza.benchmarks;
+
+import org.dehydrogenaza.data.ScheduleSolver;
+import org.dehydrogenaza.data.VaccineCatalog;
+import org.dehydrogenaza.data.VaccineType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solving a schedule with the {@link ScheduleSolver}: once from scratch, and again after pinning (and, on the next
+ * call, unpinning) a single dose. Every series has 4 doses with windows and minimum intervals, and avoids the day of
+ * the series before it. Re-solving after one change should stay flat as the number of series grows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScheduleSolverBenchmark {
+    private static final int DOSES = 4;
+    private static final int START_DAY = 18_761;
+
+    /**
+     * Number of vaccine series in the schedule.
+     */
+    @Param({"16", "256", "4096"})
+    public int series;
+
+    private VaccineType[] types;
+    private int[][] offsets;
+    private ScheduleSolver solver;
+    private int pinnedSeries;
+    private boolean pinned;
+
+    @Setup(Level.Trial)
+    public void setUpTypes() {
+        VaccineCatalog.Builder catalog = new VaccineCatalog.Builder();
+        types = new VaccineType[series];
+        offsets = new int[series][DOSES];
+        for (int s = 0; s < series; s++) {
+            for (int d = 0; d < DOSES; d++) {
+                //the same few days for many series, so that separations have to move doses
+                offsets[s][d] = 7 * ((s % 5) + d * 9);
+            }
+            types[s] = new VaccineType.Builder(catalog)
+                    .withDisease("synthetic " + s)
+                    .withDateOffsets(offsets[s])
+                    .withDoseWindows(new int[]{0, 3, 3, 7}, new int[]{7, 14, 14, 28})
+                    .withMinimumIntervals(28, 28, 56)
+                    .create("V" + s, true);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpSolver() {
+        solver = build();
+        solver.solve();
+        pinnedSeries = series / 2;
+        pinned = false;
+    }
+
+    private ScheduleSolver build() {
+        ScheduleSolver built = new ScheduleSolver(START_DAY, 0, 14);
+        for (int s = 0; s < series; s++) {
+            built.addSeries(types[s], offsets[s]);
+        }
+        for (int s = 1; s < series; s++) {
+            built.separate(s, s - 1);
+        }
+        return built;
+    }
+
+    @Benchmark
+    public int buildAndSolve() {
+        return build().solve();
+    }
+
+    @Benchmark
+    public int resolveAfterPin() {
+        if (pinned) {
+            solver.unpin(pinnedSeries, 1);
+        } else {
+            solver.pin(pinnedSeries, 1, solver.getLatest(pinnedSeries, 1));
+        }
+        pinned = !pinned;
+        return solver.solve();
+    }
+}
@@ -0,0 +1,44 @@
+package org.dehydrogenaza.benchmarks;
+
+import org.dehydrogenaza.data.VaccineCatalog;
+import org.dehydrogenaza.data.VaccineType;
+import org.dehydrogenaza.data.datasources.IVaccineSource;
+
+/**
+ * Generates a scheme of arbitrary size, so that benchmarks can scale calendars far beyond the real schemes. Every
+ * vaccine is selected, and all dose offsets are <strong>multiples of 4</strong>, so the days right after the
+ * scheduled ones are always free (which lets benchmarks move days there and back without merging them).
+ * <p>Unlike the real sources, a new catalog is built on every call.</p>
+ */
+public class SyntheticVaccinationSource implements IVaccineSource {
+    private final int vaccineCount;
+    private final int dosesPerVaccine;
+
+    /**
+     * @param   vaccineCount
+     *          number of {@link VaccineType}s in the scheme.
+     * @param   dosesPerVaccine
+     *          number of doses of each VaccineType.
+     */
+    public SyntheticVaccinationSource(int vaccineCount, int dosesPerVaccine) {
+        this.vaccineCount = vaccineCount;
+        this.dosesPerVaccine = dosesPerVaccine;
+    }
+
+    @Override
+    public VaccineCatalog getCatalog() {
+        VaccineCatalog.Builder vaccines = new VaccineCatalog.Builder();
+        for (int v = 0; v < vaccineCount; v++) {
+            int[] offsets = new int[dosesPerVaccine];
+            for (int d = 0; d < dosesPerVaccine; d++) {
+                //spread doses over ~20 years, with some days shared between vaccines
+                offsets[d] = 4 * ((v * 37 + d * 101) % 3650);
+            }
+            vaccines.add(new VaccineType.Builder(vaccines)
+                    .withDisease("synthetic " + v)
+                    .withDateOffsets(offsets)
+                    .create("V" + v, true));
+        }
+        return vaccines.build();
+    }
+}
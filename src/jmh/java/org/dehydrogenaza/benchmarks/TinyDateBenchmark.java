@@ -0,0 +1,60 @@
+package org.dehydrogenaza.benchmarks;
+
+import org.dehydrogenaza.data.utils.DateCodec;
+import org.dehydrogenaza.data.utils.TinyDate;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Date arithmetic, parsing and formatting, which sit on every scheduling path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TinyDateBenchmark {
+
+    /**
+     * Covers a same-month offset, the usual visit offsets and the longest DTP offset.
+     */
+    @Param({"5", "390", "6935"})
+    public int offset;
+
+    private TinyDate date;
+    private String isoDate;
+
+    @Setup
+    public void setUp() {
+        date = TinyDate.of(BenchmarkData.DATE_OF_BIRTH);
+        isoDate = BenchmarkData.DATE_OF_BIRTH;
+    }
+
+    @Benchmark
+    public TinyDate addDays() {
+        return date.addDays(offset);
+    }
+
+    @Benchmark
+    public TinyDate parse() {
+        return TinyDate.of(isoDate);
+    }
+
+    /**
+     * Validation alone, as done by the form and the input validator: no objects are created.
+     */
+    @Benchmark
+    public int validate() {
+        return DateCodec.parse(isoDate);
+    }
+
+    /**
+     * Formatting a fresh date; repeated calls on the same TinyDate return its cached String.
+     */
+    @Benchmark
+    public String format() {
+        return date.addDays(offset).toString();
+    }
+}
@@ -6,6 +6,9 @@ import org.dehydrogenaza.data.utils.*;
 import org.teavm.flavour.templates.BindTemplate;
 import org.teavm.flavour.templates.Templates;
 import org.teavm.flavour.widgets.ApplicationTemplate;
+import org.teavm.jso.browser.Storage;
+import org.teavm.jso.browser.Window;
+import org.teavm.jso.dom.html.HTMLElement;
 
 import java.util.List;
 
@@ -25,7 +28,7 @@ public class Client extends ApplicationTemplate {
     /**
      * The source of vaccination data. Currently, just a mock, but will be read probably from a JSON file later.
      */
-    private final DataProvider dataProvider = new DataProvider(new FakeVaccinationSource());
+    private final DataProvider dataProvider = new DataProvider("0");
 
     /**
      * The input form: date of birth, date of first vaccination, choice of vaccinations, agreements etc.
@@ -37,6 +40,64 @@ public class Client extends ApplicationTemplate {
      */
     private VaccinationCalendar calendar = new VaccinationCalendar();
 
+    /**
+     * Recently generated calendars, so that submitting the same input again (for example with "⟳ Od nowa") doesn't
+     * run the generator again.
+     */
+    private final CalendarCache calendarCache = new CalendarCache(16);
+
+    /**
+     * Saves the {@link #calendar} (and every edit made to it) in the browser, so that it survives a page reload.
+     */
+    private final CalendarJournal journal =
+            new CalendarJournal(new LocalStorageJournalStore(Storage.getLocalStorage(), "kalendarz"), 64);
+
+    /**
+     * The last result of {@link #getCSVExportURI()}, for {@link #csvCalendar} at {@link #csvVersion}. The URI is
+     * bound to the page, so it's requested on every render, but only needs rebuilding after the calendar changed.
+     */
+    private String csvExportURI;
+    private VaccinationCalendar csvCalendar;
+    private int csvVersion;
+
+    /**
+     * The last result of {@link #getICalendarExportURI()}, for {@link #icsCalendar} at {@link #icsVersion} (as with
+     * the CSV export).
+     */
+    private String icsExportURI;
+    private VaccinationCalendar icsCalendar;
+    private int icsVersion;
+
+    /**
+     * Calendars of siblings, added one by one from Section 3, and merged into a single timeline of visits for export.
+     * Each child's calendar is a copy, so starting over for the next child doesn't change it.
+     */
+    private final HouseholdTimeline household = new HouseholdTimeline();
+
+    /**
+     * The name of the next child added to the {@link #household}. <strong>Bidirectionally bound to an HTML input
+     * field.</strong>
+     */
+    private String householdChildName = "";
+
+    /**
+     * The last result of {@link #getHouseholdCSVExportURI()}, cleared whenever the {@link #household} changes.
+     */
+    private String householdExportURI;
+
+    /**
+     * The part of the {@link #calendar} rendered in Section 3. Multi-year schedules with every optional vaccine
+     * selected have hundreds of rows (each with its own date and dose editors), so only the rows near the viewport are
+     * rendered, and the window follows the page as it scrolls (see {@link #moveCalendarWindow()}).
+     */
+    private final CalendarWindow calendarWindow = new CalendarWindow(24, 72, 6);
+
+    /**
+     * Whether {@link #moveCalendarWindow()} is already scheduled for the next animation frame, so that a burst of
+     * scroll events moves the window once.
+     */
+    private boolean calendarWindowPending;
+
 
     // TODO: Remove test utility
 //    /**
@@ -48,14 +109,30 @@ public class Client extends ApplicationTemplate {
      * The current state of the app. Determines which actions can be taken and which elements of the page should be
      * visible/active etc.
      */
-    private static DisplayState displayState = DisplayState.FORM;
+    private DisplayState displayState = DisplayState.FORM;
+
+    /**
+     * Whether the scheme was switched while the {@link #calendar} was shown. Switching resets the selection and the
+     * offsets to the new scheme's defaults (without the form data handlers), so the calendar is no longer synced with
+     * the selection (see {@link #syncCalendar()}) until the form is submitted again.
+     */
+    private boolean schemeChanged;
 
 
     /**
-     * Not necessary for now, but potentially can be replaced by a <code>Client(DataProvider)</code> constructor.
+     * Restores the calendar saved by the {@link #journal}, if there is one, and shows it right away.
      */
     public Client() {
-        InputValidator.init(form);
+        VaccinationCalendar restored = journal.restore(form);
+        if (restored != null) {
+            calendar = restored;
+            form.setLicenseAccepted(true);
+            displayState = DisplayState.CALENDAR;
+        }
+
+        Window window = Window.current();
+        window.addEventListener("scroll", event -> scheduleCalendarWindow());
+        window.addEventListener("resize", event -> scheduleCalendarWindow());
     }
 
 
@@ -63,7 +140,7 @@ public class Client extends ApplicationTemplate {
         Templates.bind(new Client(), "application-content");
     }
 
-    public List<VaccineType> getVaccines() {
+    public List<VaccineChoice> getVaccines() {
         return dataProvider.getVaccines();
     }
 
@@ -97,33 +174,204 @@ public class Client extends ApplicationTemplate {
     /**
      * Finalizes initial user input in the main {@link Form}, queries its validity, and sets the application's state
      * accordingly. If everything is OK, the state should become {@link DisplayState#CALENDAR} and the {@link #calendar}
-     * field will be set to a new {@link VaccinationCalendar} instance.
+     * field will be set to a new {@link VaccinationCalendar} instance (possibly a copy from the
+     * {@link #calendarCache}).
      */
     public void submit() {
         displayState = form.submit();
 //        testLogger = "submitted";
 
         if (displayState == DisplayState.CALENDAR) {
-            getVaccines().forEach(vax -> vax.applyFormDataHandlers(form));
-            calendar = new VaccinationCalendar(form);
+            schemeChanged = false;
+            dataProvider.applyFormDataHandlers(form);
+            calendar = calendarCache.get(form);
+            journal.start(calendar);
+            calendarWindow.reset();
+            scheduleCalendarWindow();
         }
     }
 
+    /**
+     * <strong>Bound to the HTML list of scheduled dates</strong> (Section 3).
+     * @return
+     *          the current calendar, patched to reflect any changes made to the selection of vaccines since it was
+     *          generated.
+     */
     public List<ScheduleForDay> getCalendar() {
+        syncCalendar();
         return calendar.get();
     }
 
+    /**
+     * <strong>Bound to the HTML list of scheduled dates</strong> (Section 3), which renders only a window of the
+     * calendar (see {@link #calendarWindow}). Everything else (the CSV export, the journal etc.) still uses the whole
+     * {@link #getCalendar()}.
+     * @return
+     *          the rows of the calendar near the viewport.
+     */
+    public List<ScheduleForDay> getVisibleCalendar() {
+        return calendarWindow.slice(getCalendar());
+    }
+
+    /**
+     * <strong>Bound to the HTML list of scheduled dates</strong> (Section 3).
+     * @return
+     *          the height, in pixels, of the space left for the rows above {@link #getVisibleCalendar()}.
+     */
+    public int getCalendarTopSpacer() {
+        return calendarWindow.getTopSpacer(calendar.get().size());
+    }
+
+    /**
+     * <strong>Bound to the HTML list of scheduled dates</strong> (Section 3).
+     * @return
+     *          the height, in pixels, of the space left for the rows below {@link #getVisibleCalendar()}.
+     */
+    public int getCalendarBottomSpacer() {
+        return calendarWindow.getBottomSpacer(calendar.get().size());
+    }
+
+    private void scheduleCalendarWindow() {
+        if (!calendarWindowPending) {
+            calendarWindowPending = true;
+            Window.requestAnimationFrame(timestamp -> moveCalendarWindow());
+        }
+    }
+
+    /**
+     * Moves the {@link #calendarWindow} to the rows of the calendar currently in the viewport, measuring the rows
+     * rendered so far to refine its estimated row height, and renders the page again if the window moved.
+     */
+    private void moveCalendarWindow() {
+        calendarWindowPending = false;
+        if (displayState != DisplayState.CALENDAR) {
+            return;
+        }
+        Window window = Window.current();
+        HTMLElement rows = window.getDocument().getElementById("calendarRows");
+        HTMLElement topSpacer = window.getDocument().getElementById("calendarTopSpacer");
+        HTMLElement bottomSpacer = window.getDocument().getElementById("calendarBottomSpacer");
+        if (rows == null || topSpacer == null || bottomSpacer == null) {
+            return;
+        }
+
+        int renderedHeight = rows.getOffsetHeight() - topSpacer.getOffsetHeight() - bottomSpacer.getOffsetHeight();
+        int offset = -rows.getBoundingClientRect().getTop();
+        if (calendarWindow.update(offset, window.getInnerHeight(), renderedHeight, calendar.get().size())) {
+            Templates.update();
+        }
+    }
+
     /**
      * Creates and returns a URI encoding the current schedule as a CSV file. Used for downloading the calendar as
      * file. <strong>Bound to an HTML download button.</strong>
+     * <p>Rebuilt only when the calendar changed (see {@link VaccinationCalendar#getVersion()}).</p>
      * @return
      *          the current calendar encoded as a URI.
      */
     public String getCSVExportURI() {
-        return CSVWriter.getDataURI(calendar.get());
+        List<ScheduleForDay> dates = getCalendar();
+        if (csvExportURI == null || csvCalendar != calendar || csvVersion != calendar.getVersion()) {
+            csvExportURI = CSVWriter.getDataURI(dates);
+            csvCalendar = calendar;
+            csvVersion = calendar.getVersion();
+        }
+        return csvExportURI;
+    }
+
+    /**
+     * Creates and returns a URI encoding the current schedule as an iCalendar file, for importing into calendar apps.
+     * The events are identified by the ID of the calendar (see {@link VaccinationCalendar#getCalendarID()}), which is
+     * kept through the {@link #journal}, so importing the schedule again after changes updates them.
+     * <strong>Bound to an HTML download button.</strong>
+     * <p>Rebuilt only when the calendar changed (see {@link VaccinationCalendar#getVersion()}).</p>
+     * @return
+     *          the current calendar encoded as a URI.
+     */
+    public String getICalendarExportURI() {
+        List<ScheduleForDay> dates = getCalendar();
+        if (icsExportURI == null || icsCalendar != calendar || icsVersion != calendar.getVersion()) {
+            icsExportURI = ICalendarWriter.getDataURI(dates, calendar.getCalendarID(),
+                    System.currentTimeMillis());
+            icsCalendar = calendar;
+            icsVersion = calendar.getVersion();
+        }
+        return icsExportURI;
+    }
+
+    public String getHouseholdChildName() {
+        return householdChildName;
+    }
+
+    public void setHouseholdChildName(String householdChildName) {
+        this.householdChildName = householdChildName;
+    }
+
+    /**
+     * <strong>Bound to the HTML list of siblings</strong> (Section 3).
+     * @return
+     *          the names of the children added to the {@link #household} so far.
+     */
+    public List<String> getHouseholdChildren() {
+        return household.getChildren();
+    }
+
+    /**
+     * Adds a copy of the current calendar to the {@link #household}, under the name typed in (or a numbered
+     * placeholder), so that the form can be filled in again for a sibling.
+     */
+    public void addToHousehold() {
+        if (displayState != DisplayState.CALENDAR) {
+            return;
+        }
+        String name = householdChildName.trim();
+        if (name.isEmpty()) {
+            name = "Dziecko " + (household.size() + 1);
+        }
+        household.addChild(name, getCalendarCopy());
+        householdChildName = "";
+        householdExportURI = null;
+    }
+
+    /**
+     * Removes every child from the {@link #household}.
+     */
+    public void clearHousehold() {
+        household.clear();
+        householdExportURI = null;
+    }
+
+    /**
+     * Creates and returns a URI encoding the merged timeline of the {@link #household} as a CSV file, with every
+     * dose tagged with its child. <strong>Bound to an HTML download button.</strong>
+     * @return
+     *          the household's visits encoded as a URI.
+     */
+    public String getHouseholdCSVExportURI() {
+        if (householdExportURI == null) {
+            householdExportURI = CSVWriter.getHouseholdDataURI(household);
+        }
+        return householdExportURI;
+    }
+
+    private VaccinationCalendar getCalendarCopy() {
+        syncCalendar();
+        return calendar.copy();
+    }
+
+    /**
+     * Applies vaccines (de)selected after submission to the existing {@link #calendar}, incrementally (see
+     * {@link VaccinationCalendar#syncSelection()}), so that manual edits made to other vaccines are kept. Runs
+     * lazily, when the calendar is read, so that a single click (which may affect several vaccines through the
+     * scheme's constraints) is applied once, in its final state.
+     */
+    private void syncCalendar() {
+        if (displayState == DisplayState.CALENDAR && !schemeChanged) {
+            calendar.syncSelection();
+            journal.recordSelection();
+        }
     }
 
-    // TODO: This is basically a factory method, consider moving it from the Client class.
     /**
      * Sets the current {@link IVaccineSource} to a new {@link VaccinationScheme} based on an input
      * <code>String</code> directly taken from the HTML (in Section 1, the main input form). <strong>Bound to
@@ -132,19 +380,19 @@ public class Client extends ApplicationTemplate {
      *          the ID of the newly selected {@link VaccinationScheme}.
      */
     public void setChosenScheme(String schemeID) {
-        IVaccineSource newSchemeSource;
-        switch (schemeID) {
-            case "0":
-                newSchemeSource = new FakeVaccinationSource();
-                break;
-            case "1":
-                newSchemeSource = new FreeVaccinationSource();
-                break;
-            default:
-                newSchemeSource = new FreeVaccinationSource();
+        dataProvider.changeChosenVaccinationScheme(schemeID);
+        if (displayState == DisplayState.CALENDAR) {
+            schemeChanged = true;
         }
+    }
 
-        dataProvider.changeChosenVaccinationScheme(newSchemeSource);
+    /**
+     * <strong>Bound to a hint in Section 3</strong>, asking to generate the calendar again.
+     * @return
+     *          <code>true</code> if the scheme was switched after the calendar was generated.
+     */
+    public boolean isSchemeChanged() {
+        return schemeChanged;
     }
 
     /**
@@ -157,7 +405,9 @@ public class Client extends ApplicationTemplate {
             return;
         }
         if (date.isInBounds()) {
+            String newDate = date.getTempDate();
             calendar.updateDate(date);
+            journal.recordDateChange(date, newDate);
         }
     }
 
@@ -174,6 +424,7 @@ public class Client extends ApplicationTemplate {
         }
         if (dose.isInBounds()) {
             calendar.updateDose(scheduledDate, dose);
+            journal.recordDoseChange(dose, dose.getTempDate());
         }
     }
 
@@ -186,6 +437,7 @@ public class Client extends ApplicationTemplate {
      */
     public void removeDose(ScheduleForDay scheduledDate, Dose dose) {
         calendar.removeDose(scheduledDate, dose);
+        journal.recordRemoval(dose);
     }
 
     /**
@@ -195,5 +447,6 @@ public class Client extends ApplicationTemplate {
      */
     public void removeAllOfType(VaccineType type) {
         calendar.removeAllOfType(type);
+        journal.recordRemoval(type);
     }
 }
\ No newline at end of file
@@ -0,0 +1,319 @@
+package org.dehydrogenaza.batch;
+
+import org.dehydrogenaza.data.*;
+import org.dehydrogenaza.data.datasources.IVaccineSource;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Headless (JVM-only, never transpiled to JS) generator of {@link VaccinationCalendar}s for whole registry extracts,
+ * one {@link CohortRow} per line.
+ * <p>The input is read in blocks of {@link #blockSize} rows. Each block is split across the cores with a
+ * {@link ForkJoinPool} and rendered to text, chunk by chunk; the chunks are then written to the output in their
+ * original order. While a block is being computed, the previous one is written and the next one is read, so memory
+ * use depends on the block size, not on the size of the input.</p>
+ * <p>The output has one line per scheduled dose:</p>
+ * <pre>rowNumber,YYYY-MM-DD,doseName</pre>
+ * <p>where <i>rowNumber</i> is the 1-based line number of the child in the input, counting every line (empty lines
+ * are skipped, but still counted). Rows that can't be parsed, that name an unknown scheme, or that don't pass
+ * {@link Form} validation are skipped and counted as rejected.</p>
+ */
+public class BatchCalendarGenerator {
+    /**
+     * Default number of rows read into memory at once.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+    /**
+     * Number of rows rendered by a single fork-join leaf task.
+     */
+    private static final int CHUNK_SIZE = 512;
+
+    private final ForkJoinPool pool;
+    private final int blockSize;
+
+    /**
+     * Each worker thread keeps its own {@link Form} (and thus its own {@link DataProvider}, with the selection and
+     * date offsets) per scheme ID, so that no mutable state is shared between threads. The {@link VaccineCatalog}s
+     * themselves are immutable and shared.
+     */
+    private final ThreadLocal<Map<String, Form>> formsPerThread = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * Constructs a generator that uses every available core.
+     */
+    public BatchCalendarGenerator() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param   parallelism
+     *          the number of worker threads.
+     * @param   blockSize
+     *          the number of rows read into memory at once; should be much larger than the number of threads.
+     */
+    public BatchCalendarGenerator(int parallelism, int blockSize) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Command line entry point.
+     * <pre>BatchCalendarGenerator input.csv output.csv [threads]</pre>
+     * @param   args
+     *          path to the input file, path to the output file and, optionally, the number of threads.
+     * @throws  IOException
+     *          if the files can't be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BatchCalendarGenerator <input> <output> [threads]");
+            System.exit(1);
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        BatchCalendarGenerator generator = new BatchCalendarGenerator(threads, DEFAULT_BLOCK_SIZE);
+        try (Reader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+             Writer out = Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            System.out.println(generator.run(in, out));
+        } finally {
+            generator.shutdown();
+        }
+    }
+
+    /**
+     * Generates calendars for every row of <code>input</code> and streams them to <code>output</code>.
+     * @param   input
+     *          the registry extract, one {@link CohortRow} per line.
+     * @param   output
+     *          destination for the generated doses; flushed, but not closed.
+     * @return
+     *          statistics of this run.
+     * @throws  IOException
+     *          if reading or writing fails.
+     */
+    public BatchStats run(Reader input, Writer output) throws IOException {
+        long start = System.nanoTime();
+        BufferedReader reader = input instanceof BufferedReader
+                ? (BufferedReader) input
+                : new BufferedReader(input);
+
+        long rows = 0;
+        long rejected = 0;
+        long doses = 0;
+        long lineNumber = 0;
+
+        Block pending = null;
+        ForkJoinTask<?> pendingTask = null;
+        while (true) {
+            Block next = readBlock(reader, lineNumber);
+            rows += next.lines.size();
+            lineNumber = next.lastLineNumber;
+
+            Block done = pending;
+            if (pendingTask != null) {
+                pendingTask.join();
+            }
+            //the next block is submitted before the finished one is written, so the workers don't wait for the output
+            pending = next.lines.isEmpty() ? null : next;
+            pendingTask = pending == null ? null : pool.submit(new RenderTask(next, 0, next.chunkCount()));
+
+            if (done != null) {
+                done.writeTo(output);
+                rejected += done.countRejected();
+                doses += done.countDoses();
+            }
+            if (pending == null) {
+                break;
+            }
+        }
+        output.flush();
+
+        return new BatchStats(rows, rejected, doses, System.nanoTime() - start, pool.getParallelism());
+    }
+
+    /**
+     * Stops the worker threads. The generator can't be used afterwards.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Reads up to {@link #blockSize} non-empty lines, together with their line numbers.
+     * @param   linesSoFar
+     *          the number of lines read before this block, empty ones included.
+     */
+    private Block readBlock(BufferedReader reader, long linesSoFar) throws IOException {
+        List<String> lines = new ArrayList<>();
+        long[] lineNumbers = new long[Math.min(blockSize, CHUNK_SIZE)];
+        long lineNumber = linesSoFar;
+        String line;
+        while (lines.size() < blockSize && (line = reader.readLine()) != null) {
+            lineNumber++;
+            if (!line.isEmpty()) {
+                if (lines.size() == lineNumbers.length) {
+                    lineNumbers = Arrays.copyOf(lineNumbers, lineNumbers.length * 2);
+                }
+                lineNumbers[lines.size()] = lineNumber;
+                lines.add(line);
+            }
+        }
+        return new Block(lines, lineNumbers, lineNumber);
+    }
+
+    /**
+     * Renders a single chunk of a {@link Block} to text. Runs on a worker thread.
+     */
+    private void renderChunk(Block block, int chunk) {
+        int from = chunk * CHUNK_SIZE;
+        int to = Math.min(from + CHUNK_SIZE, block.lines.size());
+        StringBuilder text = new StringBuilder((to - from) * 32 * 20);
+
+        for (int i = from; i < to; i++) {
+            long rowNumber = block.lineNumbers[i];
+            VaccinationCalendar calendar = buildCalendar(block.lines.get(i));
+            if (calendar == null) {
+                block.rejected[chunk]++;
+                continue;
+            }
+            for (ScheduleForDay date : calendar.get()) {
+                for (Dose dose : date.getDoses()) {
+                    text.append(rowNumber).append(',')
+                            .append(date.getDate()).append(',')
+                            .append(dose.getAltName()).append('\n');
+                    block.doses[chunk]++;
+                }
+            }
+        }
+
+        block.output[chunk] = text.toString();
+    }
+
+    /**
+     * Builds a calendar for a single input line, using the same {@link Form} path as the web client.
+     * @return
+     *          the calendar, or <code>null</code> if the line is malformed, names an unknown scheme, or doesn't pass
+     *          validation.
+     */
+    private VaccinationCalendar buildCalendar(String line) {
+        CohortRow row;
+        Form form;
+        try {
+            row = CohortRow.parse(line);
+            form = formsPerThread.get().computeIfAbsent(row.getSchemeID(), BatchCalendarGenerator::newForm);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        if (!row.applyTo(form)) {
+            return null;
+        }
+        return new VaccinationCalendar(form);
+    }
+
+    /**
+     * Creates a {@link Form} backed by a fresh {@link DataProvider} for the given scheme's {@link IVaccineSource}.
+     * The license is accepted up front, since there's no user to ask.
+     * @throws  IllegalArgumentException
+     *          if there's no scheme with the given ID.
+     */
+    static Form newForm(String schemeID) {
+        Form form = new Form(new DataProvider(IVaccineSource.forScheme(schemeID)));
+        form.setLicenseAccepted(true);
+        return form;
+    }
+
+    /**
+     * A block of input rows, together with per-chunk results. Each chunk is written by exactly one leaf task.
+     */
+    private static class Block {
+        private final List<String> lines;
+        /**
+         * The line number of each of the {@link #lines} in the input, counting empty lines too.
+         */
+        private final long[] lineNumbers;
+        /**
+         * The number of the last line read into this block (or before it), empty or not.
+         */
+        private final long lastLineNumber;
+        private final String[] output;
+        private final int[] rejected;
+        private final int[] doses;
+
+        private Block(List<String> lines, long[] lineNumbers, long lastLineNumber) {
+            this.lines = lines;
+            this.lineNumbers = lineNumbers;
+            this.lastLineNumber = lastLineNumber;
+            int chunks = chunkCount();
+            this.output = new String[chunks];
+            this.rejected = new int[chunks];
+            this.doses = new int[chunks];
+        }
+
+        private int chunkCount() {
+            return (lines.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        }
+
+        private void writeTo(Writer out) throws IOException {
+            for (String text : output) {
+                out.write(text);
+            }
+        }
+
+        private long countRejected() {
+            long sum = 0;
+            for (int r : rejected) {
+                sum += r;
+            }
+            return sum;
+        }
+
+        private long countDoses() {
+            long sum = 0;
+            for (int d : doses) {
+                sum += d;
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Splits a range of chunks in half until a single chunk is left, then renders it.
+     */
+    private class RenderTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Block block;
+        private final int fromChunk;
+        private final int toChunk;
+
+        private RenderTask(Block block, int fromChunk, int toChunk) {
+            this.block = block;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk <= 1) {
+                if (toChunk > fromChunk) {
+                    renderChunk(block, fromChunk);
+                }
+                return;
+            }
+            int middle = (fromChunk + toChunk) >>> 1;
+            invokeAll(new RenderTask(block, fromChunk, middle), new RenderTask(block, middle, toChunk));
+        }
+    }
+}
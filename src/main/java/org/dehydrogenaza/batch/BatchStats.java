@@ -0,0 +1,71 @@
+package org.dehydrogenaza.batch;
+
+/**
+ * Summary of a single run of the {@link BatchCalendarGenerator}: how many rows were processed, how many of them
+ * were rejected, and how long it took.
+ */
+public class BatchStats {
+    private final long rows;
+    private final long rejectedRows;
+    private final long doses;
+    private final long elapsedNanos;
+    private final int parallelism;
+
+    /**
+     * Default constructor.
+     * @param   rows
+     *          total number of input rows read (including rejected ones).
+     * @param   rejectedRows
+     *          number of rows that couldn't be turned into a calendar (malformed or invalid dates).
+     * @param   doses
+     *          total number of doses written to the output.
+     * @param   elapsedNanos
+     *          wall-clock duration of the run, in nanoseconds.
+     * @param   parallelism
+     *          the number of worker threads used.
+     */
+    public BatchStats(long rows, long rejectedRows, long doses, long elapsedNanos, int parallelism) {
+        this.rows = rows;
+        this.rejectedRows = rejectedRows;
+        this.doses = doses;
+        this.elapsedNanos = elapsedNanos;
+        this.parallelism = parallelism;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getRejectedRows() {
+        return rejectedRows;
+    }
+
+    public long getDoses() {
+        return doses;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return
+     *          throughput of the run, in input rows per second.
+     */
+    public double getRowsPerSecond() {
+        if (elapsedNanos == 0) {
+            return 0;
+        }
+        return rows * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows (%d rejected), %d doses in %.3f s on %d threads: %.0f rows/s",
+                rows, rejectedRows, doses, elapsedNanos / 1_000_000_000.0, parallelism, getRowsPerSecond());
+    }
+}
@@ -0,0 +1,467 @@
+package org.dehydrogenaza.batch;
+
+import org.dehydrogenaza.data.Dose;
+import org.dehydrogenaza.data.ScheduleForDay;
+import org.dehydrogenaza.data.VaccinationCalendar;
+import org.dehydrogenaza.data.VaccineType;
+import org.dehydrogenaza.data.utils.TinyDate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spreads the visits of many children's {@link VaccinationCalendar}s over the days of their clinics, so that no
+ * clinic gets more visits a day than it can handle (JVM-only, never transpiled to JS).
+ * <p>Every generated calendar puts each dose exactly at its recommended day, so children born on the same days
+ * bunch up into the same visits. The leveller moves whole visits (a child's {@link ScheduleForDay}, with all of its
+ * doses) within the windows of their doses (see {@link VaccineType#getDaysEarlier(int)}), or within a default
+ * tolerance for types that don't declare one:</p>
+ * <ul>
+ *     <li>a visit may be moved at most as early, and at most as late, as the strictest of its doses allows;</li>
+ *     <li>the visits of a child keep their order, and the spacing between two doses of a series is never shorter
+ *     than recommended (postponing a dose postpones the rest of its series, if needed, beyond its tolerance).</li>
+ * </ul>
+ * <p>Each clinic is levelled separately, by sweeping its days in order (earliest deadline first): the visits that
+ * may already take place (by their earliest day) wait in one priority queue, ordered by their latest day, and each
+ * day takes the most urgent ones, up to the clinic's capacity. A visit that reaches its latest day is scheduled even
+ * if the clinic is full. A child's next visit is only released once the previous one has its day, which is what
+ * keeps the spacing. Visits and heaps are kept in flat <code>int</code>/<code>long</code> arrays, so that a whole
+ * registry (a hundred thousand children, a few million visits) is levelled in a few seconds.</p>
+ * <p>Not thread-safe.</p>
+ */
+public class CapacityLeveller {
+    private final int defaultDaysEarlier;
+    private final int defaultDaysLater;
+    private final int defaultCapacity;
+    private final Map<String, Integer> clinicIndex = new HashMap<>();
+    private final List<String> clinicNames = new ArrayList<>();
+    private final List<Integer> clinicCapacity = new ArrayList<>();
+
+    private final List<VaccinationCalendar> calendars = new ArrayList<>();
+    private final IntArray patientClinic = new IntArray();
+    /**
+     * The ID of the first visit of each child; the visits of a child are numbered consecutively, in date order.
+     */
+    private final IntArray patientFirstVisit = new IntArray();
+
+    private final IntArray visitPatient = new IntArray();
+    private final IntArray visitDay = new IntArray();
+    /**
+     * The earliest and latest day allowed by the tolerance of a visit's doses (before taking spacing into account).
+     */
+    private final IntArray visitEarliest = new IntArray();
+    private final IntArray visitLatest = new IntArray();
+    /**
+     * Spacing constraints of each visit, in <code>[spacingStart[v], spacingStart[v + 1])</code>: the visit holding
+     * the previous dose of the same series, and the recommended number of days between the two.
+     */
+    private final IntArray spacingStart = new IntArray();
+    private final IntArray spacingVisit = new IntArray();
+    private final IntArray spacingDays = new IntArray();
+
+    /**
+     * The day assigned to each visit by {@link #level()}.
+     */
+    private int[] assigned;
+    /**
+     * The earliest and latest day of each visit during {@link #level()}: copies of {@link #visitEarliest} and
+     * {@link #visitLatest}, shifted by spacing as the children's earlier visits get their days.
+     */
+    private int[] earliest;
+    private int[] latest;
+
+    /**
+     * Per {@link VaccineType#getId()}: the last visit of the current child holding that type, and the stamp (child
+     * number + 1) of when it was set, so that the arrays don't need clearing between children.
+     */
+    private int[] lastVisitOfType = new int[32];
+    private int[] lastStampOfType = new int[32];
+
+    /**
+     * @param   defaultDaysEarlier
+     *          how many days earlier than recommended the doses of types without a tolerance may be given.
+     * @param   defaultDaysLater
+     *          how many days later than recommended the doses of types without a tolerance may be given.
+     * @param   defaultCapacity
+     *          the number of visits a day of clinics without their own {@link #setCapacity(String, int) capacity}.
+     */
+    public CapacityLeveller(int defaultDaysEarlier, int defaultDaysLater, int defaultCapacity) {
+        if (defaultDaysEarlier < 0 || defaultDaysLater < 0 || defaultCapacity < 1) {
+            throw new IllegalArgumentException("Tolerance can't be negative, capacity must be positive.");
+        }
+        this.defaultDaysEarlier = defaultDaysEarlier;
+        this.defaultDaysLater = defaultDaysLater;
+        this.defaultCapacity = defaultCapacity;
+        spacingStart.add(0);
+    }
+
+    /**
+     * Sets the number of visits a day that a clinic can handle.
+     * @param   clinic
+     *          the ID of the clinic.
+     * @param   visitsPerDay
+     *          the capacity, at least 1.
+     */
+    public void setCapacity(String clinic, int visitsPerDay) {
+        if (visitsPerDay < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + visitsPerDay);
+        }
+        clinicCapacity.set(clinicOf(clinic), visitsPerDay);
+    }
+
+    /**
+     * Adds a child to be levelled. The calendar is only read here, and changed by {@link #apply()}.
+     * @param   clinic
+     *          the ID of the child's clinic.
+     * @param   calendar
+     *          the child's calendar, with each {@link ScheduleForDay}'s doses at their recommended day.
+     * @return
+     *          the number of the child, for {@link #getAssignedDay(int, int)}.
+     */
+    public int addPatient(String clinic, VaccinationCalendar calendar) {
+        int patient = calendars.size();
+        int stamp = patient + 1;
+        calendars.add(calendar);
+        patientClinic.add(clinicOf(clinic));
+        patientFirstVisit.add(visitDay.size());
+
+        for (ScheduleForDay date : calendar.get()) {
+            int visit = visitDay.size();
+            int day = date.getEpochDay();
+            int from = Integer.MIN_VALUE;
+            int to = Integer.MAX_VALUE;
+
+            for (Dose dose : date.getDoses()) {
+                VaccineType type = dose.getType();
+                int earlier = type.getDaysEarlier(dose.getDoseIndex());
+                int later = type.getDaysLater(dose.getDoseIndex());
+                if (earlier < 0) {
+                    earlier = defaultDaysEarlier;
+                    later = defaultDaysLater;
+                }
+                from = Math.max(from, day - earlier);
+                to = Math.min(to, day + later);
+
+                int id = type.getId();
+                ensureTypeCapacity(id);
+                if (lastStampOfType[id] == stamp) {
+                    int previous = lastVisitOfType[id];
+                    spacingVisit.add(previous);
+                    spacingDays.add(day - visitDay.get(previous));
+                }
+                lastStampOfType[id] = stamp;
+                lastVisitOfType[id] = visit;
+            }
+
+            visitPatient.add(patient);
+            visitDay.add(day);
+            visitEarliest.add(from);
+            visitLatest.add(to);
+            spacingStart.add(spacingVisit.size());
+        }
+        assigned = null;
+        return patient;
+    }
+
+    /**
+     * Assigns a day to every visit, clinic by clinic.
+     * @return
+     *          the statistics of this run: peak loads before and after, and how long it took.
+     */
+    public LevellingStats level() {
+        long start = System.nanoTime();
+        int visits = visitDay.size();
+        assigned = new int[visits];
+        earliest = visitEarliest.toArray();
+        latest = visitLatest.toArray();
+
+        int clinics = clinicNames.size();
+        int[][] patientsOfClinic = new int[clinics][];
+        int[] counts = new int[clinics];
+        for (int p = 0; p < calendars.size(); p++) {
+            counts[patientClinic.get(p)]++;
+        }
+        for (int c = 0; c < clinics; c++) {
+            patientsOfClinic[c] = new int[counts[c]];
+            counts[c] = 0;
+        }
+        for (int p = 0; p < calendars.size(); p++) {
+            int c = patientClinic.get(p);
+            patientsOfClinic[c][counts[c]++] = p;
+        }
+
+        LongHeap pending = new LongHeap();
+        LongHeap ready = new LongHeap();
+        for (int c = 0; c < clinics; c++) {
+            levelClinic(patientsOfClinic[c], clinicCapacity.get(c), pending, ready);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int moved = 0;
+        for (int v = 0; v < visits; v++) {
+            if (assigned[v] != visitDay.get(v)) {
+                moved++;
+            }
+        }
+        int[] before = visitDay.toArray();
+        return new LevellingStats(calendars.size(), visits, moved,
+                peakLoad(before), peakLoad(assigned),
+                daysOverCapacity(before), daysOverCapacity(assigned), elapsed);
+    }
+
+    /**
+     * Moves the visits of every calendar to the days assigned by {@link #level()}, with
+     * {@link VaccinationCalendar#updateDate(ScheduleForDay)}. Visits moved to a later day are applied from the last
+     * one, and the rest from the first one, so that a visit never lands on a day still taken by another visit of the
+     * same child (which would merge the two).
+     */
+    public void apply() {
+        if (assigned == null) {
+            throw new IllegalStateException("level() must be called first.");
+        }
+        for (int p = 0; p < calendars.size(); p++) {
+            VaccinationCalendar calendar = calendars.get(p);
+            List<ScheduleForDay> dates = new ArrayList<>(calendar.get());
+            int first = patientFirstVisit.get(p);
+            for (int i = dates.size() - 1; i >= 0; i--) {
+                if (assigned[first + i] > visitDay.get(first + i)) {
+                    move(calendar, dates.get(i), assigned[first + i]);
+                }
+            }
+            for (int i = 0; i < dates.size(); i++) {
+                if (assigned[first + i] < visitDay.get(first + i)) {
+                    move(calendar, dates.get(i), assigned[first + i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param   patient
+     *          the number of the child, returned by {@link #addPatient(String, VaccinationCalendar)}.
+     * @param   visit
+     *          the position of the visit in the child's calendar, as it was when the child was added.
+     * @return
+     *          the epoch day assigned to the visit by {@link #level()}.
+     */
+    public int getAssignedDay(int patient, int visit) {
+        if (assigned == null) {
+            throw new IllegalStateException("level() must be called first.");
+        }
+        return assigned[patientFirstVisit.get(patient) + visit];
+    }
+
+    /**
+     * Levels the visits of the children of a single clinic, sweeping its days in order.
+     * <p><code>pending</code> holds the visits that are known but may not take place yet, by their earliest day;
+     * <code>ready</code> the visits that may, by their latest day. Both are keyed by <code>day &lt;&lt; 32 |
+     * visit</code>.</p>
+     */
+    private void levelClinic(int[] patients, int capacity, LongHeap pending, LongHeap ready) {
+        for (int patient : patients) {
+            int first = patientFirstVisit.get(patient);
+            if (first < visitDay.size() && visitPatient.get(first) == patient) {
+                pending.push(key(earliest[first], first));
+            }
+        }
+
+        int day = Integer.MIN_VALUE;
+        while (!pending.isEmpty() || !ready.isEmpty()) {
+            if (ready.isEmpty()) {
+                day = Math.max(day, dayOf(pending.peek()));
+            }
+            while (!pending.isEmpty() && dayOf(pending.peek()) <= day) {
+                int visit = visitOf(pending.pop());
+                ready.push(key(latest[visit], visit));
+            }
+
+            int load = 0;
+            while (!ready.isEmpty() && (load < capacity || dayOf(ready.peek()) <= day)) {
+                int visit = visitOf(ready.pop());
+                assigned[visit] = day;
+                load++;
+                releaseNext(visit, day, pending);
+            }
+            day++;
+        }
+    }
+
+    /**
+     * Once a visit has its day, releases the next visit of the same child, no earlier than the day after, and no
+     * earlier than the recommended spacing after the previous dose of each of its series.
+     */
+    private void releaseNext(int visit, int day, LongHeap pending) {
+        int next = visit + 1;
+        if (next == visitDay.size() || visitPatient.get(next) != visitPatient.get(visit)) {
+            return;
+        }
+        int release = Math.max(earliest[next], day + 1);
+        for (int i = spacingStart.get(next); i < spacingStart.get(next + 1); i++) {
+            release = Math.max(release, assigned[spacingVisit.get(i)] + spacingDays.get(i));
+        }
+        //a visit postponed by spacing keeps the width of its window
+        if (release > earliest[next]) {
+            latest[next] += release - earliest[next];
+            earliest[next] = release;
+        }
+        pending.push(key(release, next));
+    }
+
+    private int peakLoad(int[] days) {
+        int peak = 0;
+        for (int[] load : loadPerClinic(days)) {
+            for (int visitsThatDay : load) {
+                peak = Math.max(peak, visitsThatDay);
+            }
+        }
+        return peak;
+    }
+
+    private long daysOverCapacity(int[] days) {
+        long over = 0;
+        int[][] loads = loadPerClinic(days);
+        for (int c = 0; c < loads.length; c++) {
+            for (int visitsThatDay : loads[c]) {
+                if (visitsThatDay > clinicCapacity.get(c)) {
+                    over++;
+                }
+            }
+        }
+        return over;
+    }
+
+    /**
+     * Counts the visits of each clinic per day, in buckets from the earliest to the latest day of all visits.
+     */
+    private int[][] loadPerClinic(int[] days) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int day : days) {
+            min = Math.min(min, day);
+            max = Math.max(max, day);
+        }
+        int[][] loads = new int[clinicNames.size()][days.length == 0 ? 0 : max - min + 1];
+        for (int v = 0; v < days.length; v++) {
+            loads[patientClinic.get(visitPatient.get(v))][days[v] - min]++;
+        }
+        return loads;
+    }
+
+    private int clinicOf(String clinic) {
+        Integer index = clinicIndex.get(clinic);
+        if (index == null) {
+            index = clinicNames.size();
+            clinicIndex.put(clinic, index);
+            clinicNames.add(clinic);
+            clinicCapacity.add(defaultCapacity);
+        }
+        return index;
+    }
+
+    private void ensureTypeCapacity(int id) {
+        if (id >= lastVisitOfType.length) {
+            int length = Math.max(id + 1, lastVisitOfType.length * 2);
+            lastVisitOfType = Arrays.copyOf(lastVisitOfType, length);
+            lastStampOfType = Arrays.copyOf(lastStampOfType, length);
+        }
+    }
+
+    private static void move(VaccinationCalendar calendar, ScheduleForDay date, int day) {
+        date.setTempDate(TinyDate.ofEpochDay(day).toString());
+        calendar.updateDate(date);
+    }
+
+    private static long key(int day, int visit) {
+        return (long) day << 32 | (visit & 0xFFFFFFFFL);
+    }
+
+    private static int dayOf(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int visitOf(long key) {
+        return (int) key;
+    }
+
+    /**
+     * A growable array of <code>int</code>s, to keep millions of visits without boxing.
+     */
+    private static final class IntArray {
+        private int[] values = new int[64];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * A binary min-heap of <code>long</code>s, to avoid boxing in a <code>PriorityQueue</code>.
+     */
+    private static final class LongHeap {
+        private long[] heap = new long[64];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long peek() {
+            return heap[0];
+        }
+
+        void push(long value) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= value) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        }
+
+        long pop() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (last <= heap[child]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return top;
+        }
+    }
+}
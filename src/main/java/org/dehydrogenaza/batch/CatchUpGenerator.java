@@ -0,0 +1,179 @@
+package org.dehydrogenaza.batch;
+
+import org.dehydrogenaza.data.*;
+import org.dehydrogenaza.data.utils.TinyDate;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Headless (JVM-only, never transpiled to JS) generator of catch-up schedules for a whole vaccination history
+ * extract, one {@link HistoryRow} per line: for every child, only the doses still to be given are planned, by a
+ * {@link CatchUpPlanner}.
+ * <p>The rows of each child must come one after another (as in an extract sorted by child). The input is streamed: a
+ * child is planned and written out as soon as the next child's first row is read, so memory use depends on the
+ * length of a single child's history, not on the size of the input.</p>
+ * <p>The output has one line per remaining dose, in the same format as the {@link BatchCalendarGenerator}, but
+ * identifying children by their IDs:</p>
+ * <pre>childID,YYYY-MM-DD,doseName</pre>
+ * <p>Rows that can't be parsed are skipped, and so are all the rows of a child whose scheme is unknown or whose dates
+ * don't pass {@link Form} validation; they're counted as rejected. Doses of vaccines not selected for the child are
+ * ignored.</p>
+ */
+public class CatchUpGenerator {
+    /**
+     * Default window of doses for types that don't declare one: the optimal day only, as in the regular calendar.
+     */
+    public static final int DEFAULT_DAYS_EARLIER = 0;
+    public static final int DEFAULT_DAYS_LATER = 0;
+
+    private final CatchUpPlanner planner = new CatchUpPlanner(DEFAULT_DAYS_EARLIER, DEFAULT_DAYS_LATER);
+    /**
+     * One {@link Form} per scheme ID, reused for every child of that scheme.
+     */
+    private final Map<String, Form> forms = new HashMap<>();
+    private final int today;
+
+    /**
+     * @param   today
+     *          the epoch day of the planning; no remaining dose is scheduled before it.
+     */
+    public CatchUpGenerator(int today) {
+        this.today = today;
+    }
+
+    /**
+     * Command line entry point.
+     * <pre>CatchUpGenerator input.csv output.csv [YYYY-MM-DD]</pre>
+     * @param   args
+     *          path to the input file, path to the output file and, optionally, the date of the planning (today by
+     *          default).
+     * @throws  IOException
+     *          if the files can't be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CatchUpGenerator <input> <output> [YYYY-MM-DD]");
+            System.exit(1);
+        }
+        int today = args.length > 2
+                ? new TinyDate(args[2]).toEpochDay()
+                : (int) LocalDate.now().toEpochDay();
+
+        CatchUpGenerator generator = new CatchUpGenerator(today);
+        try (Reader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+             Writer out = Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            System.out.println(generator.run(in, out));
+        }
+    }
+
+    /**
+     * Plans the remaining doses of every child in <code>input</code> and streams them to <code>output</code>.
+     * @param   input
+     *          the history extract, one {@link HistoryRow} per line, grouped by child.
+     * @param   output
+     *          destination for the planned doses; flushed, but not closed.
+     * @return
+     *          statistics of this run.
+     * @throws  IOException
+     *          if reading or writing fails.
+     */
+    public BatchStats run(Reader input, Writer output) throws IOException {
+        long start = System.nanoTime();
+        BufferedReader reader = input instanceof BufferedReader
+                ? (BufferedReader) input
+                : new BufferedReader(input);
+
+        long rows = 0;
+        long rejected = 0;
+        long doses = 0;
+
+        String child = null;
+        boolean childValid = false;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            rows++;
+
+            HistoryRow row;
+            try {
+                row = HistoryRow.parse(line);
+            } catch (IllegalArgumentException e) {
+                rejected++;
+                continue;
+            }
+
+            if (!row.getChildID().equals(child)) {
+                if (childValid) {
+                    doses += writeRemaining(child, output);
+                }
+                child = row.getChildID();
+                childValid = startChild(row.getChild());
+            }
+            if (!childValid) {
+                rejected++;
+                continue;
+            }
+            if (row.hasGivenDose()) {
+                int day;
+                try {
+                    day = new TinyDate(row.getGivenDate()).toEpochDay();
+                } catch (IllegalArgumentException e) {
+                    rejected++;
+                    continue;
+                }
+                planner.addGivenDose(row.getGivenVaccine(), day);
+            }
+        }
+        if (childValid) {
+            doses += writeRemaining(child, output);
+        }
+        output.flush();
+
+        return new BatchStats(rows, rejected, doses, System.nanoTime() - start, 1);
+    }
+
+    /**
+     * Sets up the planner for the next child.
+     * @return
+     *          <code>false</code> if the child's scheme is unknown, or its dates don't pass validation.
+     */
+    private boolean startChild(CohortRow row) {
+        Form form;
+        try {
+            form = forms.computeIfAbsent(row.getSchemeID(), BatchCalendarGenerator::newForm);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (!row.applyTo(form)) {
+            return false;
+        }
+        planner.start(form, today);
+        return true;
+    }
+
+    /**
+     * Plans the current child and writes out the remaining doses.
+     * @return
+     *          the number of doses written.
+     */
+    private int writeRemaining(String child, Writer output) throws IOException {
+        int written = 0;
+        for (ScheduleForDay date : planner.plan().get()) {
+            for (Dose dose : date.getDoses()) {
+                output.append(child).append(',')
+                        .append(date.getDate().toString()).append(',')
+                        .append(dose.getAltName()).append('\n');
+                written++;
+            }
+        }
+        return written;
+    }
+}
@@ -0,0 +1,130 @@
+package org.dehydrogenaza.batch;
+
+import org.dehydrogenaza.data.Form;
+import org.dehydrogenaza.data.VaccinationScheme;
+import org.dehydrogenaza.data.VaccineChoice;
+import org.dehydrogenaza.data.VaccineType;
+import org.dehydrogenaza.data.utils.DisplayState;
+
+/**
+ * A single row of a registry extract, describing one child: the date of birth, the chosen date of the first
+ * vaccination, the {@link VaccinationScheme} and the names of the selected {@link VaccineType}s.
+ * <p>Rows are read from plain text lines in the following format (no header):</p>
+ * <pre>dateOfBirth,dateOfFirstVaccination,schemeID,vaccine1;vaccine2;...</pre>
+ * <p>for example: <code>2021-05-14,2021-05-15,1,BCG;HBV;DTP;MenB</code>.</p>
+ */
+public class CohortRow {
+    /**
+     * Separates the columns of a row.
+     */
+    private static final char COLUMN_SEPARATOR = ',';
+    /**
+     * Separates the names of selected vaccines within the last column.
+     */
+    private static final String VACCINE_SEPARATOR = ";";
+
+    private final String dateOfBirth;
+    private final String dateOfFirstVaccination;
+    private final String schemeID;
+    /**
+     * Names of the selected {@link VaccineType}s, as returned by {@link VaccineType#getName()}.
+     */
+    private final String[] selectedVaccines;
+
+    /**
+     * Default constructor.
+     * @param   dateOfBirth
+     *          child's birthdate as YYYY-MM-DD.
+     * @param   dateOfFirstVaccination
+     *          chosen date of the first vaccination as YYYY-MM-DD.
+     * @param   schemeID
+     *          the ID of the {@link VaccinationScheme}.
+     * @param   selectedVaccines
+     *          names of the selected {@link VaccineType}s.
+     */
+    public CohortRow(String dateOfBirth, String dateOfFirstVaccination, String schemeID, String[] selectedVaccines) {
+        this.dateOfBirth = dateOfBirth;
+        this.dateOfFirstVaccination = dateOfFirstVaccination;
+        this.schemeID = schemeID;
+        this.selectedVaccines = selectedVaccines;
+    }
+
+    /**
+     * Parses a single line of a registry extract (see the class description for the format).
+     * @param   line
+     *          a line of text, without the line terminator.
+     * @return
+     *          the parsed row.
+     * @throws  IllegalArgumentException
+     *          if the line doesn't have all four columns.
+     */
+    public static CohortRow parse(String line) {
+        int first = line.indexOf(COLUMN_SEPARATOR);
+        int second = first < 0 ? -1 : line.indexOf(COLUMN_SEPARATOR, first + 1);
+        int third = second < 0 ? -1 : line.indexOf(COLUMN_SEPARATOR, second + 1);
+        if (third < 0) {
+            throw new IllegalArgumentException("Expected 4 columns, got: " + line);
+        }
+
+        String vaccines = line.substring(third + 1).trim();
+        return new CohortRow(
+                line.substring(0, first).trim(),
+                line.substring(first + 1, second).trim(),
+                line.substring(second + 1, third).trim(),
+                vaccines.isEmpty() ? new String[0] : vaccines.split(VACCINE_SEPARATOR));
+    }
+
+    public String getDateOfBirth() {
+        return dateOfBirth;
+    }
+
+    public String getDateOfFirstVaccination() {
+        return dateOfFirstVaccination;
+    }
+
+    public String getSchemeID() {
+        return schemeID;
+    }
+
+    public String[] getSelectedVaccines() {
+        return selectedVaccines;
+    }
+
+    /**
+     * Fills in a {@link Form} with this row, the same way the user would: submits the dates and selects the vaccines
+     * (applying the scheme's form data handlers).
+     * @param   form
+     *          a form of this row's scheme.
+     * @return
+     *          <code>false</code> if the dates don't pass validation.
+     */
+    public boolean applyTo(Form form) {
+        form.setDateOfBirth(dateOfBirth);
+        form.setDateOfFirstVaccination(dateOfFirstVaccination);
+        if (form.submit() != DisplayState.CALENDAR) {
+            return false;
+        }
+
+        for (VaccineChoice vax : form.getVaccines()) {
+            vax.setSelected(isSelected(vax.getName()));
+        }
+        form.getDataProvider().applyFormDataHandlers(form);
+        return true;
+    }
+
+    /**
+     * Checks if the {@link VaccineType} with the given name was selected for this child.
+     * @param   vaccineName
+     *          the name of a VaccineType.
+     * @return
+     *          <code>true</code> if this row lists the vaccine as selected.
+     */
+    public boolean isSelected(String vaccineName) {
+        for (String selected : selectedVaccines) {
+            if (selected.trim().equals(vaccineName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,92 @@
+package org.dehydrogenaza.batch;
+
+import org.dehydrogenaza.data.VaccineType;
+
+/**
+ * A single row of a vaccination history extract: a child, described as in a {@link CohortRow}, and (optionally) one
+ * dose the child already received.
+ * <p>Rows are read from plain text lines in the following format (no header):</p>
+ * <pre>childID,dateOfBirth,dateOfFirstVaccination,schemeID,vaccine1;vaccine2;...,givenVaccine,givenDate</pre>
+ * <p>for example: <code>c-17,2021-05-14,2021-05-15,1,BCG;HBV;DTP,DTP,2021-07-20</code>. A child with no doses given
+ * yet has a single row, with the last two columns empty.</p>
+ */
+public class HistoryRow {
+    private static final char COLUMN_SEPARATOR = ',';
+
+    private final String childID;
+    private final CohortRow child;
+    /**
+     * The name of the {@link VaccineType} given, as returned by {@link VaccineType#getName()}; empty if none.
+     */
+    private final String givenVaccine;
+    /**
+     * The date it was given, as YYYY-MM-DD; empty if none.
+     */
+    private final String givenDate;
+
+    /**
+     * Default constructor.
+     * @param   childID
+     *          identifies the child within the extract.
+     * @param   child
+     *          the child's dates, scheme and selected vaccines.
+     * @param   givenVaccine
+     *          the name of the {@link VaccineType} given, or an empty String.
+     * @param   givenDate
+     *          the date it was given as YYYY-MM-DD, or an empty String.
+     */
+    public HistoryRow(String childID, CohortRow child, String givenVaccine, String givenDate) {
+        this.childID = childID;
+        this.child = child;
+        this.givenVaccine = givenVaccine;
+        this.givenDate = givenDate;
+    }
+
+    /**
+     * Parses a single line of a history extract (see the class description for the format).
+     * @param   line
+     *          a line of text, without the line terminator.
+     * @return
+     *          the parsed row.
+     * @throws  IllegalArgumentException
+     *          if the line doesn't have all seven columns.
+     */
+    public static HistoryRow parse(String line) {
+        int first = line.indexOf(COLUMN_SEPARATOR);
+        int last = line.lastIndexOf(COLUMN_SEPARATOR);
+        int beforeLast = last <= first ? -1 : line.lastIndexOf(COLUMN_SEPARATOR, last - 1);
+        if (first < 0 || beforeLast <= first) {
+            throw new IllegalArgumentException("Expected 7 columns, got: " + line);
+        }
+
+        return new HistoryRow(
+                line.substring(0, first).trim(),
+                CohortRow.parse(line.substring(first + 1, beforeLast)),
+                line.substring(beforeLast + 1, last).trim(),
+                line.substring(last + 1).trim());
+    }
+
+    public String getChildID() {
+        return childID;
+    }
+
+    public CohortRow getChild() {
+        return child;
+    }
+
+    public String getGivenVaccine() {
+        return givenVaccine;
+    }
+
+    public String getGivenDate() {
+        return givenDate;
+    }
+
+    /**
+     * @return
+     *          <code>true</code> if this row records a dose given (and not only the child).
+     */
+    public boolean hasGivenDose() {
+        return !givenVaccine.isEmpty();
+    }
+}
@@ -0,0 +1,162 @@
+package org.dehydrogenaza.batch;
+
+import org.dehydrogenaza.data.Form;
+import org.dehydrogenaza.data.ScheduleForDay;
+import org.dehydrogenaza.data.VaccinationCalendar;
+import org.dehydrogenaza.data.utils.ICalendarWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Headless (JVM-only, never transpiled to JS) bulk export of a whole registry extract to iCalendar files, one per
+ * child. Each line is a {@link CohortRow} (as for the {@link BatchCalendarGenerator}) preceded by the ID of the child,
+ * as in a {@link HistoryRow}:
+ * <pre>childID,dateOfBirth,dateOfFirstVaccination,schemeID,vaccine1;vaccine2;...</pre>
+ * <p>Each file is named after the child: <code>c-17.ics</code> and so on.</p>
+ * <p>Rows are read one at a time, and each calendar is streamed straight to its file by the {@link ICalendarWriter},
+ * so memory use doesn't depend on the length of a file, and only the IDs of the children are kept.</p>
+ * <p>The child ID also identifies the calendar in the UIDs of its events, so exporting the child again, from a later
+ * or differently sorted extract, updates the events imported before instead of adding new ones. Rows that can't be
+ * parsed, that name an unknown scheme, that don't pass {@link Form} validation, whose ID isn't a safe file name (see
+ * {@link #isValidChildID}), or that repeat the ID of a child already exported are skipped and counted as rejected.</p>
+ */
+public class ICalendarExporter {
+    private static final char COLUMN_SEPARATOR = ',';
+    /**
+     * The longest child ID accepted; it's part of a file name and of every UID.
+     */
+    private static final int MAX_CHILD_ID_LENGTH = 64;
+
+    /**
+     * One {@link Form} per scheme ID, reused for every child of that scheme.
+     */
+    private final Map<String, Form> forms = new HashMap<>();
+    /**
+     * IDs of the children exported so far, so that a repeated ID doesn't overwrite an earlier file.
+     */
+    private final Set<String> exported = new HashSet<>();
+
+    /**
+     * Command line entry point.
+     * <pre>ICalendarExporter input.csv outputDirectory</pre>
+     * @param   args
+     *          path to the input file and path to the directory for the iCalendar files (created if missing).
+     * @throws  IOException
+     *          if the files can't be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: ICalendarExporter <input> <outputDirectory>");
+            System.exit(1);
+        }
+
+        try (Reader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            System.out.println(new ICalendarExporter().run(in, Paths.get(args[1])));
+        }
+    }
+
+    /**
+     * Exports a calendar for every row of <code>input</code>, each to its own file in <code>directory</code>.
+     * @param   input
+     *          the registry extract, one child per line (see the class description for the format).
+     * @param   directory
+     *          destination for the iCalendar files; created if it doesn't exist.
+     * @return
+     *          statistics of this run.
+     * @throws  IOException
+     *          if reading or writing fails.
+     */
+    public BatchStats run(Reader input, Path directory) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+        BufferedReader reader = input instanceof BufferedReader
+                ? (BufferedReader) input
+                : new BufferedReader(input);
+        long stampMillis = System.currentTimeMillis();
+
+        long rows = 0;
+        long rejected = 0;
+        long doses = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            rows++;
+
+            int separator = line.indexOf(COLUMN_SEPARATOR);
+            String childID = separator < 0 ? "" : line.substring(0, separator).trim();
+            if (!isValidChildID(childID)) {
+                rejected++;
+                continue;
+            }
+            VaccinationCalendar calendar = buildCalendar(line.substring(separator + 1));
+            if (calendar == null || !exported.add(childID)) {
+                rejected++;
+                continue;
+            }
+            try (Writer out = Files.newBufferedWriter(directory.resolve(childID + ".ics"), StandardCharsets.UTF_8)) {
+                ICalendarWriter.write(calendar.get(), childID, stampMillis, out, false);
+            }
+            for (ScheduleForDay date : calendar.get()) {
+                doses += date.getDoses().size();
+            }
+        }
+
+        return new BatchStats(rows, rejected, doses, System.nanoTime() - start, 1);
+    }
+
+    /**
+     * Checks whether a child ID can name a file in any directory: 1 to {@link #MAX_CHILD_ID_LENGTH} ASCII letters,
+     * digits, dashes, underscores and dots, not starting with a dot.
+     * @param   childID
+     *          the first column of a row.
+     * @return
+     *          <code>true</code> if the ID is safe to use as a file name.
+     */
+    static boolean isValidChildID(String childID) {
+        if (childID.isEmpty() || childID.length() > MAX_CHILD_ID_LENGTH || childID.charAt(0) == '.') {
+            return false;
+        }
+        for (int i = 0; i < childID.length(); i++) {
+            char currentChar = childID.charAt(i);
+            if (!(currentChar >= 'a' && currentChar <= 'z' || currentChar >= 'A' && currentChar <= 'Z'
+                    || currentChar >= '0' && currentChar <= '9'
+                    || currentChar == '-' || currentChar == '_' || currentChar == '.')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param   line
+     *          a {@link CohortRow}, without the child ID.
+     * @return
+     *          the calendar of a single child, or <code>null</code> if the line is malformed, names an unknown
+     *          scheme, or doesn't pass validation.
+     */
+    private VaccinationCalendar buildCalendar(String line) {
+        CohortRow row;
+        Form form;
+        try {
+            row = CohortRow.parse(line);
+            form = forms.computeIfAbsent(row.getSchemeID(), BatchCalendarGenerator::newForm);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        if (!row.applyTo(form)) {
+            return null;
+        }
+        return new VaccinationCalendar(form);
+    }
+}
@@ -0,0 +1,98 @@
+package org.dehydrogenaza.batch;
+
+/**
+ * Summary of a single run of the {@link CapacityLeveller}: the busiest clinic-day and the number of clinic-days over
+ * capacity, before and after levelling, and how long it took.
+ */
+public class LevellingStats {
+    private final int patients;
+    private final int visits;
+    private final int movedVisits;
+    private final int peakBefore;
+    private final int peakAfter;
+    private final long daysOverCapacityBefore;
+    private final long daysOverCapacityAfter;
+    private final long elapsedNanos;
+
+    /**
+     * Default constructor.
+     * @param   patients
+     *          the number of children.
+     * @param   visits
+     *          the total number of visits (days with at least one dose, per child).
+     * @param   movedVisits
+     *          the number of visits moved to another day.
+     * @param   peakBefore
+     *          the highest number of visits on a single day, in a single clinic, before levelling.
+     * @param   peakAfter
+     *          the same, after levelling.
+     * @param   daysOverCapacityBefore
+     *          the number of clinic-days with more visits than the clinic's capacity, before levelling.
+     * @param   daysOverCapacityAfter
+     *          the same, after levelling.
+     * @param   elapsedNanos
+     *          wall-clock duration of levelling, in nanoseconds.
+     */
+    public LevellingStats(int patients, int visits, int movedVisits, int peakBefore, int peakAfter,
+                          long daysOverCapacityBefore, long daysOverCapacityAfter, long elapsedNanos) {
+        this.patients = patients;
+        this.visits = visits;
+        this.movedVisits = movedVisits;
+        this.peakBefore = peakBefore;
+        this.peakAfter = peakAfter;
+        this.daysOverCapacityBefore = daysOverCapacityBefore;
+        this.daysOverCapacityAfter = daysOverCapacityAfter;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getPatients() {
+        return patients;
+    }
+
+    public int getVisits() {
+        return visits;
+    }
+
+    public int getMovedVisits() {
+        return movedVisits;
+    }
+
+    public int getPeakBefore() {
+        return peakBefore;
+    }
+
+    public int getPeakAfter() {
+        return peakAfter;
+    }
+
+    public long getDaysOverCapacityBefore() {
+        return daysOverCapacityBefore;
+    }
+
+    public long getDaysOverCapacityAfter() {
+        return daysOverCapacityAfter;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return
+     *          how much lower the peak is after levelling, as a fraction of the peak before (0 to 1).
+     */
+    public double getPeakReduction() {
+        if (peakBefore == 0) {
+            return 0;
+        }
+        return (peakBefore - peakAfter) / (double) peakBefore;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d patients, %d visits (%d moved) in %.3f s: peak %d -> %d visits/day (-%.1f%%), "
+                        + "%d -> %d clinic-days over capacity",
+                patients, visits, movedVisits, elapsedNanos / 1_000_000_000.0, peakBefore, peakAfter,
+                getPeakReduction() * 100, daysOverCapacityBefore, daysOverCapacityAfter);
+    }
+}
@@ -0,0 +1,105 @@
+package org.dehydrogenaza.data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of {@link VaccinationCalendar}s.
+ * <p>A freshly generated calendar is fully determined by the chosen {@link VaccinationScheme}, the selection of
+ * {@link VaccineType}s, the date of birth (which drives some offsets through form-data handlers) and the date of the
+ * first vaccination, so these make up the cache key. Repeated inputs (twins, "⟳ Od nowa" pressed again) then
+ * skip the generator.</p>
+ * <p>Calendars are mutable, so the cache only ever hands out {@link VaccinationCalendar#copy() copies}: later
+ * edits can't corrupt a cached entry.</p>
+ */
+public class CalendarCache {
+    /**
+     * Maximum number of cached calendars.
+     */
+    private final int capacity;
+
+    /**
+     * Cached calendars, iterated from the least to the most recently used (<i>access order</i>).
+     */
+    private final Map<String, VaccinationCalendar> entries;
+
+    private int hits;
+    private int misses;
+
+    /**
+     * @param   capacity
+     *          maximum number of cached calendars; the least recently used one is evicted when it's exceeded.
+     */
+    public CalendarCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<String, VaccinationCalendar>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, VaccinationCalendar> eldest) {
+                return size() > CalendarCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns a calendar for the current state of the {@link Form}: a copy of the cached one if these inputs were
+     * seen before, a newly generated one (which is cached) otherwise. Form-data handlers are expected to be applied
+     * already, just as for {@link VaccinationCalendar#VaccinationCalendar(Form)}.
+     * <p>Forms without a known scheme ID (see {@link DataProvider#getChosenSchemeID()}) are never cached.</p>
+     * @param   form
+     *          the submitted input form.
+     * @return
+     *          a calendar that can be freely edited by the caller.
+     */
+    public VaccinationCalendar get(Form form) {
+        String key = keyOf(form);
+        if (key == null) {
+            misses++;
+            return new VaccinationCalendar(form);
+        }
+
+        VaccinationCalendar cached = entries.get(key);
+        if (cached != null) {
+            hits++;
+        } else {
+            misses++;
+            cached = new VaccinationCalendar(form);
+            entries.put(key, cached);
+        }
+        return cached.copy();
+    }
+
+    /**
+     * Removes every cached calendar. Counters are kept.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Builds the cache key: scheme ID, the selection mask (see {@link DataProvider#getSelectionMask()}), the date of
+     * birth and the date of the first vaccination.
+     * @return
+     *          the key, or <code>null</code> if the scheme is unknown.
+     */
+    private static String keyOf(Form form) {
+        String schemeID = form.getDataProvider().getChosenSchemeID();
+        if (schemeID == null) {
+            return null;
+        }
+
+        return schemeID + '|' + form.getDataProvider().getSelectionMask()
+                + '|' + form.getDateOfBirth() + '|' + form.getDateOfFirstVaccination();
+    }
+}
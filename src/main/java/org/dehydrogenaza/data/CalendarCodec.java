@@ -0,0 +1,472 @@
+package org.dehydrogenaza.data;
+
+import org.dehydrogenaza.data.utils.InputValidator;
+import org.dehydrogenaza.data.utils.TinyDate;
+
+import java.util.Arrays;
+
+/**
+ * Compact binary encoding of a {@link VaccinationCalendar}, short enough to share in a URL (see
+ * {@link #encodeToString(VaccinationCalendar)}).
+ * <p>A calendar is almost entirely determined by its scheme, dates and selection, so only those are stored, followed
+ * by the ID of the calendar (see {@link VaccinationCalendar#getCalendarID()}) and the user's edits: the doses that
+ * were rescheduled or removed, compared to the generated defaults. An untouched calendar takes about twenty bytes.
+ * Every number is a variable-length integer (7 bits per byte, lowest bits first);
+ * numbers that may be negative are zigzag-encoded first, so that small magnitudes stay short either way:</p>
+ * <pre>
+ * version                  (1 byte, {@link #VERSION})
+ * scheme ID                (length, then ASCII characters)
+ * calendar ID              (up to 48 bits)
+ * date of birth            (epoch day, zigzag)
+ * first vaccination        (days after the date of birth)
+ * selection                (the mask, see {@link DataProvider#getSelectionMask()})
+ * number of edits
+ * edits                    (vaccine, dose, change), sorted by vaccine index, then by dose index
+ * </pre>
+ * <p>Each edit is delta-encoded against the previous one: the vaccine index as the difference from the previous
+ * vaccine, the dose index as the number of skipped doses of the same vaccine (or the dose index itself, for a new
+ * vaccine). The change is <code>0</code> for a removed dose, or else the zigzag-encoded shift in days from its
+ * generated date, plus one.</p>
+ * <p>Codes of version 1, written before calendars had IDs, are still decoded; such a calendar gets a new ID.</p>
+ * <p>Decoding rebuilds the {@link ScheduleForDay}s and {@link Dose}s directly from the date offsets, without
+ * running the generator or replaying the edits one by one. Doses sharing a day come back in catalog order, which may
+ * differ from the order they were edited in.</p>
+ */
+public class CalendarCodec {
+    /**
+     * Format version, written as the first byte.
+     */
+    public static final int VERSION = 2;
+    /**
+     * The previous format version, without the calendar ID.
+     */
+    private static final int VERSION_WITHOUT_ID = 1;
+
+    private static final char[] BASE64_URL =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    /**
+     * Marks a dose missing from the calendar, while collecting the edits.
+     */
+    private static final int REMOVED = Integer.MIN_VALUE;
+
+    /**
+     * The range of dates accepted in a code, as epoch days: the same as the {@link InputValidator} accepts.
+     */
+    private static final int FIRST_DAY = new TinyDate(1900, 1, 1).toEpochDay();
+    private static final int LAST_DAY = new TinyDate(3000, 12, 31).toEpochDay();
+
+    private CalendarCodec() {
+    }
+
+    /**
+     * Encodes a calendar. The calendar must be in sync with the selection of its {@link Form} (see
+     * {@link VaccinationCalendar#syncSelection()}), as it is whenever it's displayed.
+     * @param   calendar
+     *          the calendar to encode.
+     * @return
+     *          the encoded calendar.
+     * @throws  IllegalStateException
+     *          if the calendar wasn't generated from a form with a scheme ID, or if it's out of sync with its
+     *          selection.
+     */
+    public static byte[] encode(VaccinationCalendar calendar) {
+        Form form = calendar.getForm();
+        if (form == null || form.getDataProvider().getChosenSchemeID() == null) {
+            throw new IllegalStateException("Only calendars of a scheme chosen by ID can be encoded.");
+        }
+        DataProvider dataProvider = form.getDataProvider();
+        VaccineCatalog catalog = dataProvider.getCatalog();
+        String schemeID = dataProvider.getChosenSchemeID();
+        int birthDay = new TinyDate(form.getDateOfBirth()).toEpochDay();
+        int startDay = calendar.getStartDay();
+
+        //the actual day of every generated dose, or REMOVED
+        int[][] actualDays = new int[catalog.size()][];
+        for (int v = dataProvider.nextSelected(0); v >= 0; v = dataProvider.nextSelected(v + 1)) {
+            actualDays[v] = new int[dataProvider.getDateOffsets(v).length];
+            Arrays.fill(actualDays[v], REMOVED);
+        }
+        for (ScheduleForDay date : calendar.get()) {
+            for (Dose dose : date.getDoses()) {
+                int v = catalog.indexOf(dose.getType());
+                int i = dose.getDoseIndex();
+                if (v < 0 || actualDays[v] == null || i >= actualDays[v].length || actualDays[v][i] != REMOVED) {
+                    throw new IllegalStateException("The calendar is out of sync with its selection.");
+                }
+                actualDays[v][i] = date.getEpochDay();
+            }
+        }
+
+        //three ints per edit: vaccine index, dose index, change
+        int editCount = 0;
+        int[] edits = new int[3 * 8];
+        for (int v = dataProvider.nextSelected(0); v >= 0; v = dataProvider.nextSelected(v + 1)) {
+            int[] offsets = dataProvider.getDateOffsets(v);
+            for (int i = 0; i < offsets.length; i++) {
+                int actualDay = actualDays[v][i];
+                int change;
+                if (actualDay == REMOVED) {
+                    change = 0;
+                } else if (actualDay != startDay + offsets[i]) {
+                    change = zigzag(actualDay - (startDay + offsets[i])) + 1;
+                } else {
+                    continue;
+                }
+                if (editCount * 3 == edits.length) {
+                    edits = Arrays.copyOf(edits, edits.length * 2);
+                }
+                edits[editCount * 3] = v;
+                edits[editCount * 3 + 1] = i;
+                edits[editCount * 3 + 2] = change;
+                editCount++;
+            }
+        }
+
+        Output out = new Output(24 + schemeID.length() + editCount * 3);
+        out.writeByte(VERSION);
+        out.writeVarint(schemeID.length());
+        for (int c = 0; c < schemeID.length(); c++) {
+            char ch = schemeID.charAt(c);
+            if (ch >= 0x80) {
+                throw new IllegalStateException("Scheme IDs must be ASCII: " + schemeID);
+            }
+            out.writeByte(ch);
+        }
+        out.writeVarlong(calendar.getId());
+        out.writeVarint(zigzag(birthDay));
+        out.writeVarint(startDay - birthDay);
+        out.writeVarint(dataProvider.getSelectionMask());
+        out.writeVarint(editCount);
+
+        int previousV = 0;
+        int previousI = -1;
+        for (int e = 0; e < editCount; e++) {
+            int v = edits[e * 3];
+            int i = edits[e * 3 + 1];
+            out.writeVarint(v - previousV);
+            out.writeVarint(v == previousV ? i - previousI - 1 : i);
+            out.writeVarint(edits[e * 3 + 2]);
+            previousV = v;
+            previousI = i;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes a calendar (see {@link #encode(VaccinationCalendar)}) as unpadded, URL-safe Base64 (RFC 4648, section
+     * 5), ready to be used as a URL parameter or fragment.
+     * @param   calendar
+     *          the calendar to encode.
+     * @return
+     *          the encoded calendar.
+     */
+    public static String encodeToString(VaccinationCalendar calendar) {
+        byte[] bytes = encode(calendar);
+        StringBuilder sb = new StringBuilder((bytes.length * 4 + 2) / 3);
+        for (int b = 0; b < bytes.length; b += 3) {
+            int remaining = bytes.length - b;
+            int chunk = (bytes[b] & 0xFF) << 16;
+            if (remaining > 1) {
+                chunk |= (bytes[b + 1] & 0xFF) << 8;
+            }
+            if (remaining > 2) {
+                chunk |= bytes[b + 2] & 0xFF;
+            }
+            sb.append(BASE64_URL[chunk >>> 18]);
+            sb.append(BASE64_URL[(chunk >>> 12) & 0x3F]);
+            if (remaining > 1) {
+                sb.append(BASE64_URL[(chunk >>> 6) & 0x3F]);
+            }
+            if (remaining > 2) {
+                sb.append(BASE64_URL[chunk & 0x3F]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Decodes a calendar from the output of {@link #encodeToString(VaccinationCalendar)}.
+     * @see     #decode(byte[], Form)
+     */
+    public static VaccinationCalendar decode(String encoded, Form form) {
+        return decodeInto(decodeBase64(encoded), form);
+    }
+
+    /**
+     * Decodes a calendar. The given {@link Form} is switched to the encoded scheme, dates and selection (and its
+     * form-data handlers are applied), and the new calendar is bound to it, just like one generated by
+     * {@link VaccinationCalendar#VaccinationCalendar(Form)}.
+     * <p>The whole code is checked before the form is touched: if it's rejected, the form is left as it was.</p>
+     * @param   encoded
+     *          the output of {@link #encode(VaccinationCalendar)}.
+     * @param   form
+     *          the form to restore the input data into.
+     * @return
+     *          the decoded calendar.
+     * @throws  IllegalArgumentException
+     *          if the input is malformed, or doesn't match the scheme it names.
+     */
+    public static VaccinationCalendar decode(byte[] encoded, Form form) {
+        return decodeInto(encoded, form);
+    }
+
+    /**
+     * Decodes a calendar from the output of {@link #encodeToString(VaccinationCalendar)} into a new {@link Form} of
+     * its own, for example to check a code without touching the form it's meant for.
+     * @see     #decode(byte[], Form)
+     */
+    static VaccinationCalendar decodeDetached(String encoded) {
+        return decodeInto(decodeBase64(encoded), null);
+    }
+
+    /**
+     * Decodes a calendar into <code>form</code>, or into a new form if it's <code>null</code>.
+     */
+    private static VaccinationCalendar decodeInto(byte[] encoded, Form form) {
+        Input in = new Input(encoded);
+        int version = in.readByte();
+        if (version != VERSION && version != VERSION_WITHOUT_ID) {
+            throw new IllegalArgumentException("Unsupported calendar code version.");
+        }
+        char[] schemeChars = new char[in.readLength()];
+        for (int c = 0; c < schemeChars.length; c++) {
+            schemeChars[c] = (char) in.readByte();
+        }
+        long id = version == VERSION ? in.readVarlong() : 0;
+        int birthDay = unzigzag(in.readVarint());
+        int startDay = birthDay + in.readLength();
+        int mask = in.readVarint();
+        if (birthDay < FIRST_DAY || startDay > LAST_DAY || startDay < birthDay) {
+            throw new IllegalArgumentException("Calendar code has invalid dates.");
+        }
+
+        //each edit takes at least 3 bytes, which bounds the arrays below
+        int editCount = in.readLength();
+        if (editCount > in.remaining() / 3) {
+            throw new IllegalArgumentException("Calendar code is truncated.");
+        }
+        int[] editV = new int[editCount];
+        int[] editI = new int[editCount];
+        int[] editChange = new int[editCount];
+        for (int e = 0; e < editCount; e++) {
+            int deltaV = in.readLength();
+            int i = in.readLength();
+            editV[e] = e == 0 ? deltaV : editV[e - 1] + deltaV;
+            editI[e] = e > 0 && deltaV == 0 ? editI[e - 1] + 1 + i : i;
+            editChange[e] = in.readLength();
+        }
+        if (in.remaining() > 0) {
+            throw new IllegalArgumentException("Malformed calendar code.");
+        }
+
+        //the doses are worked out on a form of their own, so that a code that doesn't match its scheme is rejected
+        //before the given form is touched; the catalogs are shared, so the doses fit either form
+        String schemeID = new String(schemeChars);
+        Form scratch = new Form(new DataProvider(schemeID));
+        applyInput(scratch, birthDay, startDay, mask);
+        DataProvider dataProvider = scratch.getDataProvider();
+        VaccineCatalog catalog = dataProvider.getCatalog();
+
+        int doseCount = 0;
+        for (int v = dataProvider.nextSelected(0); v >= 0; v = dataProvider.nextSelected(v + 1)) {
+            doseCount += dataProvider.getDateOffsets(v).length;
+        }
+        VaccineType[] typeOfDose = new VaccineType[doseCount];
+        int[] indexOfDose = new int[doseCount];
+        int[] dayOfDose = new int[doseCount];
+
+        //the edits are sorted in the same order the doses are visited, so they're merged in a single pass
+        int e = 0;
+        int n = 0;
+        for (int v = dataProvider.nextSelected(0); v >= 0; v = dataProvider.nextSelected(v + 1)) {
+            VaccineType type = catalog.get(v);
+            int[] offsets = dataProvider.getDateOffsets(v);
+            for (int i = 0; i < offsets.length; i++) {
+                int day = startDay + offsets[i];
+                if (e < editCount && editV[e] == v && editI[e] == i) {
+                    int change = editChange[e++];
+                    if (change == 0) {
+                        continue;
+                    }
+                    day += unzigzag(change - 1);
+                }
+                typeOfDose[n] = type;
+                indexOfDose[n] = i;
+                dayOfDose[n] = day;
+                n++;
+            }
+        }
+        //an edit that wasn't merged points at a dose that doesn't exist
+        if (e < editCount) {
+            throw new IllegalArgumentException("Calendar code doesn't match the scheme.");
+        }
+
+        if (form == null) {
+            form = scratch;
+        } else {
+            //the same input as on the scratch form, which was accepted there, so this can't fail half-way
+            form.getDataProvider().changeChosenVaccinationScheme(schemeID);
+            applyInput(form, birthDay, startDay, mask);
+        }
+        VaccinationCalendar calendar = new VaccinationCalendar(form, startDay, typeOfDose, indexOfDose, dayOfDose, n);
+        calendar.setId(id);
+        return calendar;
+    }
+
+    /**
+     * Sets the dates and the selection of a {@link Form}, already switched to the right scheme, and applies its
+     * form-data handlers.
+     * @throws  IllegalArgumentException
+     *          if the selection doesn't match the scheme.
+     */
+    private static void applyInput(Form form, int birthDay, int startDay, int mask) {
+        form.setDateOfBirth(TinyDate.ofEpochDay(birthDay).toString());
+        form.setDateOfFirstVaccination(TinyDate.ofEpochDay(startDay).toString());
+        form.getDataProvider().restoreSelection(mask);
+        form.getDataProvider().applyFormDataHandlers(form);
+    }
+
+    private static byte[] decodeBase64(String encoded) {
+        if (encoded.length() % 4 == 1) {
+            throw new IllegalArgumentException("Malformed calendar code.");
+        }
+        byte[] bytes = new byte[encoded.length() * 3 / 4];
+        int chunk = 0;
+        int bits = 0;
+        int n = 0;
+        for (int c = 0; c < encoded.length(); c++) {
+            chunk = (chunk << 6) | base64Value(encoded.charAt(c));
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                bytes[n++] = (byte) (chunk >>> bits);
+            }
+        }
+        return bytes;
+    }
+
+    private static int zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static int unzigzag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static int base64Value(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 26;
+        }
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 52;
+        }
+        if (c == '-') {
+            return 62;
+        }
+        if (c == '_') {
+            return 63;
+        }
+        throw new IllegalArgumentException("Malformed calendar code.");
+    }
+
+    /**
+     * A growable byte buffer. Varints are written as unsigned 32-bit numbers, varlongs as unsigned 64-bit ones.
+     */
+    private static class Output {
+        private byte[] bytes;
+        private int size;
+
+        private Output(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        private void writeByte(int b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) b;
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        private void writeVarlong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    /**
+     * Reads from an encoded calendar, rejecting truncated input and overlong varints.
+     */
+    private static class Input {
+        private final byte[] bytes;
+        private int position;
+
+        private Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private int readByte() {
+            if (position == bytes.length) {
+                throw new IllegalArgumentException("Calendar code is truncated.");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed calendar code.");
+        }
+
+        private long readVarlong() {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed calendar code.");
+        }
+
+        /**
+         * Reads a varint that must not be negative, such as a count or an index.
+         */
+        private int readLength() {
+            int value = readVarint();
+            if (value < 0) {
+                throw new IllegalArgumentException("Malformed calendar code.");
+            }
+            return value;
+        }
+
+        private int remaining() {
+            return bytes.length - position;
+        }
+    }
+}
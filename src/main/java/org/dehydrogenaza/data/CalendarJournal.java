@@ -0,0 +1,253 @@
+package org.dehydrogenaza.data;
+
+import org.dehydrogenaza.data.utils.TinyDate;
+
+/**
+ * Persists a {@link VaccinationCalendar} as an append-only journal of edits, so that saving a change costs one small
+ * write, however big the calendar is.
+ * <p>The journal starts with a snapshot of the freshly generated calendar (see {@link CalendarCodec}), followed by
+ * one short record per edited dose:</p>
+ * <ul>
+ *     <li><code>M</code><i>vaccine</i><code>.</code><i>dose</i><code>.</code><i>day</i>: the dose was moved to the
+ *     given epoch day,</li>
+ *     <li><code>R</code><i>vaccine</i><code>.</code><i>dose</i>: the dose was removed,</li>
+ *     <li><code>T</code><i>vaccine</i>: every dose of the vaccine was removed,</li>
+ *     <li><code>S</code><i>mask</i>: the selection changed (see {@link DataProvider#getSelectionMask()}),</li>
+ * </ul>
+ * <p>where <i>vaccine</i> is an index into the {@link VaccineCatalog} and <i>dose</i> an index into the series (see
+ * {@link Dose#getDoseIndex()}). Restoring decodes the snapshot and replays the records on top of it. Once the number
+ * of records reaches a threshold, the current calendar becomes the new snapshot and the records are dropped, so
+ * restoring never has to replay more than that. The {@link JournalStore} switches to the new snapshot atomically, so
+ * an interrupted compaction never replays records that are already part of the snapshot.</p>
+ */
+public class CalendarJournal {
+    private static final char MOVE = 'M';
+    private static final char REMOVE = 'R';
+    private static final char REMOVE_TYPE = 'T';
+    private static final char SELECT = 'S';
+
+    private final JournalStore store;
+    /**
+     * The number of records that triggers a compaction.
+     */
+    private final int compactionThreshold;
+
+    /**
+     * The journaled calendar, or <code>null</code> until {@link #start(VaccinationCalendar)} or
+     * {@link #restore(Form)} is called.
+     */
+    private VaccinationCalendar calendar;
+    /**
+     * The catalog of the {@link #calendar} when the last snapshot was taken. Records refer to its indices.
+     */
+    private VaccineCatalog catalog;
+    /**
+     * The last selection in the journal, so that {@link #recordSelection()} only writes actual changes.
+     */
+    private int selectionMask;
+
+    /**
+     * Constructs a journal.
+     * @param   store
+     *          where the snapshot and records are kept.
+     * @param   compactionThreshold
+     *          the number of records after which a new snapshot is taken.
+     */
+    public CalendarJournal(JournalStore store, int compactionThreshold) {
+        this.store = store;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Starts a new journal for a newly generated calendar, discarding the previous one.
+     * @param   newCalendar
+     *          the calendar to journal. Must have been generated from a {@link Form} whose scheme was chosen by ID.
+     */
+    public void start(VaccinationCalendar newCalendar) {
+        calendar = newCalendar;
+        compact();
+    }
+
+    /**
+     * Restores the journaled calendar: decodes the snapshot into the given {@link Form} (see
+     * {@link CalendarCodec#decode(String, Form)}), then replays the records. If the stored journal can't be read
+     * (for example, it was written by an incompatible version), it's discarded, and the form is left as it was: the
+     * whole journal is first replayed on a form of its own, and only then into the given one.
+     * @param   form
+     *          the form to restore the input data into.
+     * @return
+     *          the restored calendar, or <code>null</code> if there's nothing to restore.
+     */
+    public VaccinationCalendar restore(Form form) {
+        String snapshot = store.readSnapshot();
+        if (snapshot == null) {
+            return null;
+        }
+        String[] records = store.readRecords();
+        try {
+            replayAll(CalendarCodec.decodeDetached(snapshot), records);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            calendar = null;
+            store.clear();
+            return null;
+        }
+        //the journal was replayed once already, so it can't fail half-way through this time
+        replayAll(CalendarCodec.decode(snapshot, form), records);
+        return calendar;
+    }
+
+    /**
+     * Records that a {@link Dose} was rescheduled or removed (see
+     * {@link VaccinationCalendar#updateDose(ScheduleForDay, Dose)}).
+     * @param   dose
+     *          the changed dose.
+     * @param   newDate
+     *          the date it was moved to as YYYY-MM-DD, or an empty String if it was removed.
+     */
+    public void recordDoseChange(Dose dose, String newDate) {
+        if (calendar == null) {
+            return;
+        }
+        if (newDate.isEmpty()) {
+            recordRemoval(dose);
+        } else {
+            append(MOVE + doseKey(dose) + '.' + new TinyDate(newDate).toEpochDay());
+        }
+    }
+
+    /**
+     * Records that a whole {@link ScheduleForDay} was rescheduled or removed (see
+     * {@link VaccinationCalendar#updateDate(ScheduleForDay)}), as one record per dose.
+     * @param   date
+     *          the changed date, with its doses.
+     * @param   newDate
+     *          the date it was moved to as YYYY-MM-DD, or an empty String if it was removed.
+     */
+    public void recordDateChange(ScheduleForDay date, String newDate) {
+        for (Dose dose : date.getDoses()) {
+            recordDoseChange(dose, newDate);
+        }
+    }
+
+    /**
+     * Records that a {@link Dose} was removed (see {@link VaccinationCalendar#removeDose(ScheduleForDay, Dose)}).
+     * @param   dose
+     *          the removed dose.
+     */
+    public void recordRemoval(Dose dose) {
+        if (calendar == null) {
+            return;
+        }
+        append(REMOVE + doseKey(dose));
+    }
+
+    /**
+     * Records that every dose of a {@link VaccineType} was removed (see
+     * {@link VaccinationCalendar#removeAllOfType(VaccineType)}).
+     * @param   type
+     *          the removed vaccine.
+     */
+    public void recordRemoval(VaccineType type) {
+        if (calendar == null) {
+            return;
+        }
+        append(REMOVE_TYPE + String.valueOf(indexOf(type)));
+    }
+
+    /**
+     * Records the current selection of vaccines, if it changed since it was last recorded. Should be called after the
+     * calendar is synced with it (see {@link VaccinationCalendar#syncSelection()}); cheap enough to call on every
+     * render. If the scheme itself changed, a new snapshot is taken instead.
+     */
+    public void recordSelection() {
+        if (calendar == null) {
+            return;
+        }
+        DataProvider dataProvider = calendar.getForm().getDataProvider();
+        if (dataProvider.getCatalog() != catalog) {
+            compact();
+        } else if (dataProvider.getSelectionMask() != selectionMask) {
+            selectionMask = dataProvider.getSelectionMask();
+            append(SELECT + String.valueOf(selectionMask));
+        }
+    }
+
+    private void append(String record) {
+        store.append(record);
+        if (store.size() >= compactionThreshold) {
+            compact();
+        }
+    }
+
+    /**
+     * Replaces the journal with a snapshot of the current calendar.
+     */
+    private void compact() {
+        DataProvider dataProvider = calendar.getForm().getDataProvider();
+        store.replaceSnapshot(CalendarCodec.encodeToString(calendar));
+        catalog = dataProvider.getCatalog();
+        selectionMask = dataProvider.getSelectionMask();
+    }
+
+    /**
+     * Makes a freshly decoded snapshot the journaled calendar, and replays the records on top of it.
+     */
+    private void replayAll(VaccinationCalendar snapshot, String[] records) {
+        calendar = snapshot;
+        catalog = snapshot.getForm().getDataProvider().getCatalog();
+        selectionMask = snapshot.getForm().getDataProvider().getSelectionMask();
+        for (String record : records) {
+            replay(record);
+        }
+    }
+
+    private void replay(String record) {
+        DataProvider dataProvider = calendar.getForm().getDataProvider();
+        String[] fields = record.substring(1).split("\\.");
+        switch (record.charAt(0)) {
+            case MOVE: {
+                Dose dose = calendar.findDose(typeAt(fields[0]), Integer.parseInt(fields[1]));
+                int day = Integer.parseInt(fields[2]);
+                ScheduleForDay date = dose == null ? null : calendar.getDateOf(dose);
+                if (date != null && date.getEpochDay() != day) {
+                    dose.setTempDate(TinyDate.ofEpochDay(day).toString());
+                    calendar.updateDose(date, dose);
+                }
+                break;
+            }
+            case REMOVE: {
+                Dose dose = calendar.findDose(typeAt(fields[0]), Integer.parseInt(fields[1]));
+                if (dose != null) {
+                    calendar.removeDose(calendar.getDateOf(dose), dose);
+                }
+                break;
+            }
+            case REMOVE_TYPE:
+                calendar.removeAllOfType(typeAt(fields[0]));
+                break;
+            case SELECT:
+                selectionMask = Integer.parseInt(fields[0]);
+                dataProvider.restoreSelection(selectionMask);
+                calendar.syncSelection();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown journal record: " + record);
+        }
+    }
+
+    private VaccineType typeAt(String index) {
+        return catalog.get(Integer.parseInt(index));
+    }
+
+    /**
+     * @return
+     *          <i>vaccine</i><code>.</code><i>dose</i>, as used in the records.
+     */
+    private String doseKey(Dose dose) {
+        return indexOf(dose.getType()) + "." + dose.getDoseIndex();
+    }
+
+    private int indexOf(VaccineType type) {
+        return catalog.indexOf(type);
+    }
+}
@@ -0,0 +1,225 @@
+package org.dehydrogenaza.data;
+
+import org.dehydrogenaza.data.utils.TinyDate;
+
+import java.util.Arrays;
+
+/**
+ * Plans the remaining doses for a child who already received some: a catch-up schedule, for children whose
+ * vaccination was interrupted, or started late.
+ * <p>The doses given so far are matched, in date order, against the doses of their series. A dose counts if it was
+ * given at least the minimum interval (see {@link ScheduleSolver#getMinimumInterval(int, int)}) after the previous one
+ * that counted; otherwise, it has to be repeated. Extra doses, beyond the length of the series, are ignored. If the
+ * break between two doses (or since the last one, until today) is longer than allowed for the vaccine (see
+ * {@link VaccineType#getRestartAfter()}), the series starts over; by default it's continued, however late.</p>
+ * <p>The doses that count are then {@link ScheduleSolver#pin(int, int, int) pinned} to the days they were given, and
+ * the remaining ones are scheduled around them, no earlier than today. Doses that are already overdue are given as
+ * soon as their spacing allows, and their series are reported as late (see {@link #isLate(int)}).</p>
+ * <p>A planner keeps its arrays (and its {@link ScheduleSolver}) from one child to the next, so a whole registry can
+ * be planned with a single instance (see {@link #start(Form, int)}). It's not thread-safe.</p>
+ */
+public class CatchUpPlanner {
+    private final ScheduleSolver solver;
+
+    private Form form;
+    private VaccineCatalog catalog;
+    private int today;
+
+    /**
+     * The days the doses of each vaccine were given, by its index in the catalog, in the order they were added.
+     */
+    private final int[][] givenDays = new int[DataProvider.MAX_VACCINES][];
+    private final int[] givenCount = new int[DataProvider.MAX_VACCINES];
+    /**
+     * Results of the last {@link #plan()}, by index in the catalog.
+     */
+    private final int[] countedDoses = new int[DataProvider.MAX_VACCINES];
+    /**
+     * Scratch space: the days of the doses of a single series that count as given.
+     */
+    private int[] countedDays = new int[8];
+    private int restarted;
+    private int late;
+    private int ignoredDoses;
+
+    /**
+     * @param   defaultDaysEarlier
+     *          how many days earlier than their offset the doses of types without a window may be given.
+     * @param   defaultDaysLater
+     *          how many days later than their offset the doses of types without a window may be given.
+     */
+    public CatchUpPlanner(int defaultDaysEarlier, int defaultDaysLater) {
+        this.solver = new ScheduleSolver(0, defaultDaysEarlier, defaultDaysLater);
+        for (int i = 0; i < givenDays.length; i++) {
+            givenDays[i] = new int[4];
+        }
+    }
+
+    /**
+     * Starts planning for a new child, forgetting the doses of the previous one.
+     * @param   form
+     *          the child's form, already submitted, with the vaccines selected (and the scheme's form data handlers
+     *          applied); the offsets are counted from its date of the first vaccination.
+     * @param   today
+     *          the epoch day of the planning; no new dose is scheduled before it.
+     */
+    public void start(Form form, int today) {
+        this.form = form;
+        this.catalog = form.getDataProvider().getCatalog();
+        this.today = today;
+        Arrays.fill(givenCount, 0);
+    }
+
+    /**
+     * Records a dose that the child already received.
+     * @param   vaccineName
+     *          the name of its {@link VaccineType} (see {@link VaccineType#getName()}).
+     * @param   epochDay
+     *          the day it was given.
+     * @return
+     *          <code>false</code> if the vaccine isn't selected for the child (or doesn't exist in the scheme), in
+     *          which case the dose is ignored.
+     */
+    public boolean addGivenDose(String vaccineName, int epochDay) {
+        DataProvider dataProvider = form.getDataProvider();
+        for (int i = dataProvider.nextSelected(0); i >= 0; i = dataProvider.nextSelected(i + 1)) {
+            if (catalog.get(i).getName().equals(vaccineName)) {
+                if (givenCount[i] == givenDays[i].length) {
+                    givenDays[i] = Arrays.copyOf(givenDays[i], givenCount[i] * 2);
+                }
+                givenDays[i][givenCount[i]++] = epochDay;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Plans the remaining doses of every selected vaccine.
+     * @return
+     *          a calendar with the remaining doses only (the ones given already aren't repeated in it).
+     */
+    public VaccinationCalendar plan() {
+        DataProvider dataProvider = form.getDataProvider();
+        solver.clear(new TinyDate(form.getDateOfFirstVaccination()).toEpochDay());
+        int[] seriesOf = solver.addSelection(dataProvider);
+        solver.setNotBefore(today);
+
+        restarted = 0;
+        late = 0;
+        ignoredDoses = 0;
+        int remaining = 0;
+        for (int i = dataProvider.nextSelected(0); i >= 0; i = dataProvider.nextSelected(i + 1)) {
+            countedDoses[i] = countGivenDoses(i, seriesOf[i]);
+            remaining += solver.getDoseCount(seriesOf[i]) - countedDoses[i];
+        }
+        solver.solve();
+
+        VaccineType[] typeOfDose = new VaccineType[remaining];
+        int[] indexOfDose = new int[remaining];
+        int[] dayOfDose = new int[remaining];
+        int n = 0;
+        for (int i = dataProvider.nextSelected(0); i >= 0; i = dataProvider.nextSelected(i + 1)) {
+            int series = seriesOf[i];
+            //the days of given doses may break the rules too, but only the remaining doses can be late
+            if (!solver.isFeasible(series) && countedDoses[i] < solver.getDoseCount(series)) {
+                late |= 1 << i;
+            }
+            for (int dose = countedDoses[i]; dose < solver.getDoseCount(series); dose++) {
+                typeOfDose[n] = catalog.get(i);
+                indexOfDose[n] = dose;
+                dayOfDose[n] = solver.getDay(series, dose);
+                n++;
+            }
+        }
+        return new VaccinationCalendar(form, solver.getStartDay(), typeOfDose, indexOfDose, dayOfDose, n);
+    }
+
+    /**
+     * Matches the doses given of a vaccine against its series, and pins the ones that count.
+     * @return
+     *          the number of doses of the series that count as given.
+     */
+    private int countGivenDoses(int index, int series) {
+        VaccineType type = catalog.get(index);
+        int[] days = givenDays[index];
+        int given = givenCount[index];
+        Arrays.sort(days, 0, given);
+        int restartAfter = type.getRestartAfter();
+        int doseCount = solver.getDoseCount(series);
+        if (countedDays.length < doseCount) {
+            countedDays = new int[doseCount];
+        }
+
+        int counted = 0;
+        for (int g = 0; g < given; g++) {
+            int day = days[g];
+            if (counted > 0 && restartAfter > 0 && day - countedDays[counted - 1] > restartAfter) {
+                restart(index, counted);
+                counted = 0;
+            }
+            if (counted == doseCount
+                    || counted > 0 && day - countedDays[counted - 1] < solver.getMinimumInterval(series, counted)) {
+                //beyond the series, or too soon after the previous dose (which means it has to be given again)
+                ignoredDoses++;
+                continue;
+            }
+            countedDays[counted++] = day;
+        }
+        if (counted > 0 && counted < doseCount && restartAfter > 0
+                && today - countedDays[counted - 1] > restartAfter) {
+            restart(index, counted);
+            counted = 0;
+        }
+
+        for (int dose = 0; dose < counted; dose++) {
+            solver.pin(series, dose, countedDays[dose]);
+        }
+        return counted;
+    }
+
+    private void restart(int index, int counted) {
+        restarted |= 1 << index;
+        ignoredDoses += counted;
+    }
+
+    /**
+     * @param   index
+     *          the index of a vaccine in the catalog.
+     * @return
+     *          the number of doses of the vaccine that counted as given, in the last {@link #plan()}.
+     */
+    public int getCountedDoses(int index) {
+        return countedDoses[index];
+    }
+
+    /**
+     * @param   index
+     *          the index of a vaccine in the catalog.
+     * @return
+     *          <code>true</code> if the series of the vaccine was started over in the last {@link #plan()}.
+     */
+    public boolean isRestarted(int index) {
+        return (restarted & 1 << index) != 0;
+    }
+
+    /**
+     * @param   index
+     *          the index of a vaccine in the catalog.
+     * @return
+     *          <code>true</code> if some remaining dose of the vaccine couldn't be planned within its window (or
+     *          apart from the vaccines it should avoid) in the last {@link #plan()}, usually because it's overdue.
+     */
+    public boolean isLate(int index) {
+        return (late & 1 << index) != 0;
+    }
+
+    /**
+     * @return
+     *          the number of given doses that didn't count in the last {@link #plan()}: given too soon, beyond the
+     *          length of the series, or before the series was started over.
+     */
+    public int getIgnoredDoses() {
+        return ignoredDoses;
+    }
+}
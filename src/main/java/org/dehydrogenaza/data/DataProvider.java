@@ -12,28 +12,69 @@ import java.util.List;
  * <p><s>Proper implementation will probably read the data from a JSON file.</s> <strong>Nope, that costs a ton in terms of
  * JS size!</strong>
  * </strong></p>
+ * <p>The vaccine data itself is shared and immutable (see {@link VaccineCatalog}); a DataProvider holds only the
+ * state of a single user: the chosen scheme, the selection and the date offsets that apply to them.</p>
  */
 public class DataProvider {
     /**
-     * Currently used Source of vaccination data.
+     * The ID of the currently chosen {@link VaccinationScheme} (see {@link IVaccineSource#forScheme(String)}), or
+     * <code>null</code> if the source was supplied directly.
      */
-    private IVaccineSource vaccinesSource;
+    private String chosenSchemeID;
     /**
-     * All available vaccines in the currently selected vaccination plan. Includes defaults and optionals.
+     * The shared, immutable data of the currently chosen vaccination plan (see {@link IVaccineSource#getCatalog()}).
      */
-    private final List<VaccineType> vaccines;
+    private VaccineCatalog catalog;
+    /**
+     * This user's view of all available vaccines in the currently selected vaccination plan, one
+     * {@link VaccineChoice} per vaccine in the {@link #catalog}. Includes defaults and optionals.
+     */
+    private final List<VaccineChoice> vaccines = new ArrayList<>();
+    /**
+     * Every {@link VaccineChoice} created so far, by index. {@link #vaccines} is a prefix of this list, so switching
+     * schemes doesn't allocate.
+     */
+    private final List<VaccineChoice> choices = new ArrayList<>();
     /**
      * A list of all {@link VaccinationScheme}s that can be selected by the user. The schemes only *visually*
      * represent the vaccination plans and don't hold any vaccination data themselves (the data is provided by
      * {@link IVaccineSource}s instead).
      */
     private final List<VaccinationScheme> schemes;
+    /**
+     * Selection state of {@link #vaccines} as a bitset: bit <i>i</i> is set if the vaccine at index <i>i</i> of the
+     * current scheme is selected. Changed through {@link #setSelected(int, boolean)} (bound to the HTML by
+     * {@link VaccineChoice#setSelected(boolean)}).
+     * <p>An <code>int</code> rather than a <code>long</code>, because TeaVM has to emulate 64-bit integers in
+     * JavaScript; this limits a scheme to {@link #MAX_VACCINES} vaccines.</p>
+     */
+    private int selectionMask;
+    /**
+     * The date offsets that apply to this user, by vaccine index. Start out as the {@link VaccineType}'s defaults (or
+     * the variant that matches the default selection) and may be replaced by the {@link #catalog}'s constraints and
+     * form-data handlers (see {@link #setDateOffsets(int, int...)}).
+     */
+    private int[][] dateOffsets = new int[0][];
 
-    public DataProvider(IVaccineSource vaccinesSource) {
-        // TODO: Should probably copy the list of vaccines from the source!
+    /**
+     * Maximum number of {@link VaccineType}s in a single scheme, limited by the size of {@link #selectionMask}.
+     */
+    public static final int MAX_VACCINES = Integer.SIZE;
+
+    /**
+     * Constructs a DataProvider for the {@link VaccinationScheme} with the given ID.
+     * @param   schemeID
+     *          the ID of the initially chosen scheme.
+     * @throws  IllegalArgumentException
+     *          if there's no scheme with the given ID.
+     */
+    public DataProvider(String schemeID) {
+        this(IVaccineSource.forScheme(schemeID));
+        this.chosenSchemeID = schemeID;
+    }
 
-        this.vaccinesSource = vaccinesSource;
-        vaccines = vaccinesSource.getVaccines();
+    public DataProvider(IVaccineSource vaccinesSource) {
+        loadCatalog(vaccinesSource.getCatalog());
 
         schemes = buildSchemesList();
     }
@@ -67,29 +108,191 @@ public class DataProvider {
     }
 
     /**
-     * Gets the list of all potential {@link VaccineType}s. <strong>The list is mutable.</strong> It's used for
-     * displaying the vaccine selection, the results (suggested vaccination dates), as well as tracking the selection
-     * toggle.
+     * Gets this user's view of all potential vaccines. The same list instance is kept (and refilled) when the scheme
+     * changes; it should not be modified by the caller. It's used for displaying and tracking the vaccine selection.
      * @return
      *          all supported vaccines.
      */
-    public List<VaccineType> getVaccines() {
+    public List<VaccineChoice> getVaccines() {
         return vaccines;
     }
 
+    /**
+     * @return
+     *          the shared catalog of the currently chosen scheme.
+     */
+    public VaccineCatalog getCatalog() {
+        return catalog;
+    }
+
 
-    // TODO: Copy the list from the source. Make the original list immutable.
     /**
-     * Updates the currently selected {@link VaccinationScheme}, which involves replacing the list of available
-     * {@link VaccineType}s.
+     * Updates the currently selected {@link VaccinationScheme}. The new scheme's {@link VaccineCatalog} is shared,
+     * so only this user's selection and offsets are reset to its defaults.
      * @param   newSource
      *          the newly selected source of data, corresponding to the chosen scheme.
      */
     public void changeChosenVaccinationScheme(IVaccineSource newSource) {
-        vaccinesSource = newSource;
+        chosenSchemeID = null;
+        loadCatalog(newSource.getCatalog());
+    }
 
-        vaccines.clear();
-        vaccines.addAll(vaccinesSource.getVaccines());
+    /**
+     * Updates the currently selected {@link VaccinationScheme} to the one with the given ID.
+     * @param   schemeID
+     *          the ID of the newly selected scheme.
+     * @throws  IllegalArgumentException
+     *          if there's no scheme with the given ID.
+     */
+    public void changeChosenVaccinationScheme(String schemeID) {
+        changeChosenVaccinationScheme(IVaccineSource.forScheme(schemeID));
+        chosenSchemeID = schemeID;
+    }
+
+    /**
+     * @return
+     *          the ID of the currently chosen {@link VaccinationScheme}, or <code>null</code> if the current
+     *          {@link IVaccineSource} was supplied directly rather than by ID.
+     */
+    public String getChosenSchemeID() {
+        return chosenSchemeID;
+    }
+
+    /**
+     * Checks if the vaccine at the given index of the current scheme is selected.
+     * @param   index
+     *          the index of the vaccine in {@link #getVaccines()}.
+     * @return
+     *          <code>true</code> if the vaccine is selected.
+     */
+    public boolean isSelected(int index) {
+        return (selectionMask & (1 << index)) != 0;
+    }
+
+    /**
+     * Selects or deselects the vaccine at the given index, together with everything the catalog's constraints imply
+     * (for example deselecting an excluded vaccine, and switching to another offset variant). Resolved in a single
+     * step, whatever the number of affected vaccines.
+     * @param   index
+     *          the index of the vaccine in {@link #getVaccines()}.
+     * @param   selected
+     *          the new status of the vaccine.
+     */
+    public void setSelected(int index, boolean selected) {
+        if (isSelected(index) == selected) {
+            return;
+        }
+        int newMask = catalog.resolveSelection(selectionMask, index, selected);
+        int changed = selectionMask ^ newMask;
+        selectionMask = newMask;
+        catalog.resolveOffsets(changed, selectionMask, dateOffsets);
     }
 
+    /**
+     * Replaces the whole selection at once, for example with one decoded by {@link CalendarCodec}, and picks the
+     * offset variants again. Unlike {@link #setSelected(int, boolean)}, no constraints are applied: the mask is
+     * expected to come from a selection that was valid for the same scheme.
+     * @param   mask
+     *          the new selection (see {@link #getSelectionMask()}).
+     * @throws  IllegalArgumentException
+     *          if the mask selects a vaccine that isn't part of the current scheme.
+     */
+    void restoreSelection(int mask) {
+        if (catalog.size() < MAX_VACCINES && (mask >>> catalog.size()) != 0) {
+            throw new IllegalArgumentException("Selection doesn't match the scheme.");
+        }
+        selectionMask = mask;
+        catalog.resolveOffsets(-1, selectionMask, dateOffsets);
+    }
+
+    /**
+     * Returns the date offsets of the vaccine at the given index, as they currently apply to this user. The array
+     * must not be modified.
+     * @param   index
+     *          the index of the vaccine in {@link #getVaccines()}.
+     * @return
+     *          the date offsets, in days.
+     */
+    public int[] getDateOffsets(int index) {
+        return dateOffsets[index];
+    }
+
+    /**
+     * Replaces the date offsets of the vaccine at the given index, for this user only. Meant to be called by the
+     * form-data handlers of the {@link VaccineCatalog}. Vaccines with offset variants have their offsets picked again
+     * whenever the selection changes.
+     * @param   index
+     *          the index of the vaccine in {@link #getVaccines()}.
+     * @param   offsets
+     *          the new date offsets, in days. Kept by reference and must not be modified afterwards.
+     */
+    public void setDateOffsets(int index, int... offsets) {
+        dateOffsets[index] = offsets;
+    }
+
+    /**
+     * Invokes every form-data handler of the current {@link VaccineCatalog}. Should be called once the form is
+     * submitted, before generating a calendar.
+     * @param   form
+     *          the submitted input {@link Form}.
+     */
+    public void applyFormDataHandlers(Form form) {
+        catalog.applyFormDataHandlers(form);
+    }
+
+    /**
+     * Returns the index of the first selected vaccine at or after <code>fromIndex</code>. To visit every selected
+     * vaccine:
+     * <pre>for (int i = nextSelected(0); i >= 0; i = nextSelected(i + 1))</pre>
+     * @param   fromIndex
+     *          the index to start searching from.
+     * @return
+     *          the index of the next selected vaccine, or <code>-1</code> if there are no more.
+     */
+    public int nextSelected(int fromIndex) {
+        if (fromIndex >= MAX_VACCINES) {
+            return -1;
+        }
+        int remaining = selectionMask & (-1 << fromIndex);
+        return remaining == 0 ? -1 : Integer.numberOfTrailingZeros(remaining);
+    }
+
+    /**
+     * Returns the selection as a bitset (bit <i>i</i> stands for the vaccine at index <i>i</i>). Cheap to hash and
+     * compare, for example to use as a cache key or to see which vaccines changed between two selections.
+     * @return
+     *          the current selection mask.
+     */
+    public int getSelectionMask() {
+        return selectionMask;
+    }
+
+    /**
+     * @return
+     *          the number of selected vaccines.
+     */
+    public int countSelected() {
+        return Integer.bitCount(selectionMask);
+    }
+
+    /**
+     * Switches to the given catalog, resetting the selection and the date offsets to its defaults.
+     */
+    private void loadCatalog(VaccineCatalog newCatalog) {
+        catalog = newCatalog;
+        selectionMask = newCatalog.getDefaultSelectionMask();
+
+        int size = newCatalog.size();
+        dateOffsets = new int[size][];
+        for (int i = 0; i < size; i++) {
+            dateOffsets[i] = newCatalog.get(i).getDateOffsets();
+        }
+        newCatalog.resolveOffsets(-1, selectionMask, dateOffsets);
+
+        while (choices.size() < size) {
+            choices.add(new VaccineChoice(this, choices.size()));
+        }
+        vaccines.clear();
+        vaccines.addAll(choices.subList(0, size));
+    }
 }
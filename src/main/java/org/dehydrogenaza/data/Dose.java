@@ -23,61 +23,63 @@ public class Dose {
     /**
      * The display name used for this dose. Useful in more complex vaccinations, which involve a number of slightly
      * different medications. This allows us to display the accurate name without having to treat the variants as
-     * brand new {@link VaccineType}s. If this parameter is not provided during construction, the default name will
-     * be taken from the VaccineType object itself.
+     * brand new {@link VaccineType}s. Taken from the VaccineType, based on the {@link #doseIndex}.
      */
     private final String altName;
+    /**
+     * Which dose of its {@link VaccineType}'s series this is (an index into {@link VaccineType#getDateOffsets()}).
+     * Together with the type, it identifies the dose in a calendar, even after it's been rescheduled.
+     */
+    private final int doseIndex;
 
     /**
      * Internal YYYY-MM-DD date field, which is <strong>bidirectionally bound to an HTML input field</strong> (in
      * Section 3) for changing this Dose's date. After changes are confirmed by the user, if <code>tempDate</code> is
      * empty, this <code>Dose</code> object is removed from the calendar. Otherwise, its {@link #date} field is updated
      * to reflect the <code>tempDate</code>.
+     * <p>Stays <code>null</code> (meaning: the same as {@link #date}) until first read or written, so that the date
+     * is only formatted when the UI asks for it.</p>
      */
     private String tempDate;
 
     /**
-     * Constructs a Dose with no alternate display name (variant name). The default name of the associated
-     * {@link VaccineType} will be used instead.
-     * @param   type
-     *          the vaccination that this is a dose of.
-     * @param   date
-     *          the date scheduled for this dose.
+     * Checks the {@link #tempDate}. Set by the {@link VaccinationCalendar} that holds this Dose.
      */
-    public Dose(VaccineType type, TinyDate date) {
-        this(type, date, type.getName());
-    }
+    private InputValidator validator = InputValidator.WITHOUT_FORM;
+
+    /**
+     * Incremented whenever the state of this Dose that the UI depends on changes: its {@link #tempDate} or its
+     * {@link #validator}.
+     */
+    private int version;
 
     /**
-     * Constructs a Dose with an alternate display name (variant name). This alternate name can be used to visually
+     * The {@link #version} (and the validator's version) at which {@link #setToNew} and {@link #inBounds} were last
+     * computed. The template reads them for every dose on every render, but they only need to be recomputed after
+     * this Dose (or the bounds) changed.
+     */
+    private int evaluatedVersion = -1;
+    private int evaluatedBoundsVersion;
+    private boolean setToNew;
+    private boolean inBounds;
+
+    /**
+     * Constructs the Dose with the given index of a {@link VaccineType}'s series. Its display name is the variant
+     * name of that dose (see {@link VaccineType#getAltName(int)}); alternate names can be used to visually
      * distinguish related, but technically different medications, but they are not taken into account for internal
      * processing of the schedule (they're used only for display purposes).
      * @param   type
      *          the vaccination that this is a dose of.
      * @param   date
      *          the date scheduled for this dose.
-     * @param   altName
-     *          the display name of this dose.
+     * @param   doseIndex
+     *          which dose of the series this is, as an index into the type's date offsets.
      */
-    public Dose(VaccineType type, TinyDate date, String altName) {
+    public Dose(VaccineType type, TinyDate date, int doseIndex) {
         this.type = type;
         this.date = date;
-        this.altName = altName;
-
-        this.tempDate = date.toString();
-    }
-
-    /**
-     * Constructs a Dose based on a date provided as a YYYY-MM-DD <code>String</code>. <i>Consider this constructor
-     * deprecated and try not to use it.</i> The constructor assumes that the input String is properly formatted and
-     * within accepted range of dates.
-     * @param   type
-     *          the vaccination that this is a dose of.
-     * @param   date
-     *          the date scheduled for this dose, as a YYYY-MM-DD <code>String</code>.
-     */
-    public Dose(VaccineType type, String date) {
-        this(type, new TinyDate(date));
+        this.doseIndex = doseIndex;
+        this.altName = type.getAltName(doseIndex);
     }
 
     public VaccineType getType() {
@@ -92,6 +94,10 @@ public class Dose {
         return altName;
     }
 
+    public int getDoseIndex() {
+        return doseIndex;
+    }
+
     /**
      * This value is bidirectionally bound to an HTML input field, in Section 3 (individual doses display). Note
      * that the <strong>tempDate</strong> does not represent the actual date scheduled for this Dose, but is merely
@@ -100,6 +106,9 @@ public class Dose {
      *          The temporary date <code>String</code>, in YYYY-MM-DD format. Used for display purposes.
      */
     public String getTempDate() {
+        if (tempDate == null) {
+            tempDate = date.toString();
+        }
         return tempDate;
     }
 
@@ -112,6 +121,16 @@ public class Dose {
      */
     public void setTempDate(String tempDate) {
         this.tempDate = tempDate;
+        version++;
+    }
+
+    /**
+     * @return
+     *          a number that changes whenever the {@link #tempDate} (or the {@link InputValidator}) of this Dose
+     *          changes.
+     */
+    public int getVersion() {
+        return version;
     }
 
     /**
@@ -123,7 +142,8 @@ public class Dose {
      *          {@link #date}, <code>false</code> otherwise.
      */
     public boolean isSetToNew() {
-        return !date.toString().equals(tempDate) && !tempDate.isEmpty();
+        evaluate();
+        return setToNew;
     }
 
     /**
@@ -133,16 +153,42 @@ public class Dose {
      *          <code>true</code> if {@link #tempDate} is empty.
      */
     public boolean isSetToRemove() {
-        return tempDate.isEmpty();
+        return tempDate != null && tempDate.isEmpty();
     }
 
     /**
-     * Invokes {@link InputValidator} to check whether the {@link #tempDate} inputted by the user is correct.
+     * Invokes the {@link InputValidator} of this Dose's calendar to check whether the {@link #tempDate} inputted by
+     * the user is correct. The result is cached until the <i>tempDate</i> or the bounds change.
      * @return
      *          <code>true</code> if the input is valid.
      */
     public boolean isInBounds() {
-        return InputValidator.validateBounds(tempDate);
+        evaluate();
+        return inBounds;
+    }
+
+    /**
+     * Binds this Dose to the {@link InputValidator} of the calendar it's added to.
+     */
+    void setValidator(InputValidator validator) {
+        if (this.validator != validator) {
+            this.validator = validator;
+            version++;
+        }
+    }
+
+    /**
+     * Recomputes {@link #setToNew} and {@link #inBounds}, unless neither this Dose nor the bounds changed since they
+     * were last computed.
+     */
+    private void evaluate() {
+        if (evaluatedVersion == version && evaluatedBoundsVersion == validator.getVersion()) {
+            return;
+        }
+        setToNew = tempDate != null && !tempDate.isEmpty() && !date.toString().equals(tempDate);
+        inBounds = validator.validateBounds(getTempDate());
+        evaluatedVersion = version;
+        evaluatedBoundsVersion = validator.getVersion();
     }
 
     /**
@@ -1,7 +1,9 @@
 package org.dehydrogenaza.data;
 
 
+import org.dehydrogenaza.data.utils.DateCodec;
 import org.dehydrogenaza.data.utils.DisplayState;
+import org.dehydrogenaza.data.utils.FormInputValidator;
 
 import java.util.List;
 
@@ -18,9 +20,14 @@ public class Form {
 
 
     /**
-     * List of supported vaccines, taken from the {@link #dataProvider}.
+     * Checks user input against the bounds set by this Form (such as the date of birth).
      */
-    private final List<VaccineType> vaccines;
+    private final FormInputValidator validator = new FormInputValidator();
+
+    /**
+     * List of supported vaccines (this user's view of them), taken from the {@link #dataProvider}.
+     */
+    private final List<VaccineChoice> vaccines;
 
     /**
      * List of supported "schemes" ("plans", such as the government-funded free vaccination plan), taken from the
@@ -86,8 +93,20 @@ public class Form {
         this.schemes = dataProvider.getSchemes();
     }
 
+    public DataProvider getDataProvider() {
+        return dataProvider;
+    }
+
+    /**
+     * @return
+     *          the {@link FormInputValidator} bound to this Form.
+     */
+    public FormInputValidator getValidator() {
+        return validator;
+    }
+
 //  TODO: Refactor so that the SOURCE provides the full list, and FORM only the selected ones
-    public List<VaccineType> getVaccines() {
+    public List<VaccineChoice> getVaccines() {
         return vaccines;
     }
 
@@ -114,6 +133,7 @@ public class Form {
     public void setDateOfBirth(String dateOfBirth) {
         this.dateOfBirth = dateOfBirth;
         dateOfBirthMissing = dateOfBirth.isEmpty();
+        validator.setDateOfBirth(dateOfBirth);
 
         setDateOfFirstVaccination(dateOfBirth);
     }
@@ -201,35 +221,32 @@ public class Form {
     }
 
 
-//    TODO: perform more robust checks, for example with malformed Strings etc.
 //    TODO: possibly check if dates are within reasonable ranges
     // TODO: move some or all of this to the InputValidator
     /**
      * Checks if the current input dates ({@link #dateOfBirth} and {@link #dateOfFirstVaccination}) are properly
-     * formatted AND if the first vaccination doesn't come earlier than the birthdate.
+     * formatted AND if the first vaccination doesn't come earlier than the birthdate. Both are parsed by the
+     * {@link DateCodec}, so no Strings are created along the way.
      * @return
      *          <code>true</code> if it's OK to proceed, <code>false</code> otherwise.
      */
     private boolean validateDates() {
-        try {
-            //TODO: Use TinyDate instead, possibly allows us to get rid of Integer usage
-            //YYYY-MM-DD
-            int parsedBirth = Integer.parseInt(dateOfBirth.substring(0, 4)
-                    + dateOfBirth.substring(5, 7)
-                    + dateOfBirth.substring(8, 10));
-            if (parsedBirth < 19000101) {
-                dateOfBirthMissing = true;
-                return false;
-            }
-
-            int parsedFirstVaccination = Integer.parseInt(dateOfFirstVaccination.substring(0, 4)
-                    + dateOfFirstVaccination.substring(5, 7)
-                    + dateOfFirstVaccination.substring(8, 10));
-
-            dateOfFirstVaccinationTooEarly = parsedFirstVaccination < parsedBirth;
-            return !dateOfFirstVaccinationTooEarly;
-        } catch (Exception e) {
+        //YYYYMMDD, or negative if malformed
+        int parsedBirth = DateCodec.parse(dateOfBirth);
+        if (!DateCodec.isValid(parsedBirth)) {
+            return false;
+        }
+        if (parsedBirth < 19000101) {
+            dateOfBirthMissing = true;
             return false;
         }
+
+        int parsedFirstVaccination = DateCodec.parse(dateOfFirstVaccination);
+        if (!DateCodec.isValid(parsedFirstVaccination)) {
+            return false;
+        }
+
+        dateOfFirstVaccinationTooEarly = parsedFirstVaccination < parsedBirth;
+        return !dateOfFirstVaccinationTooEarly;
     }
 }
@@ -0,0 +1,158 @@
+package org.dehydrogenaza.data;
+
+import org.dehydrogenaza.data.utils.TinyDate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * A combined timeline of several children's {@link VaccinationCalendar}s (for example, of siblings), as a single
+ * sequence of {@link HouseholdVisit}s: one per day on which at least one child is to be vaccinated, with every child
+ * due that day grouped together.
+ * <p>Each calendar is already sorted (see {@link VaccinationCalendar#get()}), so the timeline is produced lazily, by
+ * a k-way merge: a priority queue holds the next day of each of the <i>k</i> calendars, and every visit takes the
+ * earliest ones off it. Iterating over the whole timeline therefore costs O(<i>n</i>&nbsp;log&nbsp;<i>k</i>) for
+ * <i>n</i> scheduled days in total, and never copies the calendars or their doses.</p>
+ * <p>The calendars are read as they are when iterating, so they should not be changed while a timeline is being
+ * iterated over.</p>
+ */
+public class HouseholdTimeline implements Iterable<HouseholdVisit> {
+    private final List<String> children = new ArrayList<>();
+    private final List<VaccinationCalendar> calendars = new ArrayList<>();
+
+    /**
+     * Adds a child's calendar to the household. The calendar is not copied, so later changes to it are reflected in
+     * the timeline.
+     * @param   name
+     *          the child's name, used to tag their doses.
+     * @param   calendar
+     *          the child's calendar.
+     */
+    public void addChild(String name, VaccinationCalendar calendar) {
+        children.add(name);
+        calendars.add(calendar);
+    }
+
+    /**
+     * Removes every child from the household.
+     */
+    public void clear() {
+        children.clear();
+        calendars.clear();
+    }
+
+    /**
+     * @return
+     *          the number of children in the household.
+     */
+    public int size() {
+        return children.size();
+    }
+
+    /**
+     * @return
+     *          the names of the children, in the order they were added (read-only).
+     */
+    public List<String> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    public VaccinationCalendar getCalendar(int index) {
+        return calendars.get(index);
+    }
+
+    /**
+     * @return
+     *          the visits of the household, from the earliest; computed while iterating.
+     */
+    @Override
+    public Iterator<HouseholdVisit> iterator() {
+        return new Merge();
+    }
+
+    /**
+     * The position within the calendar of one child.
+     */
+    private static final class Cursor implements Comparable<Cursor> {
+        private final int child;
+        private final List<ScheduleForDay> dates;
+        private int position;
+        /**
+         * The epoch day of <code>dates.get(position)</code>.
+         */
+        private int day;
+
+        Cursor(int child, List<ScheduleForDay> dates) {
+            this.child = child;
+            this.dates = dates;
+            this.day = dates.get(0).getEpochDay();
+        }
+
+        /**
+         * @return
+         *          <code>false</code> if this calendar has no more dates.
+         */
+        boolean advance() {
+            if (++position == dates.size()) {
+                return false;
+            }
+            day = dates.get(position).getEpochDay();
+            return true;
+        }
+
+        /**
+         * By day, and for the same day, in the order the children were added.
+         */
+        @Override
+        public int compareTo(Cursor other) {
+            if (day != other.day) {
+                return day < other.day ? -1 : 1;
+            }
+            return Integer.compare(child, other.child);
+        }
+    }
+
+    private final class Merge implements Iterator<HouseholdVisit> {
+        private final PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, calendars.size()));
+
+        Merge() {
+            for (int i = 0; i < calendars.size(); i++) {
+                List<ScheduleForDay> dates = calendars.get(i).get();
+                if (!dates.isEmpty()) {
+                    queue.add(new Cursor(i, dates));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public HouseholdVisit next() {
+            Cursor earliest = queue.peek();
+            if (earliest == null) {
+                throw new NoSuchElementException();
+            }
+
+            int day = earliest.day;
+            TinyDate date = earliest.dates.get(earliest.position).getTinyDate();
+            List<String> visitChildren = new ArrayList<>(2);
+            List<ScheduleForDay> visitSchedules = new ArrayList<>(2);
+            while (!queue.isEmpty() && queue.peek().day == day) {
+                Cursor cursor = queue.poll();
+                visitChildren.add(children.get(cursor.child));
+                visitSchedules.add(cursor.dates.get(cursor.position));
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+            return new HouseholdVisit(date, visitChildren, visitSchedules);
+        }
+    }
+}
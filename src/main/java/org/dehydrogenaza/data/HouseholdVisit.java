@@ -0,0 +1,75 @@
+package org.dehydrogenaza.data;
+
+import org.dehydrogenaza.data.utils.TinyDate;
+
+import java.util.List;
+
+/**
+ * A single day of a {@link HouseholdTimeline}: the {@link ScheduleForDay}s of every child with vaccinations scheduled
+ * for that day, so that siblings can be vaccinated during one visit.
+ * <p>The doses stay in their children's own calendars: a visit only points to them, tagged with the child's name, in
+ * the order in which the children were added to the household.</p>
+ */
+public class HouseholdVisit {
+    private final TinyDate date;
+    private final List<String> children;
+    private final List<ScheduleForDay> schedules;
+
+    HouseholdVisit(TinyDate date, List<String> children, List<ScheduleForDay> schedules) {
+        this.date = date;
+        this.children = children;
+        this.schedules = schedules;
+    }
+
+    /**
+     * @return
+     *          the date of the visit, formatted as YYYY-MM-DD.
+     */
+    public String getDate() {
+        return date.toString();
+    }
+
+    public TinyDate getTinyDate() {
+        return date;
+    }
+
+    /**
+     * @return
+     *          the number of children vaccinated during this visit.
+     */
+    public int size() {
+        return children.size();
+    }
+
+    /**
+     * @param   index
+     *          the position of the child in this visit, from <code>0</code> to {@link #size()}.
+     * @return
+     *          the name of the child.
+     */
+    public String getChild(int index) {
+        return children.get(index);
+    }
+
+    /**
+     * @param   index
+     *          the position of the child in this visit, from <code>0</code> to {@link #size()}.
+     * @return
+     *          the child's {@link ScheduleForDay} for this day, from their own calendar.
+     */
+    public ScheduleForDay getSchedule(int index) {
+        return schedules.get(index);
+    }
+
+    /**
+     * @return
+     *          the total number of doses given during this visit, to all children.
+     */
+    public int getDoseCount() {
+        int count = 0;
+        for (ScheduleForDay schedule : schedules) {
+            count += schedule.getDoses().size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,47 @@
+package org.dehydrogenaza.data;
+
+/**
+ * Persistent storage for a {@link CalendarJournal}: a single snapshot, followed by an append-only list of small
+ * records. Implementations only need to append in place; they never rewrite existing records.
+ */
+public interface JournalStore {
+
+    /**
+     * @return
+     *          the stored snapshot, or <code>null</code> if there is none.
+     */
+    String readSnapshot();
+
+    /**
+     * @return
+     *          the records appended since the last snapshot, in order.
+     */
+    String[] readRecords();
+
+    /**
+     * @return
+     *          the number of records appended since the last snapshot.
+     */
+    int size();
+
+    /**
+     * Appends a single record. Its cost should not depend on the number (or size) of the records already stored.
+     * @param   record
+     *          the record to append (printable ASCII, without line breaks).
+     */
+    void append(String record);
+
+    /**
+     * Replaces the snapshot and discards every record, as a single step: if the call is interrupted, the store must
+     * still hold either the old snapshot with all of its records, or the new snapshot with none. (Records are not
+     * idempotent, so the new snapshot must never be combined with the old records.)
+     * @param   snapshot
+     *          the new snapshot.
+     */
+    void replaceSnapshot(String snapshot);
+
+    /**
+     * Removes the snapshot and every record.
+     */
+    void clear();
+}
@@ -12,29 +12,58 @@ import java.util.List;
 public class ScheduleForDay {
 
     /**
-     * Date as a YYYY-MM-DD <code>String</code>, which is the format used by web browsers for input fields.
+     * The date of this Schedule. Its YYYY-MM-DD form (the format used by web browsers for input fields) is cached by
+     * the TinyDate itself, so it's only formatted once the UI (or an export) asks for it.
      */
-    private String dateISO;
+    private TinyDate date;
 
     /**
      * Internal YYYY-MM-DD date field, which is <strong>bidirectionally bound to an HTML input field</strong> for
      * changing this ScheduleForDay's date. After changes are confirmed by the user, if <code>tempDate</code> is
-     * empty, this <code>ScheduleForDay</code> object is removed from the calendar. Otherwise, its {@link #dateISO} and
-     * {@link #dateInternal}
-     * fields are updated to reflect the <code>tempDate</code>.
+     * empty, this <code>ScheduleForDay</code> object is removed from the calendar. Otherwise, its {@link #date} field
+     * is updated to reflect the <code>tempDate</code>.
+     * <p>Stays <code>null</code> (meaning: the same as {@link #date}) until first read or written.</p>
      */
     private String tempDate;
 
     /**
-     * For convenience, the same date as a {@link TinyDate}.
+     * Vaccines scheduled for this date.
      */
-    private TinyDate dateInternal;
+    private final List<Dose> doses;
 
     /**
-     * Vaccines scheduled for this date.
+     * Checks the {@link #tempDate}. Set by the {@link VaccinationCalendar} that holds this ScheduleForDay.
      */
-    private final List<Dose> doses;
+    private InputValidator validator = InputValidator.WITHOUT_FORM;
+
+    /**
+     * Incremented whenever this row changes: its {@link #date}, {@link #tempDate}, {@link #doses} or
+     * {@link #validator}.
+     */
+    private int version;
+
+    /**
+     * The {@link #version} (and the validator's version) at which {@link #setToNew} and {@link #inBounds} were last
+     * computed, so that rendering an unchanged row doesn't recompute them (see {@link Dose#isInBounds()}).
+     */
+    private int evaluatedVersion = -1;
+    private int evaluatedBoundsVersion;
+    private boolean setToNew;
+    private boolean inBounds;
+
 
+    /**
+     * Constructs a <code>ScheduleForDay</code> given a date and a list of {@link Dose}s.
+     * @param   date
+     *          calendar date.
+     * @param   vaccines
+     *          the list of vaccines to administer on that date.
+     */
+    public ScheduleForDay(TinyDate date, List<Dose> vaccines) {
+        this.date = date;
+        //TODO: Defensive copying? think if this should be immutable
+        this.doses = vaccines;
+    }
 
     /**
      * Constructs a <code>ScheduleForDay</code> given a properly formatted input date and a list of
@@ -45,20 +74,18 @@ public class ScheduleForDay {
      *          the list of vaccines to administer on that date.
      */
     public ScheduleForDay(String dateISO, List<Dose> vaccines) {
-        this.dateISO = dateISO;
-        this.tempDate = dateISO;
-        //TODO: Defensive copying? think if this should be immutable
-        this.doses = vaccines;
-
-        dateInternal = new TinyDate(dateISO);
+        this(new TinyDate(dateISO), vaccines);
     }
 
     /**
      * Sets the internal calendar dates to the temporary field (which is bound to user input).
      */
     public void confirmTempValue() {
-        dateISO = tempDate;
-        dateInternal = new TinyDate(dateISO);
+        if (tempDate == null) {
+            return;
+        }
+        date = new TinyDate(tempDate);
+        version++;
     }
 
     /**
@@ -67,7 +94,16 @@ public class ScheduleForDay {
      *          the date in YYYY-MM-DD format.
      */
     public String getDate() {
-        return dateISO;
+        return date.toString();
+    }
+
+    /**
+     * Returns the date as a {@link TinyDate}.
+     * @return
+     *          the date of this Schedule.
+     */
+    public TinyDate getTinyDate() {
+        return date;
     }
 
     /**
@@ -77,7 +113,17 @@ public class ScheduleForDay {
      *          the date as a number.
      */
     public int getDateAsNumber() {
-        return dateInternal.asNumber();
+        return date.asNumber();
+    }
+
+    /**
+     * Returns the date as an <i>epoch day</i> (see {@link TinyDate#toEpochDay()}). Used as the key of this Schedule
+     * in its {@link VaccinationCalendar}.
+     * @return
+     *          the number of days since 1970-01-01.
+     */
+    public int getEpochDay() {
+        return date.toEpochDay();
     }
 
     /**
@@ -88,6 +134,9 @@ public class ScheduleForDay {
      *          the value synchronized with the associated HTML input field, representing this Schedule's date.
      */
     public String getTempDate() {
+        if (tempDate == null) {
+            tempDate = getDate();
+        }
         return tempDate;
     }
 
@@ -98,6 +147,15 @@ public class ScheduleForDay {
      */
     public void setTempDate(String tempDate) {
         this.tempDate = tempDate;
+        version++;
+    }
+
+    /**
+     * @return
+     *          a number that changes whenever this ScheduleForDay (its date, input or list of doses) changes.
+     */
+    public int getVersion() {
+        return version;
     }
 
     /**
@@ -117,6 +175,7 @@ public class ScheduleForDay {
      */
     public void addDose(Dose dose) {
         doses.add(dose);
+        version++;
     }
 
     /**
@@ -126,6 +185,7 @@ public class ScheduleForDay {
      */
     public void removeDose(Dose dose) {
         doses.remove(dose);
+        version++;
     }
 
     /**
@@ -137,7 +197,8 @@ public class ScheduleForDay {
      *          from the actual date field and isn't empty; <code>false</code> otherwise.
      */
     public boolean isSetToNew() {
-        return !dateISO.equals(tempDate) && !tempDate.isEmpty();
+        evaluate();
+        return setToNew;
     }
 
     /**
@@ -148,21 +209,48 @@ public class ScheduleForDay {
      *          <code>false</code> otherwise.
      */
     public boolean isSetToRemove() {
-        return tempDate.isEmpty();
+        return tempDate != null && tempDate.isEmpty();
     }
 
     /**
-     * Uses {@link InputValidator} to verify that the {@link #tempDate} (directly taken from user input) is within
-     * accepted bounds: between 1900-01-01 and 3000-12-31, and no earlier than the child's date of birth.
+     * Uses the {@link InputValidator} of this ScheduleForDay's calendar to verify that the {@link #tempDate} (directly
+     * taken from user input) is within accepted bounds: between 1900-01-01 and 3000-12-31, and no earlier than the
+     * child's date of birth.
      * <p>This does not check for malformed input <code>Strings</code> (as they generally shouldn't happen without
      * explicit tampering; we're using a standard HTML <em>input type="date"</em> tag which should return a proper
      * YYYY-MM-DD value. And if the user decides to use the console to override this, that's his problem (we're
      * running everything client-side anyway).</p>
+     * <p>The result is cached until this row or the bounds change.</p>
      * @return
      *          <code>true</code> if the {@link #tempDate} is within expected bounds.
      */
     public boolean isInBounds() {
-        return InputValidator.validateBounds(tempDate);
+        evaluate();
+        return inBounds;
+    }
+
+    /**
+     * Binds this ScheduleForDay to the {@link InputValidator} of the calendar it's added to.
+     */
+    void setValidator(InputValidator validator) {
+        if (this.validator != validator) {
+            this.validator = validator;
+            version++;
+        }
+    }
+
+    /**
+     * Recomputes {@link #setToNew} and {@link #inBounds}, unless neither this row nor the bounds changed since they
+     * were last computed.
+     */
+    private void evaluate() {
+        if (evaluatedVersion == version && evaluatedBoundsVersion == validator.getVersion()) {
+            return;
+        }
+        setToNew = tempDate != null && !tempDate.isEmpty() && !getDate().equals(tempDate);
+        inBounds = validator.validateBounds(getTempDate());
+        evaluatedVersion = version;
+        evaluatedBoundsVersion = validator.getVersion();
     }
 
     /**
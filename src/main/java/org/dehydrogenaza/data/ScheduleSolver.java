@@ -0,0 +1,502 @@
+package org.dehydrogenaza.data;
+
+import java.util.Arrays;
+
+/**
+ * Assigns concrete days to the doses of a child's vaccine series, within their windows (see
+ * {@link VaccineType#getDaysEarlier(int)}), keeping the minimum spacing within each series (see
+ * {@link VaccineType#getMinimumInterval(int)}) and keeping apart the vaccines that shouldn't be given together (see
+ * {@link VaccineCatalog.Builder#notOnSameDay(int, int...)}).
+ * <p>Each dose has a domain: the interval of days it may take. Solving a series propagates these intervals along
+ * it, forward (a dose can't be earlier than the previous one plus the interval between them) and backward (nor so
+ * late that the next one can't follow), and then takes, dose by dose, the day closest to the optimal one (the offset)
+ * within the narrowed interval. A day taken by a vaccine that the series must avoid is skipped, to the next free day
+ * in the interval (or the previous one, if there's none).</p>
+ * <p>Solving is incremental: {@link #pin(int, int, int) pinning} a dose (to the day it was actually given, or to a
+ * day chosen by the user) only marks its own series, and {@link #solve()} only solves the marked series, plus the
+ * series that avoid it, if any of its days changed. Re-solving after a single change therefore costs the same for a
+ * catalog of ten vaccines as for a catch-up schedule of hundreds of series.</p>
+ * <p>Spacing is a hard constraint, windows are soft: if a pinned dose leaves no day inside the window of another dose
+ * (for example, a late dose of a catch-up schedule), the other dose keeps its spacing, and the series is reported as
+ * not {@link #isFeasible(int) feasible}.</p>
+ */
+public class ScheduleSolver {
+    private static final int NOT_PINNED = Integer.MIN_VALUE;
+    private static final int[] NO_SERIES = new int[0];
+
+    /**
+     * The date of the first vaccination, as an epoch day; offsets are counted from it.
+     */
+    private int startDay;
+    private final int defaultDaysEarlier;
+    private final int defaultDaysLater;
+    /**
+     * No dose that isn't pinned may be given before this epoch day (for example, before today, in a catch-up
+     * schedule); {@link #NOT_PINNED} if there's no such limit.
+     */
+    private int notBefore = NOT_PINNED;
+
+    private int seriesCount;
+    private VaccineType[] types = new VaccineType[8];
+    /**
+     * The doses of series <i>s</i> are <code>firstDose[s]</code> to <code>firstDose[s + 1] - 1</code>.
+     */
+    private int[] firstDose = new int[9];
+    /**
+     * The series each series must not share a day with (it's the one that moves), and the series that must not
+     * share a day with it (which need solving again when its days change).
+     */
+    private int[][] avoids = new int[8][];
+    private int[][] avoidedBy = new int[8][];
+    private boolean[] dirty = new boolean[8];
+    /**
+     * The dirty series, to be solved in the current round of {@link #solve()}, and those marked during it, for the
+     * next round.
+     */
+    private int[] queued = new int[8];
+    private int queuedCount;
+    private int[] nextRound = new int[8];
+    private boolean[] feasible = new boolean[8];
+
+    private int doseCount;
+    private int[] optimal = new int[32];
+    private int[] windowFrom = new int[32];
+    private int[] windowTo = new int[32];
+    /**
+     * The minimum number of days since the previous dose of the series (unused for the first one).
+     */
+    private int[] interval = new int[32];
+    private int[] pinned = new int[32];
+    /**
+     * The domain of each dose, narrowed by propagation, and the day finally assigned.
+     */
+    private int[] earliest = new int[32];
+    private int[] latest = new int[32];
+    private int[] day = new int[32];
+
+    /**
+     * @param   startDay
+     *          the date of the first vaccination, as an epoch day.
+     * @param   defaultDaysEarlier
+     *          how many days earlier than their offset the doses of types without a window may be given.
+     * @param   defaultDaysLater
+     *          how many days later than their offset the doses of types without a window may be given.
+     */
+    public ScheduleSolver(int startDay, int defaultDaysEarlier, int defaultDaysLater) {
+        this.startDay = startDay;
+        this.defaultDaysEarlier = defaultDaysEarlier;
+        this.defaultDaysLater = defaultDaysLater;
+    }
+
+    /**
+     * Creates a solver for the vaccines selected in a {@link DataProvider}, with the offsets that apply to the user,
+     * and the scheme's rules about vaccines given together. Series are numbered in catalog order.
+     * @param   dataProvider
+     *          the user's selection and offsets.
+     * @param   startDay
+     *          the date of the first vaccination, as an epoch day.
+     * @param   defaultDaysEarlier
+     *          how many days earlier than their offset the doses of types without a window may be given.
+     * @param   defaultDaysLater
+     *          how many days later than their offset the doses of types without a window may be given.
+     * @return
+     *          a solver, not solved yet.
+     */
+    public static ScheduleSolver forSelection(DataProvider dataProvider, int startDay, int defaultDaysEarlier,
+                                              int defaultDaysLater) {
+        ScheduleSolver solver = new ScheduleSolver(startDay, defaultDaysEarlier, defaultDaysLater);
+        solver.addSelection(dataProvider);
+        return solver;
+    }
+
+    /**
+     * Adds a series for each vaccine selected in a {@link DataProvider}, with the offsets that apply to the user, and
+     * the scheme's rules about vaccines given together (see {@link #forSelection}).
+     * @param   dataProvider
+     *          the user's selection and offsets.
+     * @return
+     *          the number of the series of each vaccine, by its index in the catalog; <code>-1</code> for the vaccines
+     *          that aren't selected.
+     */
+    public int[] addSelection(DataProvider dataProvider) {
+        VaccineCatalog catalog = dataProvider.getCatalog();
+        int[] seriesOf = new int[catalog.size()];
+        Arrays.fill(seriesOf, -1);
+        for (int i = dataProvider.nextSelected(0); i >= 0; i = dataProvider.nextSelected(i + 1)) {
+            seriesOf[i] = addSeries(catalog.get(i), dataProvider.getDateOffsets(i));
+        }
+
+        int selection = dataProvider.getSelectionMask();
+        for (int i = dataProvider.nextSelected(0); i >= 0; i = dataProvider.nextSelected(i + 1)) {
+            int others = catalog.getSeparations(i) & selection;
+            while (others != 0) {
+                int other = Integer.numberOfTrailingZeros(others);
+                others &= others - 1;
+                separate(seriesOf[i], seriesOf[other]);
+            }
+        }
+        return seriesOf;
+    }
+
+    /**
+     * Removes every series, keeping the arrays allocated so far, so that a single solver can be reused for many
+     * children (see {@link CatchUpPlanner}).
+     * @param   startDay
+     *          the date of the first vaccination of the next child, as an epoch day.
+     */
+    public void clear(int startDay) {
+        this.startDay = startDay;
+        for (int s = 0; s < seriesCount; s++) {
+            types[s] = null;
+            avoids[s] = NO_SERIES;
+            avoidedBy[s] = NO_SERIES;
+            dirty[s] = false;
+        }
+        seriesCount = 0;
+        doseCount = 0;
+        queuedCount = 0;
+        notBefore = NOT_PINNED;
+    }
+
+    /**
+     * Keeps every dose that isn't pinned from being given before a day. Unlike a window, this is a hard limit: a dose
+     * whose window ends earlier is given on that day (or later, to keep the spacing) and its series is reported as
+     * not {@link #isFeasible(int) feasible}.
+     * @param   epochDay
+     *          the earliest day for new doses, usually today.
+     */
+    public void setNotBefore(int epochDay) {
+        notBefore = epochDay;
+        for (int s = 0; s < seriesCount; s++) {
+            markDirty(s);
+        }
+    }
+
+    /**
+     * Adds the series of a vaccine.
+     * @param   type
+     *          the vaccine, with the windows and minimum intervals of its doses.
+     * @param   offsets
+     *          the optimal day of each dose, counted from the start day (usually {@link VaccineType#getDateOffsets()},
+     *          or the user's offsets, see {@link DataProvider#getDateOffsets(int)}).
+     * @return
+     *          the number of the series.
+     */
+    public int addSeries(VaccineType type, int[] offsets) {
+        int series = seriesCount++;
+        if (series == types.length) {
+            int length = series * 2;
+            types = Arrays.copyOf(types, length);
+            firstDose = Arrays.copyOf(firstDose, length + 1);
+            avoids = Arrays.copyOf(avoids, length);
+            avoidedBy = Arrays.copyOf(avoidedBy, length);
+            dirty = Arrays.copyOf(dirty, length);
+            queued = Arrays.copyOf(queued, length);
+            nextRound = Arrays.copyOf(nextRound, length);
+            feasible = Arrays.copyOf(feasible, length);
+        }
+        types[series] = type;
+        avoids[series] = NO_SERIES;
+        avoidedBy[series] = NO_SERIES;
+        markDirty(series);
+
+        ensureDoseCapacity(doseCount + offsets.length);
+        for (int k = 0; k < offsets.length; k++) {
+            int d = doseCount + k;
+            int earlier = type.getDaysEarlier(k);
+            int later = type.getDaysLater(k);
+            if (earlier < 0) {
+                earlier = defaultDaysEarlier;
+                later = defaultDaysLater;
+            }
+            optimal[d] = startDay + offsets[k];
+            windowFrom[d] = optimal[d] - earlier;
+            windowTo[d] = optimal[d] + later;
+            if (k > 0) {
+                int minimum = type.getMinimumInterval(k);
+                interval[d] = minimum > 0 ? minimum : Math.max(1, offsets[k] - offsets[k - 1]);
+            }
+            pinned[d] = NOT_PINNED;
+            day[d] = NOT_PINNED;
+        }
+        doseCount += offsets.length;
+        firstDose[series + 1] = doseCount;
+        return series;
+    }
+
+    /**
+     * Declares that the doses of one series must not fall on the same day as the doses of another. The separations
+     * must not form a cycle.
+     * @param   moved
+     *          the series that gets moved to other days.
+     * @param   fixed
+     *          the series it avoids.
+     */
+    public void separate(int moved, int fixed) {
+        avoids[moved] = append(avoids[moved], fixed);
+        avoidedBy[fixed] = append(avoidedBy[fixed], moved);
+        markDirty(moved);
+    }
+
+    /**
+     * Fixes a dose to a given day, for example the day it was actually given, or a day chosen by the user. The rest of
+     * the series is moved around it the next time it's {@link #solve() solved}.
+     * @param   series
+     *          the number of the series.
+     * @param   dose
+     *          the index of the dose in the series.
+     * @param   epochDay
+     *          the day of the dose.
+     */
+    public void pin(int series, int dose, int epochDay) {
+        pinned[doseOf(series, dose)] = epochDay;
+        markDirty(series);
+    }
+
+    /**
+     * Releases a dose fixed by {@link #pin(int, int, int)}.
+     * @param   series
+     *          the number of the series.
+     * @param   dose
+     *          the index of the dose in the series.
+     */
+    public void unpin(int series, int dose) {
+        pinned[doseOf(series, dose)] = NOT_PINNED;
+        markDirty(series);
+    }
+
+    /**
+     * Solves every series that changed since the last call (at first, all of them), and then every series that
+     * avoids a series whose days changed.
+     * @return
+     *          the number of series solved.
+     * @throws  IllegalStateException
+     *          if the separations form a cycle that doesn't settle.
+     */
+    public int solve() {
+        int solved = 0;
+        for (int round = 0; queuedCount > 0; round++) {
+            if (round > seriesCount) {
+                throw new IllegalStateException("The separations between series form a cycle.");
+            }
+            //a series avoids those solved before it in the same round, as in a full solve
+            int[] current = queued;
+            int count = queuedCount;
+            Arrays.sort(current, 0, count);
+            queued = nextRound;
+            nextRound = current;
+            queuedCount = 0;
+
+            for (int i = 0; i < count; i++) {
+                int s = current[i];
+                //still dirty until solved, so that a series later in this round isn't queued again
+                dirty[s] = false;
+                solved++;
+                if (solveSeries(s)) {
+                    for (int other : avoidedBy[s]) {
+                        markDirty(other);
+                    }
+                }
+            }
+        }
+        return solved;
+    }
+
+    private void markDirty(int series) {
+        if (!dirty[series]) {
+            dirty[series] = true;
+            queued[queuedCount++] = series;
+        }
+    }
+
+    /**
+     * @return
+     *          the epoch day assigned to a dose by the last {@link #solve()}.
+     */
+    public int getDay(int series, int dose) {
+        return day[doseOf(series, dose)];
+    }
+
+    /**
+     * @return
+     *          the earliest day a dose could take, given its window and the rest of its series.
+     */
+    public int getEarliest(int series, int dose) {
+        return earliest[doseOf(series, dose)];
+    }
+
+    /**
+     * @return
+     *          the latest day a dose could take, given its window and the rest of its series.
+     */
+    public int getLatest(int series, int dose) {
+        return latest[doseOf(series, dose)];
+    }
+
+    /**
+     * @return
+     *          <code>false</code> if some dose of the series is outside its window (or shares a day with a vaccine it
+     *          should avoid), because nothing else was possible.
+     */
+    public boolean isFeasible(int series) {
+        return feasible[series];
+    }
+
+    /**
+     * @return
+     *          the minimum number of days between a dose (at least the second one) and the previous one of its series:
+     *          declared by its type, or else the spacing of the offsets.
+     */
+    public int getMinimumInterval(int series, int dose) {
+        return interval[doseOf(series, dose)];
+    }
+
+    public int getSeriesCount() {
+        return seriesCount;
+    }
+
+    public VaccineType getType(int series) {
+        return types[series];
+    }
+
+    public int getDoseCount(int series) {
+        return firstDose[series + 1] - firstDose[series];
+    }
+
+    public int getStartDay() {
+        return startDay;
+    }
+
+    /**
+     * Creates a calendar with the days assigned by the last {@link #solve()}.
+     * @param   form
+     *          the form of the calendar, already set to the scheme, dates and selection the solver was created for.
+     * @return
+     *          a new calendar.
+     */
+    public VaccinationCalendar toCalendar(Form form) {
+        VaccineType[] typeOfDose = new VaccineType[doseCount];
+        int[] indexOfDose = new int[doseCount];
+        for (int s = 0; s < seriesCount; s++) {
+            for (int d = firstDose[s]; d < firstDose[s + 1]; d++) {
+                typeOfDose[d] = types[s];
+                indexOfDose[d] = d - firstDose[s];
+            }
+        }
+        return new VaccinationCalendar(form, startDay, typeOfDose, indexOfDose, Arrays.copyOf(day, doseCount),
+                doseCount);
+    }
+
+    /**
+     * Propagates the domains of a series and assigns its days.
+     * @return
+     *          <code>true</code> if any day changed.
+     */
+    private boolean solveSeries(int series) {
+        int from = firstDose[series];
+        int to = firstDose[series + 1];
+
+        for (int d = from; d < to; d++) {
+            boolean isPinned = pinned[d] != NOT_PINNED;
+            earliest[d] = isPinned ? pinned[d] : Math.max(windowFrom[d], notBefore);
+            latest[d] = isPinned ? pinned[d] : windowTo[d];
+            if (d > from) {
+                earliest[d] = Math.max(earliest[d], earliest[d - 1] + interval[d]);
+            }
+        }
+        for (int d = to - 2; d >= from; d--) {
+            latest[d] = Math.min(latest[d], latest[d + 1] - interval[d + 1]);
+        }
+
+        boolean ok = true;
+        boolean changed = false;
+        for (int d = from; d < to; d++) {
+            int assigned;
+            if (pinned[d] != NOT_PINNED) {
+                assigned = pinned[d];
+                ok &= (d == from || assigned >= day[d - 1] + interval[d]) && !isTaken(series, assigned);
+            } else {
+                int low = d == from ? earliest[d] : Math.max(earliest[d], day[d - 1] + interval[d]);
+                int high = latest[d];
+                if (low > high) {
+                    //no day fits both the window and the spacing: spacing wins
+                    ok = false;
+                    assigned = low;
+                } else {
+                    assigned = avoid(series, Math.min(Math.max(optimal[d], low), high), low, high);
+                    if (assigned == NOT_PINNED) {
+                        ok = false;
+                        assigned = Math.min(Math.max(optimal[d], low), high);
+                    }
+                }
+            }
+            ok &= earliest[d] <= latest[d];
+            if (day[d] != assigned) {
+                day[d] = assigned;
+                changed = true;
+            }
+        }
+        feasible[series] = ok;
+        return changed;
+    }
+
+    /**
+     * @return
+     *          the day closest to <code>preferred</code>, later first, within <code>[low, high]</code> that isn't
+     *          taken by a series avoided by <code>series</code>; or {@link #NOT_PINNED} if there's none.
+     */
+    private int avoid(int series, int preferred, int low, int high) {
+        if (avoids[series].length == 0) {
+            return preferred;
+        }
+        for (int candidate = preferred; candidate <= high; candidate++) {
+            if (!isTaken(series, candidate)) {
+                return candidate;
+            }
+        }
+        for (int candidate = preferred - 1; candidate >= low; candidate--) {
+            if (!isTaken(series, candidate)) {
+                return candidate;
+            }
+        }
+        return NOT_PINNED;
+    }
+
+    private boolean isTaken(int series, int epochDay) {
+        for (int other : avoids[series]) {
+            for (int d = firstDose[other]; d < firstDose[other + 1]; d++) {
+                if (day[d] == epochDay) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private int doseOf(int series, int dose) {
+        if (series < 0 || series >= seriesCount || dose < 0 || dose >= getDoseCount(series)) {
+            throw new IndexOutOfBoundsException("No dose " + dose + " in series " + series);
+        }
+        return firstDose[series] + dose;
+    }
+
+    private void ensureDoseCapacity(int capacity) {
+        if (capacity > optimal.length) {
+            int length = Math.max(capacity, optimal.length * 2);
+            optimal = Arrays.copyOf(optimal, length);
+            windowFrom = Arrays.copyOf(windowFrom, length);
+            windowTo = Arrays.copyOf(windowTo, length);
+            interval = Arrays.copyOf(interval, length);
+            pinned = Arrays.copyOf(pinned, length);
+            earliest = Arrays.copyOf(earliest, length);
+            latest = Arrays.copyOf(latest, length);
+            day = Arrays.copyOf(day, length);
+        }
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] longer = Arrays.copyOf(array, array.length + 1);
+        longer[array.length] = value;
+        return longer;
+    }
+}
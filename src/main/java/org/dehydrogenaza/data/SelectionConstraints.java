@@ -0,0 +1,215 @@
+package org.dehydrogenaza.data;
+
+import java.util.List;
+
+/**
+ * The interdependencies between the vaccines of a {@link VaccineCatalog}, compiled into bitmasks (bit <i>i</i> stands
+ * for the vaccine at index <i>i</i>, as in {@link DataProvider#getSelectionMask()}).
+ * <p>Three kinds of constraints are supported:</p>
+ * <ul>
+ *     <li><i>excludes</i>: A and B can't be selected together, so selecting either one deselects the other (even if
+ *     the exclusion was only declared one way),</li>
+ *     <li><i>requires</i>: selecting A selects B too, and deselecting B deselects A,</li>
+ *     <li><i>offset variant</i>: A uses different date offsets while any of the given vaccines is selected.</li>
+ * </ul>
+ * <p>Everything that a single (de)selection implies, transitively, is worked out once, when the scheme is built: a
+ * change is then resolved with a couple of bitwise operations, instead of a chain of handlers that trigger each other.
+ * Cycles of <i>requires</i>, and vaccines that would exclude their own requirements, are rejected at that point too.
+ * </p>
+ */
+class SelectionConstraints {
+    /**
+     * For each vaccine: itself and everything it requires, transitively. Set when it's selected.
+     */
+    private final int[] setOnSelect;
+    /**
+     * For each vaccine: everything that can't be selected together with it, because one of the two (or something it
+     * requires) excludes the other (or something that one requires). Cleared when it's selected. Symmetric, so that
+     * every selection reached through {@link #resolve(int, int, boolean)} is {@link #isConsistent(int) consistent}.
+     */
+    private final int[] clearOnSelect;
+    /**
+     * For each vaccine: itself and everything that requires it, transitively. Cleared when it's deselected.
+     */
+    private final int[] clearOnDeselect;
+
+    /**
+     * For each vaccine: the masks that trigger its offset variants (in the order they were declared), or
+     * <code>null</code> if it has none.
+     */
+    private final int[][] variantTriggers;
+    /**
+     * For each vaccine: the date offsets of its variants, matching {@link #variantTriggers}.
+     */
+    private final int[][][] variantOffsets;
+    /**
+     * For each vaccine: all of its {@link #variantTriggers} combined. Its offsets only need to be resolved again when
+     * one of these bits changes.
+     */
+    private final int[] variantInputs;
+
+    /**
+     * Compiles the constraints of a scheme.
+     * @param   vaccines
+     *          the vaccines of the scheme, used for their count and for error messages.
+     * @param   excludes
+     *          for each vaccine: the vaccines deselected when it's selected.
+     * @param   requires
+     *          for each vaccine: the vaccines it can't be selected without.
+     * @param   variantTriggers
+     *          for each vaccine: the trigger masks of its offset variants, or <code>null</code>.
+     * @param   variantOffsets
+     *          for each vaccine: the offsets of its variants, or <code>null</code>.
+     * @throws  IllegalStateException
+     *          if the <i>requires</i> constraints form a cycle, or if selecting a vaccine would deselect something it
+     *          requires.
+     */
+    SelectionConstraints(List<VaccineType> vaccines, int[] excludes, int[] requires,
+                         int[][] variantTriggers, int[][][] variantOffsets) {
+        int count = vaccines.size();
+
+        //transitive closure of requires, not including the vaccine itself (unless there's a cycle)
+        int[] required = requires.clone();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int v = 0; v < count; v++) {
+                int closure = required[v];
+                for (int r = nextBit(closure, 0); r >= 0; r = nextBit(closure, r + 1)) {
+                    closure |= required[r];
+                }
+                if (closure != required[v]) {
+                    required[v] = closure;
+                    changed = true;
+                }
+            }
+        }
+
+        this.setOnSelect = new int[count];
+        this.clearOnDeselect = new int[count];
+        for (int v = 0; v < count; v++) {
+            if ((required[v] & (1 << v)) != 0) {
+                throw new IllegalStateException(vaccines.get(v).getName() + " requires itself (a cycle of requires).");
+            }
+            setOnSelect[v] = required[v] | (1 << v);
+            for (int r = nextBit(required[v], 0); r >= 0; r = nextBit(required[v], r + 1)) {
+                clearOnDeselect[r] |= 1 << v;
+            }
+        }
+        for (int v = 0; v < count; v++) {
+            clearOnDeselect[v] |= 1 << v;
+        }
+
+        //everything each vaccine excludes, directly or through the vaccines it requires
+        int[] excludedBy = new int[count];
+        for (int v = 0; v < count; v++) {
+            for (int s = nextBit(setOnSelect[v], 0); s >= 0; s = nextBit(setOnSelect[v], s + 1)) {
+                excludedBy[v] |= excludes[s];
+            }
+        }
+
+        //two vaccines conflict if either one would deselect the other; a selection can't hold both, so the conflict
+        //works both ways, however the exclusion was declared
+        this.clearOnSelect = new int[count];
+        for (int v = 0; v < count; v++) {
+            int cleared = 0;
+            for (int w = 0; w < count; w++) {
+                if ((excludedBy[v] & setOnSelect[w]) != 0 || (excludedBy[w] & setOnSelect[v]) != 0) {
+                    cleared |= 1 << w;
+                }
+            }
+            int conflict = cleared & setOnSelect[v];
+            if (conflict != 0) {
+                //report a required vaccine rather than v itself, if possible
+                if ((conflict & ~(1 << v)) != 0) {
+                    conflict &= ~(1 << v);
+                }
+                throw new IllegalStateException("Selecting " + vaccines.get(v).getName() + " would deselect "
+                        + vaccines.get(Integer.numberOfTrailingZeros(conflict)).getName() + ", which it requires.");
+            }
+            clearOnSelect[v] = cleared;
+        }
+
+        this.variantTriggers = variantTriggers;
+        this.variantOffsets = variantOffsets;
+        this.variantInputs = new int[count];
+        for (int v = 0; v < count; v++) {
+            if (variantTriggers[v] != null) {
+                for (int trigger : variantTriggers[v]) {
+                    variantInputs[v] |= trigger;
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies a single (de)selection, with everything it implies.
+     * @param   mask
+     *          the current selection.
+     * @param   index
+     *          the index of the vaccine that was (de)selected.
+     * @param   selected
+     *          the new status of that vaccine.
+     * @return
+     *          the resulting selection.
+     */
+    int resolve(int mask, int index, boolean selected) {
+        if (selected) {
+            return (mask | setOnSelect[index]) & ~clearOnSelect[index];
+        }
+        return mask & ~clearOnDeselect[index];
+    }
+
+    /**
+     * Checks if a selection satisfies every constraint, for example the default selection of a scheme.
+     * @param   mask
+     *          the selection to check.
+     * @return
+     *          <code>true</code> if selecting every vaccine in <code>mask</code> doesn't change anything.
+     */
+    boolean isConsistent(int mask) {
+        for (int v = nextBit(mask, 0); v >= 0; v = nextBit(mask, v + 1)) {
+            if (resolve(mask, v, true) != mask) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Picks the date offsets of every vaccine with offset variants that may be affected by a change of the selection.
+     * A vaccine uses the first variant whose trigger intersects the selection, or its default offsets if none does.
+     * @param   catalog
+     *          the catalog these constraints belong to, for the default offsets.
+     * @param   changed
+     *          the bits that changed (<code>-1</code> to resolve every vaccine).
+     * @param   mask
+     *          the new selection.
+     * @param   dateOffsets
+     *          the offsets to update, by vaccine index.
+     */
+    void resolveOffsets(VaccineCatalog catalog, int changed, int mask, int[][] dateOffsets) {
+        for (int v = 0; v < variantInputs.length; v++) {
+            if ((variantInputs[v] & changed) == 0) {
+                continue;
+            }
+            int[] offsets = catalog.get(v).getDateOffsets();
+            int[] triggers = variantTriggers[v];
+            for (int i = 0; i < triggers.length; i++) {
+                if ((triggers[i] & mask) != 0) {
+                    offsets = variantOffsets[v][i];
+                    break;
+                }
+            }
+            dateOffsets[v] = offsets;
+        }
+    }
+
+    private static int nextBit(int mask, int fromIndex) {
+        if (fromIndex >= Integer.SIZE) {
+            return -1;
+        }
+        int remaining = mask & (-1 << fromIndex);
+        return remaining == 0 ? -1 : Integer.numberOfTrailingZeros(remaining);
+    }
+}
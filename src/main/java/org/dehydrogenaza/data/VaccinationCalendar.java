@@ -1,11 +1,15 @@
 package org.dehydrogenaza.data;
 
+import org.dehydrogenaza.data.utils.InputValidator;
 import org.dehydrogenaza.data.utils.TinyDate;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeMap;
 
 
 /**
@@ -14,20 +18,79 @@ import java.util.HashMap;
  */
 public class VaccinationCalendar {
 
+    /**
+     * Calendar IDs (see {@link #id}) are drawn from the lowest 48 bits of a random number.
+     */
+    private static final long ID_MASK = (1L << 48) - 1;
+    private static final Random IDS = new Random();
+
     /**
      * Reference to the input form, from which data should be taken.
      */
     private final Form form;
 
     /**
-     * Reference to the list of ALL supported vaccines (including ones that are not selected).
+     * The user's state (selection and date offsets), taken from the {@link #form}. The {@link VaccineCatalog} is
+     * looked up on every use, since the user may switch schemes after the calendar was generated.
+     */
+    private final DataProvider dataProvider;
+
+    /**
+     * The {@link InputValidator} of the {@link #form}, handed to every {@link ScheduleForDay} and {@link Dose} in this
+     * calendar, so that their input is checked against this child's bounds only.
+     */
+    private final InputValidator validator;
+
+    /**
+     * The main point of this class. {@link ScheduleForDay}s, ordered and keyed by their epoch day (see
+     * {@link ScheduleForDay#getEpochDay()}), so that looking up, adding, merging and removing a day are all
+     * logarithmic in the size of the calendar.
+     */
+    private final TreeMap<Integer, ScheduleForDay> scheduledDates = new TreeMap<>();
+
+    /**
+     * A sorted list view of {@link #scheduledDates}, as returned by {@link #get()}. Rebuilt lazily, only when it's
+     * requested after the calendar has changed; <code>null</code> means it's outdated.
+     */
+    private List<ScheduleForDay> sortedDates;
+
+    /**
+     * Secondary index: maps the ID of each {@link VaccineType} (see {@link VaccineType#getId()}) to its {@link Dose}s
+     * in this calendar, each linked to the {@link ScheduleForDay} that currently holds it. Lets us remove or query a
+     * whole vaccine series while touching only the doses of that vaccine.
+     */
+    private final Map<Integer, Map<Dose, ScheduleForDay>> dosesByType = new HashMap<>();
+
+    /**
+     * The date of the first vaccination as an epoch day; all generated offsets start here.
+     */
+    private int startDay;
+
+    /**
+     * For each catalog index: the {@link VaccineType} whose generated doses were put into this calendar,
+     * or <code>null</code> if none were. Compared against the current selection by {@link #syncSelection()}.
      */
-    private final List<VaccineType> vaccines;
+    private VaccineType[] appliedTypes = new VaccineType[0];
 
     /**
-     * The main point of this class. A sorted list of {@link ScheduleForDay}s.
+     * For each catalog index: the date offsets used when the doses in {@link #appliedTypes} were generated. Offsets
+     * are replaced (never modified in place) by {@link DataProvider#setDateOffsets(int, int...)}, so a change is
+     * detected by reference.
      */
-    private final List<ScheduleForDay> scheduledDates = new ArrayList<>();
+    private int[][] appliedOffsets = new int[0][];
+
+    /**
+     * Incremented whenever a day or a dose is added to, moved within or removed from this calendar. Anything derived
+     * from the whole calendar (such as the CSV export) can be cached against it.
+     */
+    private int version;
+
+    /**
+     * Identifies this calendar (see {@link #getCalendarID()}). Drawn at random when it's first needed, and then kept
+     * for as long as the calendar exists, also through the {@link CalendarCodec} (and so the {@link CalendarJournal}).
+     * <code>0</code> until drawn.
+     */
+    private long id;
 
 
     /**
@@ -37,20 +100,86 @@ public class VaccinationCalendar {
      */
     public VaccinationCalendar(Form form) {
         this.form = form;
-        this.vaccines = form.getVaccines();
+        this.dataProvider = form.getDataProvider();
+        this.validator = form.getValidator();
 
         buildCalendarDates();
-        sortByDate();
     }
 
 
     /**
      * Constructs an empty calendar. Internal fields will be <code>null</code>s, except for
-     * {@link #scheduledDates}, which is initialized to an empty {@link ArrayList}.
+     * {@link #scheduledDates}, which is initialized to an empty {@link TreeMap}.
      */
     public VaccinationCalendar() {
         this.form = null;
-        this.vaccines = null;
+        this.dataProvider = null;
+        this.validator = InputValidator.WITHOUT_FORM;
+    }
+
+    /**
+     * Constructs a deep copy of another calendar: every {@link ScheduleForDay} and {@link Dose} is a new object, so
+     * edits made to the copy never affect the original (and vice versa). {@link VaccineType}s are shared. The copy is
+     * a calendar of its own, so it gets a new {@link #id}.
+     * @param   original
+     *          the calendar to copy.
+     */
+    private VaccinationCalendar(VaccinationCalendar original) {
+        this.form = original.form;
+        this.dataProvider = original.dataProvider;
+        this.validator = original.validator;
+        this.startDay = original.startDay;
+        this.appliedTypes = original.appliedTypes.clone();
+        this.appliedOffsets = original.appliedOffsets.clone();
+
+        for (ScheduleForDay date : original.scheduledDates.values()) {
+            ScheduleForDay copiedDate = new ScheduleForDay(date.getTinyDate(), new ArrayList<>());
+            for (Dose dose : date.getDoses()) {
+                Dose copiedDose = new Dose(dose.getType(), dose.getDate(), dose.getDoseIndex());
+                copiedDate.addDose(copiedDose);
+                indexDose(copiedDose, copiedDate);
+            }
+            scheduledDates.put(copiedDate.getEpochDay(), copiedDate);
+        }
+    }
+
+    /**
+     * Constructs a calendar from an explicit list of doses, without running the generator (used by
+     * {@link CalendarCodec#decode(byte[], Form)}). The arrays are parallel, as in {@link #populate}. The current
+     * selection of the form's {@link DataProvider} is taken as already applied, so {@link #syncSelection()} keeps the
+     * given doses until the selection changes.
+     * @param   form
+     *          source of input data, already set to the scheme, dates and selection of the encoded calendar.
+     * @param   startDay
+     *          the date of the first vaccination, as an epoch day.
+     * @param   typeOfDose
+     *          the {@link VaccineType} of each dose.
+     * @param   indexOfDose
+     *          the index of each dose in its series (see {@link Dose#getDoseIndex()}).
+     * @param   dayOfDose
+     *          the epoch day of each dose.
+     * @param   n
+     *          the number of doses in the arrays.
+     */
+    VaccinationCalendar(Form form, int startDay, VaccineType[] typeOfDose, int[] indexOfDose, int[] dayOfDose,
+                        int n) {
+        this.form = form;
+        this.dataProvider = form.getDataProvider();
+        this.validator = form.getValidator();
+        this.startDay = startDay;
+
+        markApplied();
+        populate(typeOfDose, indexOfDose, dayOfDose, n);
+    }
+
+    /**
+     * Creates a deep copy of this calendar (see {@link #VaccinationCalendar(VaccinationCalendar)}). Pending,
+     * unconfirmed input (<code>tempDate</code>s) is not copied.
+     * @return
+     *          an independent copy of this calendar.
+     */
+    public VaccinationCalendar copy() {
+        return new VaccinationCalendar(this);
     }
 
 
@@ -60,16 +189,21 @@ public class VaccinationCalendar {
      *          {@link ScheduleForDay} object to be removed, usually supplied by Flavour from an HTML input field.
      */
     public void removeDate(ScheduleForDay date) {
-        scheduledDates.remove(date);
+        if (unlinkDate(date)) {
+            for (Dose dose : date.getDoses()) {
+                unindexDose(dose);
+            }
+        }
     }
 
 
-    // TODO: BUGGED. Moving the entire date does not effect dates (maybe just tempDates?) of individual Doses.
     /**
      * Updates the calendar by either removing a given {@link ScheduleForDay} instance (if its calendar date was set
      * to ""), or by rescheduling it to a new day (temporarily stored in its <code>tempDate</code> field). If the new
      * calendar date already has some doses scheduled, the two ScheduleForDay objects are conflated in place of the
      * existing (older) object, and the changedDate is removed from the calendar.
+     * <p>A {@link Dose}'s date is final, so, as in {@link #updateDose(ScheduleForDay, Dose)}, every dose of the moved
+     * day is replaced by a new Dose (of the same type and dose index) dated on the new day.</p>
      * @param   changedDate
      *          a {@link ScheduleForDay} object which has its internal <code>tempDate</code> field changed and is
      *          contained in this {@link VaccinationCalendar}.
@@ -79,30 +213,25 @@ public class VaccinationCalendar {
         if (changedDate.getTempDate().isEmpty()) {
             removeDate(changedDate);
         } else {
-            //submit temp (input) value
+            //unlink from the old key, then submit temp (input) value
+            unlinkDate(changedDate);
             changedDate.confirmTempValue();
 
-            boolean flaggedForRemoval = false;
-            for (ScheduleForDay d : scheduledDates) {
-                //don't do anything for the "changedDate" object itself
-                if (d == changedDate) {
-                    continue;
-                }
-                //if *another* ScheduleForDay has the same actual "date", merge their content
-                if (d.getDate().equals(changedDate.getDate())) {
-                    for (Dose dose : changedDate.getDoses()) {
-                        d.addDose(dose);
-                    }
-                    flaggedForRemoval = true;
-                }
+            //if *another* ScheduleForDay has the same actual "date", merge the content into it
+            ScheduleForDay target = scheduledDates.get(changedDate.getEpochDay());
+            if (target == null) {
+                target = changedDate;
+                scheduledDates.put(changedDate.getEpochDay(), changedDate);
             }
-
-            //if "changedDate"'s content was merged into another date, remove it
-            if (flaggedForRemoval) {
-                removeDate(changedDate);
+            for (Dose dose : new ArrayList<>(changedDate.getDoses())) {
+                changedDate.removeDose(dose);
+                unindexDose(dose);
+                Dose updatedDose = new Dose(dose.getType(), changedDate.getTinyDate(), dose.getDoseIndex());
+                target.addDose(updatedDose);
+                indexDose(updatedDose, target);
             }
-
-            sortByDate();
+            sortedDates = null;
+            version++;
         }
     }
 
@@ -122,25 +251,10 @@ public class VaccinationCalendar {
      */
     public void updateDose(ScheduleForDay changedDate, Dose changedDose) {
         if (changedDose.isSetToNew()) {
-            // TODO: This may bug out if the Dose should have an alternate name
-            Dose updatedDose = new Dose(changedDose.getType(), changedDose.getTempDate());
-
-            //search the calendar to see if a Schedule already exists for this new date
-            boolean addedToExisting = false;
-            for (ScheduleForDay date : scheduledDates) {
-                if (date.getDate().equals(updatedDose.getTempDate())) {
-                    date.addDose(updatedDose);
-                    addedToExisting = true;
-                    break;
-                }
-            }
-            if (!addedToExisting) {
-                List<Dose> vaccinesAtDate = new ArrayList<>();
-                vaccinesAtDate.add(updatedDose);
-                scheduledDates.add(new ScheduleForDay(updatedDose.getTempDate(), vaccinesAtDate));
+            Dose updatedDose = new Dose(changedDose.getType(), new TinyDate(changedDose.getTempDate()),
+                    changedDose.getDoseIndex());
 
-                sortByDate();
-            }
+            addDose(updatedDose, updatedDose.getDate().toEpochDay());
         }
         removeDose(changedDate, changedDose);
 
@@ -156,91 +270,349 @@ public class VaccinationCalendar {
      */
     public void removeDose(ScheduleForDay changedDate, Dose dose) {
         changedDate.removeDose(dose);
+        unindexDose(dose);
         if (changedDate.getDoses().isEmpty()) {
-            removeDate(changedDate);
+            unlinkDate(changedDate);
         }
     }
 
 
     /**
      * Removes all {@link Dose}s of a given {@link VaccineType} from this calendar, removing empty
-     * {@link ScheduleForDay}s as needed.
+     * {@link ScheduleForDay}s as needed. Thanks to the {@link #dosesByType} index, only the doses of this type (and
+     * the days that hold them) are visited.
      * @param   type
      *          a VaccineType to be purged from this calendar.
      */
     public void removeAllOfType(VaccineType type) {
-        for (ScheduleForDay date : scheduledDates) {
-            // TODO: This is probably not necessary in this version, replace isSame with an EQUALS (or even ==) ?
-            date.getDoses().removeIf(dose -> VaccineType.isSame(dose.getType(), type));
+        Map<Dose, ScheduleForDay> doses = dosesByType.remove(type.getId());
+        if (doses == null) {
+            return;
         }
-        scheduledDates.removeIf(date -> date.getDoses().isEmpty());
+        version++;
+        doses.forEach((dose, date) -> {
+            date.removeDose(dose);
+            if (date.getDoses().isEmpty()) {
+                unlinkDate(date);
+            }
+        });
     }
 
+    /**
+     * Brings this calendar up to date with the current selection of {@link VaccineType}s (and their date offsets),
+     * without rebuilding it. Only the vaccines that changed since the calendar was generated (or last synced) are
+     * patched: doses of deselected vaccines are removed, doses of newly selected ones are added, and vaccines whose
+     * offsets changed (for example MenB switching to its delayed schedule) have their doses regenerated. Manual edits
+     * of every other vaccine are kept.
+     * <p>Checking for changes costs one comparison per vaccine in the scheme; beyond that, the cost depends only on
+     * the number of affected doses, not on the size of the calendar.</p>
+     */
+    public void syncSelection() {
+        if (form == null) {
+            return;
+        }
+        VaccineCatalog catalog = dataProvider.getCatalog();
+
+        int count = Math.max(catalog.size(), appliedTypes.length);
+        if (appliedTypes.length < count) {
+            appliedTypes = Arrays.copyOf(appliedTypes, count);
+            appliedOffsets = Arrays.copyOf(appliedOffsets, count);
+        }
+
+        for (int v = 0; v < count; v++) {
+            VaccineType current = v < catalog.size() && dataProvider.isSelected(v) ? catalog.get(v) : null;
+            int[] offsets = current == null ? null : dataProvider.getDateOffsets(v);
+            VaccineType applied = appliedTypes[v];
+            if (current == applied && offsets == appliedOffsets[v]) {
+                continue;
+            }
+
+            if (applied != null) {
+                removeAllOfType(applied);
+            }
+            if (current != null) {
+                addGeneratedDoses(current, offsets);
+            }
+            appliedTypes[v] = current;
+            appliedOffsets[v] = offsets;
+        }
+    }
 
     /**
-     * Sorts in ascending order, earliest to latest. <strong>Mutates</strong> the original list.
+     * Returns every {@link Dose} of a given {@link VaccineType} that's still in this calendar, for example "all
+     * remaining MenB doses". Only the doses of this type are visited.
+     * @param   type
+     *          the VaccineType in question.
+     * @return
+     *          a new list of the doses of this type, ordered by the date of their {@link ScheduleForDay}.
      */
-    private void sortByDate() {
-        //intentionally NOT using a Comparator (saves a few kB in the resulting JS)
-        scheduledDates.sort((d1, d2)
-                -> d1.getDateAsNumber() - d2.getDateAsNumber());
+    public List<Dose> getDosesOfType(VaccineType type) {
+        Map<Dose, ScheduleForDay> doses = dosesByType.get(type.getId());
+        if (doses == null) {
+            return new ArrayList<>();
+        }
+        List<Dose> result = new ArrayList<>(doses.keySet());
+        result.sort((d1, d2) -> doses.get(d1).getEpochDay() - doses.get(d2).getEpochDay());
+        return result;
+    }
+
+    /**
+     * Returns the {@link ScheduleForDay} that currently holds the given {@link Dose}.
+     * @param   dose
+     *          a Dose from this calendar.
+     * @return
+     *          the ScheduleForDay holding the dose, or <code>null</code> if the dose isn't in this calendar.
+     */
+    public ScheduleForDay getDateOf(Dose dose) {
+        Map<Dose, ScheduleForDay> doses = dosesByType.get(dose.getType().getId());
+        return doses == null ? null : doses.get(dose);
+    }
+
+    /**
+     * Finds a dose by its identity within the series, whichever day it was moved to.
+     * @param   type
+     *          the {@link VaccineType} of the dose.
+     * @param   doseIndex
+     *          the index of the dose in its series (see {@link Dose#getDoseIndex()}).
+     * @return
+     *          the Dose, or <code>null</code> if it isn't in this calendar.
+     */
+    Dose findDose(VaccineType type, int doseIndex) {
+        Map<Dose, ScheduleForDay> doses = dosesByType.get(type.getId());
+        if (doses != null) {
+            for (Dose dose : doses.keySet()) {
+                if (dose.getDoseIndex() == doseIndex) {
+                    return dose;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Schedules every dose of a {@link VaccineType} at the given offsets from {@link #startDay}.
+     */
+    private void addGeneratedDoses(VaccineType type, int[] dateOffsets) {
+        for (int i = 0; i < dateOffsets.length; i++) {
+            int day = startDay + dateOffsets[i];
+            ScheduleForDay existing = scheduledDates.get(day);
+            TinyDate date = existing != null ? existing.getTinyDate() : TinyDate.ofEpochDay(day);
+            addDose(new Dose(type, date, i), day);
+        }
+    }
+
+    /**
+     * Adds a {@link Dose} to the {@link ScheduleForDay} of the given day, creating it if needed, and indexes it.
+     */
+    private void addDose(Dose dose, int day) {
+        ScheduleForDay date = scheduledDates.get(day);
+        if (date == null) {
+            date = new ScheduleForDay(dose.getDate(), new ArrayList<>());
+            scheduledDates.put(day, date);
+            sortedDates = null;
+        }
+        date.addDose(dose);
+        indexDose(dose, date);
+    }
+
+    /**
+     * Removes a {@link ScheduleForDay} from {@link #scheduledDates}, without touching the {@link #dosesByType} index.
+     * @param   date
+     *          the ScheduleForDay to unlink.
+     * @return
+     *          <code>true</code> if the ScheduleForDay was part of this calendar.
+     */
+    private boolean unlinkDate(ScheduleForDay date) {
+        int key = date.getEpochDay();
+        if (scheduledDates.get(key) != date) {
+            return false;
+        }
+        scheduledDates.remove(key);
+        sortedDates = null;
+        version++;
+        return true;
+    }
+
+    /**
+     * Adds a {@link Dose} to the {@link #dosesByType} index, or moves it to a new {@link ScheduleForDay}. Every dose
+     * added to this calendar passes through here, so this is also where both are bound to the {@link #validator}.
+     */
+    private void indexDose(Dose dose, ScheduleForDay date) {
+        dose.setValidator(validator);
+        date.setValidator(validator);
+        dosesByType.computeIfAbsent(dose.getType().getId(), id -> new HashMap<>()).put(dose, date);
+        version++;
+    }
+
+    /**
+     * Removes a {@link Dose} from the {@link #dosesByType} index.
+     */
+    private void unindexDose(Dose dose) {
+        Map<Dose, ScheduleForDay> doses = dosesByType.get(dose.getType().getId());
+        if (doses != null) {
+            doses.remove(dose);
+        }
+        version++;
     }
 
 
 //  TODO: Refactor so that the SOURCE provides the full list, and FORM only the selected ones
-//  TODO: Also, should probably be split into two methods for readability
-//  TODO: Refactor to use either TinyDate or its int value in the HashMap
     /**
-     * Populates the {@link #scheduledDates} list with {@link ScheduleForDay}s, unsorted at this point.
+     * Populates {@link #scheduledDates} with {@link ScheduleForDay}s.
+     * <p>Doses are grouped by their <i>epoch day</i> (see {@link TinyDate#toEpochDay()}) in flat, primitive arrays,
+     * so no date is formatted as a <code>String</code> (or parsed back) at this point.</p>
      */
     private void buildCalendarDates() {
-        //key: unique date --> values: vaccines scheduled for that date
-        Map<String, List<Dose>> mapOfAllVaccinationsOnGivenDates = new HashMap<>();
+        startDay = new TinyDate(form.getDateOfFirstVaccination()).toEpochDay();
+        markApplied();
 
-        TinyDate startDate = new TinyDate(form.getDateOfFirstVaccination());
+        int doseCount = 0;
+        for (int v = dataProvider.nextSelected(0); v >= 0; v = dataProvider.nextSelected(v + 1)) {
+            doseCount += dataProvider.getDateOffsets(v).length;
+        }
 
+        VaccineType[] typeOfDose = new VaccineType[doseCount];
+        int[] indexOfDose = new int[doseCount];
+        int[] dayOfDose = new int[doseCount];
+
+        int n = 0;
         //TODO: Some of this should probably be moved to VaccineType
-        for (VaccineType type : vaccines) {
-            if (!type.isSelected()) {
-                //skip if this vaccine is not selected
-                continue;
-            }
+        //visit only the selected vaccines
+        for (int v = dataProvider.nextSelected(0); v >= 0; v = dataProvider.nextSelected(v + 1)) {
+            VaccineType type = dataProvider.getCatalog().get(v);
             //each vaccine can have multiple doses, that are OFFSET by a certain number of days
-            int[] dateOffsets = type.getDateOffsets();
+            int[] dateOffsets = dataProvider.getDateOffsets(v);
             for (int i = 0; i < dateOffsets.length; i++) {
-                int offsetInDays = dateOffsets[i];
-                String variantName = type.getAltName(i);
-                //when the dose should be administered
-                String dateOfVaccination = startDate.addDays(offsetInDays).toString();
-
-                if (mapOfAllVaccinationsOnGivenDates.containsKey(dateOfVaccination)) {
-                    //something is already scheduled for this date
-                    //therefore, we add this "dose" to the list instead of duplicating the date
-                    List<Dose> vaccinesAtDate = mapOfAllVaccinationsOnGivenDates.get(dateOfVaccination);
-                    vaccinesAtDate.add(new Dose(type, new TinyDate(dateOfVaccination), variantName));
-                } else {
-                    //nothing is scheduled for this date, yet
-                    //create a new list and add this "dose" as its first item
-                    List<Dose> vaccinesAtDate = new ArrayList<>();
-                    vaccinesAtDate.add(new Dose(type, new TinyDate(dateOfVaccination), variantName));
-                    mapOfAllVaccinationsOnGivenDates.put(dateOfVaccination, vaccinesAtDate);
-                }
+                typeOfDose[n] = type;
+                indexOfDose[n] = i;
+                dayOfDose[n] = startDay + dateOffsets[i];
+                n++;
             }
         }
+        populate(typeOfDose, indexOfDose, dayOfDose, n);
+    }
 
-//      TODO: This could be a separate method (maybe, could be overthinking)
-        //translate each key-value pair of our HashMap to a ScheduleForDay instance
-        //add them all to .calendarDates
-        mapOfAllVaccinationsOnGivenDates.forEach(
-                (date, vaccinesAtDate) -> scheduledDates.add(new ScheduleForDay(date, vaccinesAtDate)));
+    /**
+     * Records the current selection and offsets of the {@link #dataProvider} as already applied to this calendar, so
+     * that {@link #syncSelection()} only patches what changes afterwards.
+     */
+    private void markApplied() {
+        VaccineCatalog catalog = dataProvider.getCatalog();
+        appliedTypes = new VaccineType[catalog.size()];
+        appliedOffsets = new int[catalog.size()][];
+        for (int v = dataProvider.nextSelected(0); v >= 0; v = dataProvider.nextSelected(v + 1)) {
+            appliedTypes[v] = catalog.get(v);
+            appliedOffsets[v] = dataProvider.getDateOffsets(v);
+        }
+    }
+
+    /**
+     * Groups the given doses into {@link ScheduleForDay}s and adds them to an empty calendar. The arrays are parallel:
+     * entry <i>k</i> is dose number <code>indexOfDose[k]</code> of <code>typeOfDose[k]</code>, on epoch day
+     * <code>dayOfDose[k]</code>. Doses on the same day keep their order.
+     */
+    private void populate(VaccineType[] typeOfDose, int[] indexOfDose, int[] dayOfDose, int n) {
+        //each key holds the epoch day of a dose (upper 32 bits) and its position in the arrays (lower 32 bits),
+        //so sorting the keys groups the doses by day, while keeping their original order within each day
+        long[] keys = new long[n];
+        for (int k = 0; k < n; k++) {
+            keys[k] = ((long) dayOfDose[k] << 32) | k;
+        }
+        Arrays.sort(keys);
+
+        int k = 0;
+        while (k < n) {
+            int day = (int) (keys[k] >> 32);
+            //a single TinyDate is shared by the ScheduleForDay and all of its doses
+            TinyDate dateOfVaccination = TinyDate.ofEpochDay(day);
+
+            ScheduleForDay scheduledDate = new ScheduleForDay(dateOfVaccination, new ArrayList<>());
+            for (; k < n && (int) (keys[k] >> 32) == day; k++) {
+                int entry = (int) keys[k];
+                Dose dose = new Dose(typeOfDose[entry], dateOfVaccination, indexOfDose[entry]);
+                scheduledDate.addDose(dose);
+                indexDose(dose, scheduledDate);
+            }
+            scheduledDates.put(day, scheduledDate);
+        }
     }
 
     /**
-     * Getter for {@link #scheduledDates}.
+     * @return
+     *          a number that changes whenever the content of this calendar (its days and doses) changes.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the ID of this calendar, for example to identify its events in an iCalendar export (see
+     * {@link org.dehydrogenaza.data.utils.ICalendarWriter}). Unlike the child's data, it never changes while the
+     * calendar exists (even when it's saved and restored), and it differs between calendars of identical data, such
+     * as those of twins.
+     * @return
+     *          the ID of this calendar, as a short alphanumeric String.
+     */
+    public String getCalendarID() {
+        return Long.toString(getId(), 36);
+    }
+
+    /**
+     * @return
+     *          the ID of this calendar (see {@link #getCalendarID()}), drawn on the first call.
+     */
+    long getId() {
+        while (id == 0) {
+            id = IDS.nextLong() & ID_MASK;
+        }
+        return id;
+    }
+
+    /**
+     * Restores the ID of a calendar decoded by the {@link CalendarCodec}.
+     */
+    void setId(long id) {
+        this.id = id;
+    }
+
+    /**
+     * @return
+     *          the {@link Form} this calendar was generated from, or <code>null</code> for an empty calendar.
+     */
+    Form getForm() {
+        return form;
+    }
+
+    /**
+     * Returns the date of the first vaccination, from which the generated doses are offset.
+     * @return
+     *          the start of the calendar, as an epoch day.
+     */
+    int getStartDay() {
+        return startDay;
+    }
+
+    /**
+     * Returns the {@link ScheduleForDay} scheduled for the given day, if there is one.
+     * @param   epochDay
+     *          the day in question, as an epoch day (see {@link TinyDate#toEpochDay()}).
+     * @return
+     *          the ScheduleForDay for this day, or <code>null</code> if nothing is scheduled.
+     */
+    public ScheduleForDay getDate(int epochDay) {
+        return scheduledDates.get(epochDay);
+    }
+
+    /**
+     * Returns a sorted list view of {@link #scheduledDates}. The list is only rebuilt after the calendar changes,
+     * and should not be modified directly (use the methods of this class instead).
      * @return
      *          the (sorted) list of {@link ScheduleForDay}s.
      */
     public List<ScheduleForDay> get() {
-        return scheduledDates;
+        if (sortedDates == null) {
+            sortedDates = new ArrayList<>(scheduledDates.values());
+        }
+        return sortedDates;
     }
 }
@@ -0,0 +1,316 @@
+package org.dehydrogenaza.data;
+
+import org.dehydrogenaza.data.datasources.IVaccineSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The immutable part of a vaccination scheme: the list of {@link VaccineType}s with their default settings, and the
+ * constraints that describe the interdependencies between them (see {@link SelectionConstraints}).
+ * <p>A catalog is built once per scheme (see {@link IVaccineSource#getCatalog()}) and shared by every user of that
+ * scheme, so switching schemes doesn't rebuild anything. All mutable, per-user state (which vaccines are selected, and
+ * which offsets apply to them) lives in the {@link DataProvider}; vaccines are referred to by their
+ * <i>index</i> in the catalog.</p>
+ */
+public class VaccineCatalog {
+    /**
+     * All vaccines of the scheme, including optional ones. Unmodifiable.
+     */
+    private final List<VaccineType> vaccines;
+
+    /**
+     * Interdependencies between the vaccines, compiled when the catalog is built.
+     */
+    private final SelectionConstraints constraints;
+
+    // TODO: Note, that the current setup won't work with "live" updating of input. If we need that,
+    //  formDataHandlers need to run every time the form gets modified in some way.
+    /**
+     * Functions that run once when the form is submitted.
+     */
+    private final List<Consumer<Form>> formDataHandlers;
+
+    /**
+     * The default selection, as a bitset (see {@link DataProvider#getSelectionMask()}).
+     */
+    private final int defaultSelectionMask;
+
+    /**
+     * For each vaccine, the vaccines it shouldn't be given together with, as a bitset of indices (see
+     * {@link Builder#notOnSameDay(int, int...)}).
+     */
+    private final int[] separations;
+
+    private VaccineCatalog(Builder builder) {
+        this.vaccines = Collections.unmodifiableList(builder.vaccines);
+        this.constraints = builder.constraints;
+        this.formDataHandlers = builder.formDataHandlers;
+        this.separations = Arrays.copyOf(builder.separations, vaccines.size());
+
+        int mask = 0;
+        for (int i = 0; i < vaccines.size(); i++) {
+            if (vaccines.get(i).isSelectedByDefault()) {
+                mask |= 1 << i;
+            }
+        }
+        if (!constraints.isConsistent(mask)) {
+            throw new IllegalStateException("The default selection violates the constraints of the scheme.");
+        }
+        this.defaultSelectionMask = mask;
+    }
+
+    /**
+     * Handles the construction of {@link VaccineCatalog} instances.
+     */
+    public static class Builder {
+        private final List<VaccineType> vaccines = new ArrayList<>();
+        private final List<Consumer<Form>> formDataHandlers = new ArrayList<>();
+        private final int[] excludes = new int[DataProvider.MAX_VACCINES];
+        private final int[] requires = new int[DataProvider.MAX_VACCINES];
+        private final int[] separations = new int[DataProvider.MAX_VACCINES];
+        private final int[][] variantTriggers = new int[DataProvider.MAX_VACCINES][];
+        private final int[][][] variantOffsets = new int[DataProvider.MAX_VACCINES][][];
+        private SelectionConstraints constraints;
+        /**
+         * The ID of the next {@link VaccineType} created for this catalog (see {@link VaccineType#getId()}).
+         */
+        private int nextId;
+
+        /**
+         * Allocates an ID for a {@link VaccineType} of this catalog. IDs are local to the catalog, so building
+         * catalogs never touches shared state.
+         */
+        int nextId() {
+            return nextId++;
+        }
+
+        /**
+         * Adds a vaccine to the catalog.
+         * @param   vaccine
+         *          the {@link VaccineType} to add.
+         * @return
+         *          the index of the vaccine in the catalog, used to refer to it in constraints.
+         * @throws  IllegalStateException
+         *          if the catalog already has {@link DataProvider#MAX_VACCINES} vaccines.
+         */
+        public int add(VaccineType vaccine) {
+            if (vaccines.size() == DataProvider.MAX_VACCINES) {
+                throw new IllegalStateException("A scheme can't have more than " + DataProvider.MAX_VACCINES
+                        + " vaccines.");
+            }
+            vaccines.add(vaccine);
+            return vaccines.size() - 1;
+        }
+
+        /**
+         * Declares that selecting one vaccine deselects another. Since the two can then never be selected together,
+         * selecting the other one deselects the first one too: the constraint works both ways, just like
+         * {@link #mutuallyExclusive(int, int)}.
+         * @param   index
+         *          the index of the vaccine, as returned by {@link #add(VaccineType)}.
+         * @param   excluded
+         *          the index of the vaccine that gets deselected.
+         * @return
+         *          this Builder instance.
+         */
+        public Builder excludes(int index, int excluded) {
+            excludes[index] |= 1 << excluded;
+            return this;
+        }
+
+        /**
+         * Declares that at most one of the two vaccines can be selected: selecting either one deselects the other.
+         * The same as {@link #excludes(int, int)}, but states the intent.
+         * @param   index
+         *          the index of one vaccine.
+         * @param   other
+         *          the index of the other vaccine.
+         * @return
+         *          this Builder instance.
+         */
+        public Builder mutuallyExclusive(int index, int other) {
+            return excludes(index, other).excludes(other, index);
+        }
+
+        /**
+         * Declares that a vaccine can't be selected without another one: selecting it selects the other one too, and
+         * deselecting the other one deselects it.
+         * @param   index
+         *          the index of the dependent vaccine.
+         * @param   required
+         *          the index of the vaccine it requires.
+         * @return
+         *          this Builder instance.
+         */
+        public Builder requires(int index, int required) {
+            requires[index] |= 1 << required;
+            return this;
+        }
+
+        /**
+         * Declares an alternative schedule for a vaccine, used while any of the <code>when</code> vaccines is
+         * selected. If several variants apply, the first one declared wins; if none does, the vaccine uses its
+         * default offsets.
+         * @param   index
+         *          the index of the vaccine.
+         * @param   offsets
+         *          the date offsets of the variant.
+         * @param   when
+         *          indices of the vaccines that trigger the variant.
+         * @return
+         *          this Builder instance.
+         */
+        public Builder offsetVariant(int index, int[] offsets, int... when) {
+            int trigger = 0;
+            for (int w : when) {
+                trigger |= 1 << w;
+            }
+            int count = variantTriggers[index] == null ? 0 : variantTriggers[index].length;
+            variantTriggers[index] = variantTriggers[index] == null
+                    ? new int[1]
+                    : Arrays.copyOf(variantTriggers[index], count + 1);
+            variantOffsets[index] = variantOffsets[index] == null
+                    ? new int[1][]
+                    : Arrays.copyOf(variantOffsets[index], count + 1);
+            variantTriggers[index][count] = trigger;
+            variantOffsets[index][count] = offsets;
+            return this;
+        }
+
+        /**
+         * Declares that a vaccine shouldn't be given on the same day as any of the other ones. Unlike the selection
+         * constraints, this only affects scheduling (see {@link ScheduleSolver}): it's the first vaccine that gets
+         * moved to another day.
+         * @param   index
+         *          the index of the vaccine that is moved.
+         * @param   others
+         *          indices of the vaccines it can't share a day with.
+         * @return
+         *          this Builder instance.
+         */
+        public Builder notOnSameDay(int index, int... others) {
+            for (int other : others) {
+                separations[index] |= 1 << other;
+            }
+            return this;
+        }
+
+        /**
+         * Registers a function that will be executed once when the input {@link Form} becomes submitted. Per-user
+         * state is reachable through {@link Form#getDataProvider()}.
+         * @param   handler
+         *          a function for handling Form submission.
+         * @return
+         *          this Builder instance.
+         */
+        public Builder addFormDataHandler(Consumer<Form> handler) {
+            formDataHandlers.add(handler);
+            return this;
+        }
+
+        /**
+         * Compiles the constraints and creates the catalog. The Builder shouldn't be used afterwards.
+         * @return
+         *          a properly initialized VaccineCatalog.
+         * @throws  IllegalStateException
+         *          if the constraints are contradictory (see {@link SelectionConstraints}), or if the default
+         *          selection doesn't satisfy them.
+         */
+        public VaccineCatalog build() {
+            int count = vaccines.size();
+            constraints = new SelectionConstraints(vaccines, Arrays.copyOf(excludes, count),
+                    Arrays.copyOf(requires, count), Arrays.copyOf(variantTriggers, count),
+                    Arrays.copyOf(variantOffsets, count));
+            return new VaccineCatalog(this);
+        }
+    }
+
+    /**
+     * @return
+     *          all vaccines of the scheme, in catalog order. The list is unmodifiable.
+     */
+    public List<VaccineType> getVaccines() {
+        return vaccines;
+    }
+
+    public VaccineType get(int index) {
+        return vaccines.get(index);
+    }
+
+    /**
+     * Finds the index of a vaccine in this catalog. Linear, but catalogs hold at most {@link Integer#SIZE} vaccines.
+     * @param   type
+     *          the vaccine to look for.
+     * @return
+     *          its index, or <code>-1</code> if it isn't part of this catalog.
+     */
+    public int indexOf(VaccineType type) {
+        for (int i = 0; i < vaccines.size(); i++) {
+            if (vaccines.get(i) == type) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return vaccines.size();
+    }
+
+    public int getDefaultSelectionMask() {
+        return defaultSelectionMask;
+    }
+
+    /**
+     * @param   index
+     *          the index of a vaccine.
+     * @return
+     *          the vaccines that the given one shouldn't share a day with, as a bitset of indices.
+     */
+    public int getSeparations(int index) {
+        return separations[index];
+    }
+
+    /**
+     * Applies a single (de)selection to a selection mask, with everything the constraints imply.
+     * @param   mask
+     *          the current selection.
+     * @param   index
+     *          the index of the vaccine that was (de)selected.
+     * @param   selected
+     *          the new status of that vaccine.
+     * @return
+     *          the resulting selection.
+     */
+    int resolveSelection(int mask, int index, boolean selected) {
+        return constraints.resolve(mask, index, selected);
+    }
+
+    /**
+     * Updates the date offsets of the vaccines that have offset variants, after the selection changed.
+     * @param   changed
+     *          the bits of the selection that changed (<code>-1</code> for all).
+     * @param   mask
+     *          the new selection.
+     * @param   dateOffsets
+     *          the user's offsets, by vaccine index.
+     */
+    void resolveOffsets(int changed, int mask, int[][] dateOffsets) {
+        constraints.resolveOffsets(this, changed, mask, dateOffsets);
+    }
+
+    /**
+     * Invokes every form-data handler.
+     * @param   form
+     *          the submitted input {@link Form}.
+     */
+    void applyFormDataHandlers(Form form) {
+        for (Consumer<Form> handler : formDataHandlers) {
+            handler.accept(form);
+        }
+    }
+}
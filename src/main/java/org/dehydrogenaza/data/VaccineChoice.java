@@ -0,0 +1,69 @@
+package org.dehydrogenaza.data;
+
+/**
+ * A single user's view of one {@link VaccineType} from the current {@link VaccineCatalog}: the shared, immutable
+ * vaccine data together with whether this user selected it. <strong>Bound to the vaccine selection in Section 1 of
+ * the HTML.</strong>
+ * <p>Holds no state of its own, just the index of the vaccine; the selection is read from and written to the
+ * {@link DataProvider}. Choices are reused across scheme switches, since an index means the same thing in every
+ * catalog.</p>
+ */
+public class VaccineChoice {
+    private final DataProvider dataProvider;
+    private final int index;
+
+    VaccineChoice(DataProvider dataProvider, int index) {
+        this.dataProvider = dataProvider;
+        this.index = index;
+    }
+
+    /**
+     * @return
+     *          the underlying, shared {@link VaccineType}.
+     */
+    public VaccineType getType() {
+        return dataProvider.getCatalog().get(index);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getId() {
+        return getType().getId();
+    }
+
+    public String getName() {
+        return getType().getName();
+    }
+
+    public String getDisease() {
+        return getType().getDisease();
+    }
+
+    /**
+     * <strong>Bidirectionally bound to an HTML input check selector.</strong>
+     * @return
+     *          <code>true</code> if this vaccine is currently selected by the user.
+     */
+    public boolean isSelected() {
+        return dataProvider.isSelected(index);
+    }
+
+    /**
+     * <strong>Bidirectionally bound to an HTML input check selector.</strong>
+     * @param   selected
+     *          new status for this vaccine, directly from user input.
+     */
+    public void setSelected(boolean selected) {
+        dataProvider.setSelected(index, selected);
+    }
+
+    /**
+     * @return
+     *          the date offsets that currently apply to this user (see {@link DataProvider#getDateOffsets(int)}).
+     */
+    public int[] getDateOffsets() {
+        return dataProvider.getDateOffsets(index);
+    }
+}
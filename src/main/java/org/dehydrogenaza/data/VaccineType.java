@@ -3,13 +3,16 @@ package org.dehydrogenaza.data;
 import org.dehydrogenaza.data.utils.RecommendationTableBox;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.function.Consumer;
 
 /**
  * A <strong>VaccineType</strong> represents all the data associated with a single type of vaccination, such as the name
  * of the product, its numeric identifier, number of doses and the recommended delay between doses.
- * <p>VaccineType objects also track whether the user chose to add the given vaccination to their calendar.</p>
+ * <p>VaccineTypes are <strong>immutable</strong> and shared: each one belongs to a {@link VaccineCatalog}, which is
+ * built once per scheme. Whether the user chose to add the given vaccination to their calendar (and which offsets
+ * apply to them) is tracked per user by the {@link DataProvider}, and bound to the HTML through
+ * {@link VaccineChoice}s.</p>
  */
 public class VaccineType {
 
@@ -24,7 +27,7 @@ public class VaccineType {
     private final String disease;
 
     /**
-     * Unique number, for internal identification, not visible to the end user.
+     * Number for internal identification, not visible to the end user. Unique within its {@link VaccineCatalog}.
      */
     private final int id;
 
@@ -32,8 +35,10 @@ public class VaccineType {
      * Recommended dates of administering individual doses, represented as <emphasis>offsets in days</emphasis> from the
      * start point (which is currently equal to the date of the first vaccination).
      * <p>An offset of "0" means that the given dose should be administered right at the start point.</p>
+     * <p>These are the defaults; the offsets actually used for a given user may be replaced by the handlers of the
+     * {@link VaccineCatalog} (see {@link DataProvider#getDateOffsets(int)}).</p>
      */
-    private int[] dateOffsets;
+    private final int[] dateOffsets;
     /**
      * Display names for individual (offset) doses. If it's null, the default {@link #name} is used instead.
      */
@@ -43,23 +48,32 @@ public class VaccineType {
      */
     private final List<RecommendationTableBox> displayBoxes;
     /**
-     * Functions that run whenever this VaccineType is selected/deselected.
+     * Whether this vaccination is selected by default, when the user switches to its scheme.
      */
-    private final List<Runnable> vaccineSelectionHandlers;
-    // TODO: Note, that the current setup won't work with "live" updating of input. If we need that,
-    //  formDataHandlers need to run every time the form gets modified in some way.
+    private final boolean selectedByDefault;
     /**
-     * Functions that run once when the form is submitted.
+     * How many days earlier and later than recommended a dose may be given, for example to spread the load of a
+     * clinic (see <code>org.dehydrogenaza.batch.CapacityLeveller</code>). Negative if not specified, in which case the
+     * caller's default applies.
      */
-    private final List<Consumer<Form>> formDataHandlers;
-
+    private final int daysEarlier;
+    private final int daysLater;
     /**
-     * Is this vaccination selected by the user. <strong>This value is bound bidirectionally with an HTML element
-     * </strong>.
+     * The window of each dose, as the number of days it may be given before and after its offset (which is the
+     * optimal day). Nullable: if not specified, every dose uses {@link #daysEarlier} and {@link #daysLater}.
      */
-    private boolean selected;
-
-    // TODO: Should probably include the recommended RANGE of dates: minimum/maximum??/optimal
+    private final int[] doseDaysEarlier; //nullable
+    private final int[] doseDaysLater; //nullable
+    /**
+     * The minimum number of days between each dose and the previous one of the series (so the first element is the
+     * interval between doses 0 and 1). Nullable: if not specified, doses can't be closer than their offsets are.
+     */
+    private final int[] minimumIntervals; //nullable
+    /**
+     * The longest break between doses after which the series is started again (the doses given before the break no
+     * longer count), or <code>-1</code> if the series is always continued.
+     */
+    private final int restartAfter;
 
     // TODO: Should include a description/tooltip for the end user
 
@@ -75,25 +89,45 @@ public class VaccineType {
         this.dateOffsets = builder.dateOffsets;
         this.displayBoxes = builder.displayBoxes;
         this.altNames = builder.altNames;
-        this.vaccineSelectionHandlers = builder.vaccineSelectionHandlers;
-        this.formDataHandlers = builder.formDataHandlers;
-        this.selected = builder.selected;
+        this.selectedByDefault = builder.selected;
+        this.daysEarlier = builder.daysEarlier;
+        this.daysLater = builder.daysLater;
+        this.doseDaysEarlier = builder.doseDaysEarlier;
+        this.doseDaysLater = builder.doseDaysLater;
+        this.minimumIntervals = builder.minimumIntervals;
+        this.restartAfter = builder.restartAfter;
     }
 
     /**
      * Handles the construction of {@link VaccineType} instances.
      */
     public static class Builder {
-        private static int currentID = 0;
+        /**
+         * The catalog this VaccineType is created for; hands out the IDs.
+         */
+        private final VaccineCatalog.Builder catalog;
         private String name;
         private String disease;
         private int id;
         private int[] dateOffsets;
         private String[] altNames;
         private List<RecommendationTableBox> displayBoxes;
-        private List<Runnable> vaccineSelectionHandlers;
-        private List<Consumer<Form>> formDataHandlers;
         private boolean selected;
+        private int daysEarlier = -1;
+        private int daysLater = -1;
+        private int[] doseDaysEarlier;
+        private int[] doseDaysLater;
+        private int[] minimumIntervals;
+        private int restartAfter = -1;
+
+        /**
+         * Constructs a Builder for a VaccineType of the given catalog.
+         * @param   catalog
+         *          the catalog that the VaccineType will be added to, which allocates its ID.
+         */
+        public Builder(VaccineCatalog.Builder catalog) {
+            this.catalog = catalog;
+        }
 
         /**
          * Adds the name of the disease that this {@link VaccineType} works against.
@@ -131,6 +165,80 @@ public class VaccineType {
             this.altNames = altNames;
             return this;
         }
+        /**
+         * Sets the tolerance around every dose of this {@link VaccineType}: how much earlier or later than its
+         * offset it may be given.
+         * @param   daysEarlier
+         *          the number of days a dose may be brought forward.
+         * @param   daysLater
+         *          the number of days a dose may be postponed.
+         * @return
+         *          this Builder instance.
+         */
+        public Builder withTolerance(int daysEarlier, int daysLater) {
+            if (daysEarlier < 0 || daysLater < 0) {
+                throw new IllegalArgumentException("Tolerance can't be negative: " + daysEarlier + ", " + daysLater);
+            }
+            this.daysEarlier = daysEarlier;
+            this.daysLater = daysLater;
+            return this;
+        }
+        /**
+         * Sets the window of each dose: the range of days, around its offset, in which it may be given (the offset
+         * itself being the optimal day). Overrides {@link #withTolerance(int, int)} for these doses.
+         * @param   daysEarlier
+         *          for each dose, the number of days it may be brought forward; exactly one per offset.
+         * @param   daysLater
+         *          for each dose, the number of days it may be postponed; exactly one per offset.
+         * @return
+         *          this Builder instance.
+         */
+        public Builder withDoseWindows(int[] daysEarlier, int[] daysLater) {
+            if (daysEarlier.length != daysLater.length) {
+                throw new IllegalArgumentException("Every dose needs both ends of its window.");
+            }
+            for (int i = 0; i < daysEarlier.length; i++) {
+                if (daysEarlier[i] < 0 || daysLater[i] < 0) {
+                    throw new IllegalArgumentException("The window of dose " + i + " can't be negative.");
+                }
+            }
+            this.doseDaysEarlier = daysEarlier;
+            this.doseDaysLater = daysLater;
+            return this;
+        }
+        /**
+         * Sets the minimum spacing between the doses of the series, which holds even if a dose is moved within its
+         * window (or given late). By default, doses can't be closer to each other than their offsets are.
+         * @param   days
+         *          the minimum number of days between each dose and the previous one; exactly one per offset,
+         *          except for the first.
+         * @return
+         *          this Builder instance.
+         */
+        public Builder withMinimumIntervals(int... days) {
+            for (int interval : days) {
+                if (interval < 1) {
+                    throw new IllegalArgumentException("Doses of a series need at least a day between them.");
+                }
+            }
+            this.minimumIntervals = days;
+            return this;
+        }
+        /**
+         * Makes the series start over if too long a break was taken between its doses (or since the last one). By
+         * default, an interrupted series is continued from the next dose, however late.
+         * @param   days
+         *          the longest break, in days, after which the doses given so far still count.
+         * @return
+         *          this Builder instance.
+         */
+        public Builder withRestartAfter(int days) {
+            if (days < 1) {
+                throw new IllegalArgumentException("The break before a restart must be at least a day: " + days);
+            }
+            this.restartAfter = days;
+            return this;
+        }
         /**
          * Adds {@link RecommendationTableBox}es which are used to set up the table in Section 4 of the HTML.
          * @param   displayBoxes
@@ -144,8 +252,8 @@ public class VaccineType {
         }
 
         /**
-         * Creates an instance of {@link VaccineType}. The ID is automatically incremented with each invocation. The
-         * only nullable field is (by design) {@link #altNames}.
+         * Creates an instance of {@link VaccineType}, with the next ID of its catalog. The only nullable field is (by
+         * design) {@link #altNames}.
          * @param   name
          *          the name of this VaccineType.
          * @param   selected
@@ -156,35 +264,22 @@ public class VaccineType {
         public VaccineType create(String name, boolean selected) {
             this.name = name;
             if (this.disease == null) this.disease = "";
-            this.id = currentID++;
+            this.id = catalog.nextId();
             if (this.dateOffsets == null) this.dateOffsets = new int[]{0};
-            if (this.displayBoxes == null) this.displayBoxes = new ArrayList<>();
-            this.vaccineSelectionHandlers = new ArrayList<>();
-            this.formDataHandlers = new ArrayList<>();
+            if (this.doseDaysEarlier != null && this.doseDaysEarlier.length != this.dateOffsets.length) {
+                throw new IllegalStateException(name + ": the dose windows don't match the offsets.");
+            }
+            if (this.minimumIntervals != null && this.minimumIntervals.length != this.dateOffsets.length - 1) {
+                throw new IllegalStateException(name + ": the minimum intervals don't match the offsets.");
+            }
+            this.displayBoxes = this.displayBoxes == null
+                    ? Collections.emptyList()
+                    : Collections.unmodifiableList(new ArrayList<>(this.displayBoxes));
             this.selected = selected;
             return new VaccineType(this);
         }
     }
 
-    /**
-     * Registers a function that will be executed whenever this VaccineType becomes selected/deselected. Does NOT
-     * execute during instantiation - only when the selection changes from initial.
-     * @param   handler
-     *          a function for handling selection/deselection.
-     */
-    public void addSelectionHandler(Runnable handler) {
-        vaccineSelectionHandlers.add(handler);
-    }
-    /**
-     * Registers a function that will be executed once for this VaccineType when the input {@link Form} becomes
-     * submitted.
-     * @param   handler
-     *          a function for handling Form submission.
-     */
-    public void addFormDataHandler(Consumer<Form> handler) {
-        formDataHandlers.add(handler);
-    }
-
     public String getName() {
         return name;
     }
@@ -197,12 +292,22 @@ public class VaccineType {
         return id;
     }
 
+    /**
+     * Returns the <em>default</em> offsets of this VaccineType's doses (see {@link #dateOffsets}). The array is shared
+     * and must not be modified.
+     * @return
+     *          the default date offsets, in days.
+     */
     public int[] getDateOffsets() {
         return dateOffsets;
     }
 
-    public void setDateOffsets(int... dateOffsets) {
-        this.dateOffsets = dateOffsets;
+    /**
+     * @return
+     *          the number of doses of this VaccineType.
+     */
+    public int getDoseCount() {
+        return dateOffsets.length;
     }
 
     /**
@@ -219,42 +324,92 @@ public class VaccineType {
     }
 
     /**
-     * <strong>Bidirectionally bound to an HTML input check selector.</strong>
      * @return
-     *          <code>true</code> if this VaccineType is currently selected by the user.
+     *          <code>true</code> if this VaccineType should be selected by default.
      */
-    public boolean isSelected() {
-        return selected;
+    public boolean isSelectedByDefault() {
+        return selectedByDefault;
     }
 
     /**
-     * <strong>Bidirectionally bound to an HTML input check selector.</strong>
-     * @param   selected
-     *          new status for this VaccineType, directly from user input.
+     * @return
+     *          <code>true</code> if {@link Builder#withTolerance(int, int)} was used for this VaccineType.
      */
-    public void setSelected(boolean selected) {
-        this.selected = selected;
-        applySelectionHandlers();
+    public boolean hasTolerance() {
+        return daysEarlier >= 0;
     }
 
-    public List<RecommendationTableBox> getBoxes() {
-        return displayBoxes;
+    /**
+     * @return
+     *          the number of days a dose may be brought forward, or <code>-1</code> if not specified.
+     */
+    public int getDaysEarlier() {
+        return daysEarlier;
     }
 
     /**
-     * Invokes every function registered as {@link #formDataHandlers} for this VaccineType.
-     * @param   form
-     *          the current input {@link Form}.
+     * @return
+     *          the number of days a dose may be postponed, or <code>-1</code> if not specified.
      */
-    public void applyFormDataHandlers(Form form) {
-        formDataHandlers.forEach(h -> h.accept(form));
+    public int getDaysLater() {
+        return daysLater;
     }
 
     /**
-     * Invokes every function registered as {@link #vaccineSelectionHandlers} for this VaccineType.
+     * Returns how many days before its offset a given dose may be given: from its window, if the doses have windows
+     * (see {@link Builder#withDoseWindows(int[], int[])}), or from the tolerance of the whole type.
+     * @param   dose
+     *          the index of the dose in the series.
+     * @return
+     *          the number of days, or <code>-1</code> if not specified.
      */
-    private void applySelectionHandlers() {
-        vaccineSelectionHandlers.forEach(Runnable::run);
+    public int getDaysEarlier(int dose) {
+        if (doseDaysEarlier != null && dose < doseDaysEarlier.length) {
+            return doseDaysEarlier[dose];
+        }
+        return daysEarlier;
+    }
+
+    /**
+     * Returns how many days after its offset a given dose may be given (see {@link #getDaysEarlier(int)}).
+     * @param   dose
+     *          the index of the dose in the series.
+     * @return
+     *          the number of days, or <code>-1</code> if not specified.
+     */
+    public int getDaysLater(int dose) {
+        if (doseDaysLater != null && dose < doseDaysLater.length) {
+            return doseDaysLater[dose];
+        }
+        return daysLater;
+    }
+
+    /**
+     * Returns the minimum number of days between a given dose and the previous one of the series.
+     * @param   dose
+     *          the index of the dose in the series, at least 1.
+     * @return
+     *          the number of days, or <code>-1</code> if not specified (in which case the spacing of the offsets
+     *          applies).
+     */
+    public int getMinimumInterval(int dose) {
+        if (minimumIntervals != null && dose - 1 < minimumIntervals.length) {
+            return minimumIntervals[dose - 1];
+        }
+        return -1;
+    }
+
+    /**
+     * @return
+     *          the longest break between doses after which the series starts over (see
+     *          {@link Builder#withRestartAfter(int)}), or <code>-1</code> if it's always continued.
+     */
+    public int getRestartAfter() {
+        return restartAfter;
+    }
+
+    public List<RecommendationTableBox> getBoxes() {
+        return displayBoxes;
     }
 
     // TODO: Probably not necessary in this version, just override .equals.
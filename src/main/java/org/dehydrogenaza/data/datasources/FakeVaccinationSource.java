@@ -1,5 +1,6 @@
 package org.dehydrogenaza.data.datasources;
 
+import org.dehydrogenaza.data.VaccineCatalog;
 import org.dehydrogenaza.data.VaccineType;
 import org.dehydrogenaza.data.utils.RecommendationTableBox;
 
@@ -11,85 +12,96 @@ import java.util.List;
  */
 public class FakeVaccinationSource implements IVaccineSource {
 
+    /**
+     * Holds the catalog, built once, the first time it's requested. The random defaults are thus picked once, too.
+     */
+    private static class CatalogHolder {
+        private static final VaccineCatalog CATALOG = buildCatalog();
+    }
+
     @Override
-    public List<VaccineType> getVaccines() {
-        List<VaccineType> vaccines = new ArrayList<>();
+    public VaccineCatalog getCatalog() {
+        return CatalogHolder.CATALOG;
+    }
+
+    private static VaccineCatalog buildCatalog() {
+        VaccineCatalog.Builder vaccines = new VaccineCatalog.Builder();
         int[] offset1 = {0, 5, 10, 15};
         int[] offset2 = {0, 3, 9, 17, 25};
         int[] offset3 = {2, 4, 6, 100, 2000};
         int[] offset4 = {10, 365};
         int[] offset5 = {7};
-        VaccineType test0 = new VaccineType.Builder()
+        VaccineType test0 = new VaccineType.Builder(vaccines)
                 .withDisease("choroba 0")
                 .withDateOffsets(offset1)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("rtęć", Math.random() > 0.5);
         vaccines.add(test0);
-        VaccineType test1 = new VaccineType.Builder()
+        VaccineType test1 = new VaccineType.Builder(vaccines)
                 .withDisease("choroba 1")
                 .withDateOffsets(offset2)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("autyzm", Math.random() > 0.5);
         vaccines.add(test1);
-        VaccineType test2 = new VaccineType.Builder()
+        VaccineType test2 = new VaccineType.Builder(vaccines)
                 .withDisease("choroba 2")
                 .withDateOffsets(offset3)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("czip od Billa Gatesa", Math.random() > 0.5);
         vaccines.add(test2);
-        VaccineType test3 = new VaccineType.Builder()
+        VaccineType test3 = new VaccineType.Builder(vaccines)
                 .withDisease("choroba 3")
                 .withDateOffsets(offset4)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("chip od Sorosa", Math.random() > 0.5);
         vaccines.add(test3);
-        VaccineType test4 = new VaccineType.Builder()
+        VaccineType test4 = new VaccineType.Builder(vaccines)
                 .withDisease("choroba 4")
                 .withDateOffsets(offset5)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("NOP", Math.random() > 0.5);
         vaccines.add(test4);
-        VaccineType test5 = new VaccineType.Builder()
+        VaccineType test5 = new VaccineType.Builder(vaccines)
                 .withDisease("choroba 5")
                 .withDateOffsets(offset1)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("sok z buraka", Math.random() > 0.5);
         vaccines.add(test5);
-        VaccineType test6 = new VaccineType.Builder()
+        VaccineType test6 = new VaccineType.Builder(vaccines)
                 .withDisease("choroba 6")
                 .withDateOffsets(offset2)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("darwinizm", Math.random() > 0.5);
         vaccines.add(test6);
-        VaccineType test7 = new VaccineType.Builder()
+        VaccineType test7 = new VaccineType.Builder(vaccines)
                 .withDisease("choroba 7")
                 .withDateOffsets(offset3)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("niebinarność", Math.random() > 0.5);
         vaccines.add(test7);
-        VaccineType test8 = new VaccineType.Builder()
+        VaccineType test8 = new VaccineType.Builder(vaccines)
                 .withDisease("choroba 8")
                 .withDateOffsets(offset4)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("leworęczność", Math.random() > 0.5);
         vaccines.add(test8);
-        VaccineType test9 = new VaccineType.Builder()
+        VaccineType test9 = new VaccineType.Builder(vaccines)
                 .withDisease("choroba 9")
                 .withDateOffsets(offset5)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("wiedźmiństwo", Math.random() > 0.5);
         vaccines.add(test9);
-        VaccineType test10 = new VaccineType.Builder()
+        VaccineType test10 = new VaccineType.Builder(vaccines)
                 .withDisease("choroba 10")
                 .withDateOffsets(offset1)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("piśmienność", Math.random() > 0.5);
         vaccines.add(test10);
 
-        return vaccines;
+        return vaccines.build();
     }
 
-    private List<RecommendationTableBox> getDisplayBoxes() {
+    private static List<RecommendationTableBox> getDisplayBoxes() {
         List<RecommendationTableBox> boxes = new ArrayList<>();
 
         if (Math.random() > 0.5) {
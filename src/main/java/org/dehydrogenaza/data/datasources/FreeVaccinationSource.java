@@ -1,8 +1,9 @@
 package org.dehydrogenaza.data.datasources;
 
+import org.dehydrogenaza.data.VaccineCatalog;
 import org.dehydrogenaza.data.VaccineType;
+import org.dehydrogenaza.data.utils.DateCodec;
 import org.dehydrogenaza.data.utils.RecommendationTableBox;
-import org.dehydrogenaza.data.utils.TinyDate;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -39,61 +40,77 @@ public class FreeVaccinationSource implements IVaccineSource {
     private static final int VISIT_10_YEARS = 3650;
 
 
-    // TODO: Think on how to apply the Singleton pattern here.
+    /**
+     * Holds the catalog of this plan. It's built once, the first time it's requested, and shared afterwards (class
+     * initialization is thread-safe, so this works for the batch generator too).
+     */
+    private static class CatalogHolder {
+        private static final VaccineCatalog CATALOG = buildCatalog();
+    }
+
     /**
      * Supplies data for this vaccination plan, which uses single-ingredient vaccines.
-     * @return The list of {@link VaccineType}s in this plan with their default settings. Includes vaccines that are
-     * optional and not selected by default.
+     * @return The shared {@link VaccineCatalog} of this plan: its {@link VaccineType}s with their default settings
+     * (including vaccines that are optional and not selected by default) and the interdependencies between them.
      */
     @Override
-    public List<VaccineType> getVaccines() {
-        List<VaccineType> vaccines = new ArrayList<>();
+    public VaccineCatalog getCatalog() {
+        return CatalogHolder.CATALOG;
+    }
+
+    /**
+     * Builds the {@link VaccineCatalog} of this plan.
+     */
+    private static VaccineCatalog buildCatalog() {
+        VaccineCatalog.Builder catalog = new VaccineCatalog.Builder();
 
         // MANDATORY VACCINES
 
-        VaccineType bcg = new VaccineType.Builder()
+        VaccineType bcg = new VaccineType.Builder(catalog)
                 .withDisease("Gruźlica")
                 .withDateOffsets(WITHIN_24H)
+                // given in the maternity ward, so it can't be moved to another day
+                .withTolerance(0, 0)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("BCG", true);
-        VaccineType hbv = new VaccineType.Builder()
+        VaccineType hbv = new VaccineType.Builder(catalog)
                 .withDisease("Wirusowe Zapalenie Wątroby typu B")
                 .withDateOffsets(WITHIN_24H, VISIT_6_WEEKS, VISIT_7TO8_MONTHS)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("HBV", true);
-        VaccineType dtp = new VaccineType.Builder()
+        VaccineType dtp = new VaccineType.Builder(catalog)
                 .withDisease("Błonica, tężec, krztusiec")
                 .withDateOffsets(VISIT_6_WEEKS, VISIT_3TO4_MONTHS, VISIT_5TO6_MONTHS,
                         VISIT_16_MONTHS, VISIT_6_YEARS, 5110, 6935)
                 .withAltNames("DTPw", "DTPw", "DTPw", "DTPw", "DTaP", "dTpa", "Td")
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("DTP", true);
-        VaccineType ipv = new VaccineType.Builder()
+        VaccineType ipv = new VaccineType.Builder(catalog)
                 .withDisease("Polio (Heinego-Medina)")
                 .withDateOffsets(VISIT_3TO4_MONTHS, VISIT_5TO6_MONTHS, VISIT_16_MONTHS, VISIT_6_YEARS)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("IPV", true);
-        VaccineType hib = new VaccineType.Builder()
+        VaccineType hib = new VaccineType.Builder(catalog)
                 .withDisease("Haemophilus influenzae typu B")
                 .withDateOffsets(VISIT_6_WEEKS, VISIT_3TO4_MONTHS, VISIT_5TO6_MONTHS, VISIT_16_MONTHS)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("Hib", true);
         // TODO: only children born after X year
-        VaccineType pcv = new VaccineType.Builder()
+        VaccineType pcv = new VaccineType.Builder(catalog)
                 .withDisease("Pneumokoki")
                 .withDateOffsets(VISIT_6_WEEKS, VISIT_3TO4_MONTHS, VISIT_13_MONTHS)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("PCV", true);
         // TODO: only children born after X year
         // TODO: exists in either 2 or 3 dose variants
-        VaccineType rv = new VaccineType.Builder()
+        VaccineType rv = new VaccineType.Builder(catalog)
                 .withDisease("Rotawirusy")
                 .withDateOffsets(VISIT_6_WEEKS, VISIT_3TO4_MONTHS, VISIT_5TO6_MONTHS)
                 .withAltNames("RV", "RV", "RV3")
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("RV", true);
         // Recommended schedules depend on date of birth
-        VaccineType mmr = new VaccineType.Builder()
+        VaccineType mmr = new VaccineType.Builder(catalog)
                 .withDisease("Odra, świnka, różyczka")
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("MMR", true);
@@ -104,67 +121,59 @@ public class FreeVaccinationSource implements IVaccineSource {
         // interdependency delays menB if both selected
         int[] menBOffsetsNormal = {VISIT_2TO3_MONTHS, VISIT_3TO4_MONTHS, VISIT_4TO5_MONTHS, VISIT_13_MONTHS};
         int[] menBOffsetsDelayed = {VISIT_3TO4_MONTHS, VISIT_5TO6_MONTHS, VISIT_7TO8_MONTHS, VISIT_13_MONTHS};
-        VaccineType menb = new VaccineType.Builder()
+        VaccineType menb = new VaccineType.Builder(catalog)
                 .withDisease("Meningokoki grupy B")
                 .withDateOffsets(menBOffsetsNormal)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("MenB", false);
-        VaccineType menc = new VaccineType.Builder()
+        VaccineType menc = new VaccineType.Builder(catalog)
                 .withDisease("Meningokoki grupy C")
                 .withDateOffsets(VISIT_2TO3_MONTHS, VISIT_4TO5_MONTHS, VISIT_13_MONTHS)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("MenC", false);
-        VaccineType menacwy = new VaccineType.Builder()
+        VaccineType menacwy = new VaccineType.Builder(catalog)
                 .withDisease("Meningokoki grup A, C, W, Y")
                 .withDateOffsets(VISIT_2TO3_MONTHS, VISIT_4TO5_MONTHS, VISIT_13_MONTHS)
                 .withDisplayBoxes(getDisplayBoxes())
                 .create("MenACWY", false);
 
-        // SETUP INTERDEPENDENCIES BETWEEN VACCINES
+        //Populate the catalog with ALL VaccineTypes (including ones that are optional/not selected)
+        catalog.add(bcg);
+        catalog.add(hbv);
+        catalog.add(dtp);
+        catalog.add(ipv);
+        catalog.add(hib);
+        catalog.add(pcv);
+        catalog.add(rv);
+        int mmrIndex = catalog.add(mmr);
+        int menbIndex = catalog.add(menb);
+        int mencIndex = catalog.add(menc);
+        int menacwyIndex = catalog.add(menacwy);
 
-        // If menC is selected, deselect menACWY
-        menc.addSelectionHandler(() -> {
-            if (menc.isSelected()) menacwy.setSelected(false);
-        });
+        // SETUP INTERDEPENDENCIES BETWEEN VACCINES
 
-        // If menACWY is selected, deselect menC
-        menacwy.addSelectionHandler(() -> {
-            if (menacwy.isSelected()) menc.setSelected(false);
-        });
+        // Selecting menC deselects menACWY and vice versa
+        catalog.mutuallyExclusive(mencIndex, menacwyIndex);
 
         // If either menC or menACWY is selected, use the delayed schedule for menB
-        Runnable chooseMenBSchedule = () -> {
-            if (menc.isSelected() || menacwy.isSelected()) menb.setDateOffsets(menBOffsetsDelayed);
-            else menb.setDateOffsets(menBOffsetsNormal);
-        };
-        menc.addSelectionHandler(chooseMenBSchedule);
-        menacwy.addSelectionHandler(chooseMenBSchedule);
+        catalog.offsetVariant(menbIndex, menBOffsetsDelayed, mencIndex, menacwyIndex);
+        // ...and, wherever the two still meet (e.g. after manual changes), menB is the one moved
+        catalog.notOnSameDay(menbIndex, mencIndex, menacwyIndex);
 
         //SETUP VACCINES DEPENDENT ON INPUT DATA, for example child's date of birth
 
         // Ministry of Health changed recommendations for the second dose; applies to children born >= 2013
-        mmr.addFormDataHandler(form -> {
-            if (TinyDate.of(form.getDateOfBirth()).after("2013-01-01")) {
-                mmr.setDateOffsets(VISIT_13_MONTHS, VISIT_6_YEARS);
+        int[] mmrOffsetsSince2013 = {VISIT_13_MONTHS, VISIT_6_YEARS};
+        int[] mmrOffsetsBefore2013 = {VISIT_13_MONTHS, VISIT_10_YEARS};
+        catalog.addFormDataHandler(form -> {
+            if (DateCodec.parse(form.getDateOfBirth()) > 20130101) {
+                form.getDataProvider().setDateOffsets(mmrIndex, mmrOffsetsSince2013);
             } else {
-                mmr.setDateOffsets(VISIT_13_MONTHS, VISIT_10_YEARS);
+                form.getDataProvider().setDateOffsets(mmrIndex, mmrOffsetsBefore2013);
             }
         });
 
-        //Populate the list with ALL VaccineTypes (including ones that are optional/not selected)
-        vaccines.add(bcg);
-        vaccines.add(hbv);
-        vaccines.add(dtp);
-        vaccines.add(ipv);
-        vaccines.add(hib);
-        vaccines.add(pcv);
-        vaccines.add(rv);
-        vaccines.add(mmr);
-        vaccines.add(menb);
-        vaccines.add(menc);
-        vaccines.add(menacwy);
-
-        return vaccines;
+        return catalog.build();
     }
 
 // TODO: Figure out how Section 4 is going to work and rework this as needed.
@@ -176,7 +185,7 @@ public class FreeVaccinationSource implements IVaccineSource {
      * @return  A list of {@link RecommendationTableBox}es representing this vaccine visually. Each box indicates
      * either an empty or filled range of columns in the schedule.
      */
-    private List<RecommendationTableBox> getDisplayBoxes() {
+    private static List<RecommendationTableBox> getDisplayBoxes() {
         List<RecommendationTableBox> boxes = new ArrayList<>();
 
         if (Math.random() > 0.5) {
@@ -1,18 +1,40 @@
 package org.dehydrogenaza.data.datasources;
 
+import org.dehydrogenaza.data.VaccinationScheme;
+import org.dehydrogenaza.data.VaccineCatalog;
 import org.dehydrogenaza.data.VaccineType;
 
-import java.util.List;
-
 /**
  * A source of data (incl. {@link VaccineType}s and their initial settings) for a given "vaccination plan" or
  * "scheme".
  */
 public interface IVaccineSource {
     /**
-     * Supplies data for this vaccination plan (scheme).
-     * @return The list of {@link VaccineType}s in this plan with their default settings. Includes vaccines that are
-     * optional and/or not selected by default.
+     * Supplies data for this vaccination plan (scheme). The catalog is immutable, so implementations are expected to
+     * build it once and return the same instance on every call.
+     * @return The {@link VaccineCatalog} of this plan: its {@link VaccineType}s with their default settings (including
+     * vaccines that are optional and/or not selected by default) and the interdependencies between them.
+     */
+    VaccineCatalog getCatalog();
+
+    /**
+     * Factory method that returns a source of data for the {@link VaccinationScheme} with the given ID. Sources
+     * are cheap to create, since their catalogs are shared.
+     * @param   schemeID
+     *          the ID of a {@link VaccinationScheme}, as used by the radio selector in Section 1 of the HTML.
+     * @return
+     *          an IVaccineSource supplying data for the given scheme.
+     * @throws  IllegalArgumentException
+     *          if there's no scheme with the given ID.
      */
-    List<VaccineType> getVaccines();
+    static IVaccineSource forScheme(String schemeID) {
+        switch (schemeID) {
+            case "0":
+                return new FakeVaccinationSource();
+            case "1":
+                return new FreeVaccinationSource();
+            default:
+                throw new IllegalArgumentException("Unknown vaccination scheme: " + schemeID);
+        }
+    }
 }
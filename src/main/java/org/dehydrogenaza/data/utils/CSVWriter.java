@@ -2,13 +2,20 @@ package org.dehydrogenaza.data.utils;
 
 import org.dehydrogenaza.Client;
 import org.dehydrogenaza.data.Dose;
+import org.dehydrogenaza.data.HouseholdTimeline;
+import org.dehydrogenaza.data.HouseholdVisit;
 import org.dehydrogenaza.data.ScheduleForDay;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
  * Utility class which provides a CSV export capability, allowing users to generate and download their schedules as
  * files.
+ * <p>The CSV text is streamed to any {@link Appendable} (a <code>StringBuilder</code>, a <code>Writer</code>, or an
+ * <code>OutputStream</code> wrapped in an <code>OutputStreamWriter</code>) in a single pass: each character is
+ * escaped as it's written, so no intermediate copies of the text are made, and memory use doesn't depend on the number
+ * of rows.</p>
  */
 public class CSVWriter {
     /**
@@ -23,10 +30,22 @@ public class CSVWriter {
      * HTML encoding of a " (double quote) character.
      */
     private static final String ESCAPED_QUOTE = "%22";
+    /**
+     * HTML encoding of a '#' character, which would otherwise end the URI.
+     */
+    private static final String ESCAPED_HASH = "%23";
+    /**
+     * HTML encoding of a '%' character, which would otherwise start an escape sequence.
+     */
+    private static final String ESCAPED_PERCENT = "%25";
+    /**
+     * Line terminator of a "raw" (not URI-escaped) CSV file.
+     */
+    private static final String RAW_NEWLINE = "\r\n";
     /**
      * Common header for CSV files, containing the names of columns.
      */
-    private static final String CSV_HEADER = "Subject,Start Date,Description" + ESCAPED_NEWLINE;
+    private static final String CSV_HEADER = "Subject,Start Date,Description\n";
     /**
      * Common beginning of all URI strings encoding CSV files.
      */
@@ -42,67 +61,181 @@ public class CSVWriter {
      *          A CSV file encoded as a URI.
      */
     public static String getDataURI(List<ScheduleForDay> dates) {
-        String csvText = makeRawCSV(dates);
-        return URI_SCHEME + escapeSpecialChars(csvText);
+        StringBuilder uri = new StringBuilder(URI_SCHEME);
+        try {
+            write(dates, uri, true);
+        } catch (IOException e) {
+            //a StringBuilder never throws
+            throw new IllegalStateException(e);
+        }
+        return uri.toString();
     }
 
-    // TODO: Check if we can use StringBuilder, it might already be "free".
+    /**
+     * Generates and returns a URI encoding a household's combined timeline as a downloadable CSV file: one row per
+     * visit, listing the vaccines of every child due that day (see
+     * {@link #writeVisits(Iterable, Appendable, boolean)}).
+     * @param   visits
+     *          the visits to export, in order; normally a {@link HouseholdTimeline}.
+     * @return
+     *          A CSV file encoded as a URI.
+     */
+    public static String getHouseholdDataURI(Iterable<HouseholdVisit> visits) {
+        StringBuilder uri = new StringBuilder(URI_SCHEME);
+        try {
+            writeHeader(uri, true);
+            writeVisits(visits, uri, true);
+        } catch (IOException e) {
+            //a StringBuilder never throws
+            throw new IllegalStateException(e);
+        }
+        return uri.toString();
+    }
 
     /**
-     * Creates a "raw" CSV file that's not yet suited to be used in a URI because it may (and probably will) contain
-     * special characters that need to be escaped accordingly for HTML.
-     *
-     * <p>Note: intentionally not using StringBuilder to save some JS output size.</p>
+     * Streams a whole CSV file (the header, followed by one row per {@link ScheduleForDay}) to <code>out</code>.
      * @param   dates
-     *          A list of {@link ScheduleForDay}s, representing the current vaccination schedule (calendar).
-     * @return
-     *          A CSV file as a single <code>String</code>.
+     *          the {@link ScheduleForDay}s to export, in order.
+     * @param   out
+     *          the destination.
+     * @param   uriEscaped
+     *          <code>true</code> to escape the text for use in a URI (see {@link #getDataURI(List)}),
+     *          <code>false</code> to write a plain CSV file.
+     * @throws  IOException
+     *          if <code>out</code> fails.
      */
-    private static String makeRawCSV(List<ScheduleForDay> dates) {
-        String csv = CSV_HEADER;
+    public static void write(Iterable<ScheduleForDay> dates, Appendable out, boolean uriEscaped) throws IOException {
+        writeHeader(out, uriEscaped);
+        writeRows(dates, out, uriEscaped);
+    }
+
+    /**
+     * Streams the CSV header (the names of columns). Useful when many schedules are exported to a single file with
+     * {@link #writeRows(Iterable, Appendable, boolean)}.
+     * @param   out
+     *          the destination.
+     * @param   uriEscaped
+     *          <code>true</code> to escape the text for use in a URI.
+     * @throws  IOException
+     *          if <code>out</code> fails.
+     */
+    public static void writeHeader(Appendable out, boolean uriEscaped) throws IOException {
+        appendEscaped(CSV_HEADER, out, uriEscaped);
+    }
 
+    /**
+     * Streams one CSV row per {@link ScheduleForDay}, without the header.
+     * @param   dates
+     *          the {@link ScheduleForDay}s to export, in order.
+     * @param   out
+     *          the destination.
+     * @param   uriEscaped
+     *          <code>true</code> to escape the text for use in a URI.
+     * @throws  IOException
+     *          if <code>out</code> fails.
+     */
+    public static void writeRows(Iterable<ScheduleForDay> dates, Appendable out, boolean uriEscaped)
+            throws IOException {
         for (ScheduleForDay date : dates) {
-            String description = "";
+            appendEscaped("Szczepienie,", out, uriEscaped);
+            appendEscaped(date.getDate(), out, uriEscaped);
+            appendEscaped(",\"", out, uriEscaped);
             for (Dose dose : date.getDoses()) {
-                description += dose.getType().getName() + "\n";
+                appendQuoted(dose.getType().getName(), out, uriEscaped);
+                appendEscaped("\n", out, uriEscaped);
             }
+            appendEscaped("\"\n", out, uriEscaped);
+        }
+    }
 
-            String csvLine = "Szczepienie," + date.getDate() + ",\"" + description + "\"\n";
-            csv += csvLine;
+    /**
+     * Streams one CSV row per {@link HouseholdVisit}, without the header. Each vaccine is prefixed with the name of the
+     * child it's for, e.g. <code>Ala: MMR</code>. Visits are consumed as they are written, so a
+     * {@link HouseholdTimeline} is merged and exported in a single pass.
+     * @param   visits
+     *          the visits to export, in order.
+     * @param   out
+     *          the destination.
+     * @param   uriEscaped
+     *          <code>true</code> to escape the text for use in a URI.
+     * @throws  IOException
+     *          if <code>out</code> fails.
+     */
+    public static void writeVisits(Iterable<HouseholdVisit> visits, Appendable out, boolean uriEscaped)
+            throws IOException {
+        for (HouseholdVisit visit : visits) {
+            appendEscaped("Szczepienie,", out, uriEscaped);
+            appendEscaped(visit.getDate(), out, uriEscaped);
+            appendEscaped(",\"", out, uriEscaped);
+            for (int i = 0; i < visit.size(); i++) {
+                String child = visit.getChild(i);
+                for (Dose dose : visit.getSchedule(i).getDoses()) {
+                    appendQuoted(child, out, uriEscaped);
+                    appendEscaped(": ", out, uriEscaped);
+                    appendQuoted(dose.getType().getName(), out, uriEscaped);
+                    appendEscaped("\n", out, uriEscaped);
+                }
+            }
+            appendEscaped("\"\n", out, uriEscaped);
         }
+    }
 
-        return csv;
+    /**
+     * Writes text that goes inside a quoted CSV field, doubling any double quotes (as required by CSV).
+     */
+    private static void appendQuoted(String text, Appendable out, boolean uriEscaped) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char currentChar = text.charAt(i);
+            if (currentChar == '\"') {
+                appendEscaped(currentChar, out, uriEscaped);
+            }
+            appendEscaped(currentChar, out, uriEscaped);
+        }
     }
 
     /**
-     * Helper method which scans the CSV string and replaces relevant HTML special characters with their escaped
-     * versions. Works for: '<b>\n</b>' (newline), ' ' (space) and '<b>\</b>' (backslash), which show up in CSV but
-     * would break the URI.
-     * @param   rawText
-     *          An unescaped string.
-     * @return
-     *          A string with newlines, spaces and backslashes replaced with HTML-escaped codes.
+     * Writes text, escaping every character with {@link #appendEscaped(char, Appendable, boolean)}.
      */
-    private static String escapeSpecialChars(String rawText) {
-        String outputText = "";
+    private static void appendEscaped(String text, Appendable out, boolean uriEscaped) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            appendEscaped(text.charAt(i), out, uriEscaped);
+        }
+    }
 
-        for (int i = 0; i < rawText.length(); i++) {
-            char currentChar = rawText.charAt(i);
-            switch (currentChar) {
-                case '\n':
-                    outputText += ESCAPED_NEWLINE;
-                    break;
-                case ' ':
-                    outputText += ESCAPED_SPACE;
-                    break;
-                case '\"':
-                    outputText += ESCAPED_QUOTE;
-                    break;
-                default:
-                    outputText += currentChar;
+    /**
+     * Writes a single character, replacing relevant HTML special characters with their escaped versions if
+     * <code>uriEscaped</code>. Works for: '<b>\n</b>' (newline), ' ' (space), '<b>"</b>' (double quote), '#' and '%',
+     * which show up in CSV but would break the URI. Without URI escaping, newlines are written as CRLF. Also used by
+     * the {@link ICalendarWriter}.
+     */
+    static void appendEscaped(char currentChar, Appendable out, boolean uriEscaped) throws IOException {
+        if (!uriEscaped) {
+            if (currentChar == '\n') {
+                out.append(RAW_NEWLINE);
+            } else {
+                out.append(currentChar);
             }
+            return;
         }
 
-        return outputText;
+        switch (currentChar) {
+            case '\n':
+                out.append(ESCAPED_NEWLINE);
+                break;
+            case ' ':
+                out.append(ESCAPED_SPACE);
+                break;
+            case '\"':
+                out.append(ESCAPED_QUOTE);
+                break;
+            case '#':
+                out.append(ESCAPED_HASH);
+                break;
+            case '%':
+                out.append(ESCAPED_PERCENT);
+                break;
+            default:
+                out.append(currentChar);
+        }
     }
 }
@@ -0,0 +1,125 @@
+package org.dehydrogenaza.data.utils;
+
+import java.util.List;
+
+/**
+ * The part of a long list of rows (normally, of the calendar's {@link org.dehydrogenaza.data.ScheduleForDay}s) which
+ * is actually rendered: the rows visible in the viewport, plus a few more above and below (the "overscan"), so that
+ * scrolling a little doesn't show empty space before the next render.
+ * <p>The rows outside the window are replaced by two empty spacers, above and below, tall enough to keep the page
+ * (and its scrollbar) the same height as if every row was rendered. Since rows vary in height (a day may have one
+ * dose or six), the spacers are sized using an <i>estimated</i> row height, refined from the height of the rows
+ * actually rendered every time the window moves.</p>
+ * <p>Only arithmetic: reading the scroll position and the heights from the page is up to the caller.</p>
+ */
+public class CalendarWindow {
+    /**
+     * The number of extra rows rendered above and below the visible ones.
+     */
+    private final int overscan;
+    /**
+     * The number of rows rendered before the viewport is known (for example, right after the calendar appears).
+     */
+    private final int initialRows;
+    /**
+     * The estimated height of a single row, in pixels.
+     */
+    private int rowHeight;
+    /**
+     * The first rendered row.
+     */
+    private int first;
+    /**
+     * The row after the last rendered one. May be beyond the end of the list, see {@link #slice(List)}.
+     */
+    private int end;
+
+    /**
+     * @param   initialRows
+     *          the number of rows rendered before the viewport is known.
+     * @param   rowHeight
+     *          the initial estimate of the height of a row, in pixels.
+     * @param   overscan
+     *          the number of extra rows rendered above and below the visible ones.
+     */
+    public CalendarWindow(int initialRows, int rowHeight, int overscan) {
+        this.initialRows = initialRows;
+        this.rowHeight = Math.max(1, rowHeight);
+        this.overscan = overscan;
+        reset();
+    }
+
+    /**
+     * Moves the window back to the beginning of the list, for example when a new calendar is shown.
+     */
+    public void reset() {
+        first = 0;
+        end = initialRows;
+    }
+
+    /**
+     * Moves the window to the rows visible in the viewport.
+     * @param   offset
+     *          the position of the top of the viewport, in pixels, relative to the top of the list (negative if the
+     *          list starts below the top of the viewport).
+     * @param   viewportHeight
+     *          the height of the viewport, in pixels.
+     * @param   renderedHeight
+     *          the height of the rows rendered now (without the spacers), in pixels, used to refine the estimated
+     *          row height; or <code>-1</code> if unknown.
+     * @param   size
+     *          the number of rows in the list.
+     * @return
+     *          <code>true</code> if the window moved, and the list should be rendered again.
+     */
+    public boolean update(int offset, int viewportHeight, int renderedHeight, int size) {
+        int rendered = Math.min(end, size) - Math.min(first, size);
+        if (renderedHeight > 0 && rendered > 0) {
+            rowHeight = Math.max(1, (renderedHeight + rendered / 2) / rendered);
+        }
+
+        int top = Math.max(0, offset);
+        int bottom = Math.max(top, offset + viewportHeight);
+        int newFirst = Math.max(0, Math.min(size, top / rowHeight) - overscan);
+        int newEnd = Math.min(size, (bottom + rowHeight - 1) / rowHeight + overscan);
+        if (newEnd <= newFirst) {
+            newEnd = Math.min(size, newFirst + 1);
+        }
+
+        boolean moved = newFirst != first || newEnd != Math.min(end, size);
+        first = newFirst;
+        end = newEnd;
+        return moved;
+    }
+
+    /**
+     * @param   rows
+     *          the whole list.
+     * @return
+     *          the rows in the window (a view of the list, not a copy).
+     */
+    public <T> List<T> slice(List<T> rows) {
+        int size = rows.size();
+        return rows.subList(Math.min(first, size), Math.min(end, size));
+    }
+
+    /**
+     * @param   size
+     *          the number of rows in the list.
+     * @return
+     *          the height of the spacer replacing the rows above the window, in pixels.
+     */
+    public int getTopSpacer(int size) {
+        return Math.min(first, size) * rowHeight;
+    }
+
+    /**
+     * @param   size
+     *          the number of rows in the list.
+     * @return
+     *          the height of the spacer replacing the rows below the window, in pixels.
+     */
+    public int getBottomSpacer(int size) {
+        return Math.max(0, size - Math.max(first, Math.min(end, size))) * rowHeight;
+    }
+}
@@ -0,0 +1,214 @@
+package org.dehydrogenaza.data.utils;
+
+/**
+ * Parses, validates and formats YYYY-MM-DD dates character by character, without creating any intermediate
+ * <code>String</code>s (no <code>substring</code>, no <code>Integer.parseInt</code>).
+ * <p>To avoid allocating a result object, {@link #parse(CharSequence)} returns a single <code>int</code>: the date
+ * in its numeric form, YYYYMMDD (as in {@link TinyDate#asNumber()}), or a negative code standing for the
+ * {@link Problem} with the input. For example:</p>
+ * <pre>
+ * int parsed = DateCodec.parse(input);
+ * if (!DateCodec.isValid(parsed)) {
+ *     log(DateCodec.problemOf(parsed));
+ * }
+ * </pre>
+ */
+public class DateCodec {
+    /**
+     * The length of a YYYY-MM-DD date.
+     */
+    public static final int LENGTH = 10;
+
+    /**
+     * Why an input isn't a valid YYYY-MM-DD date.
+     */
+    public enum Problem {
+        /**
+         * The input is empty.
+         */
+        EMPTY,
+        /**
+         * The input isn't exactly {@link #LENGTH} characters long.
+         */
+        WRONG_LENGTH,
+        /**
+         * A character that should be a digit isn't.
+         */
+        NOT_A_DIGIT,
+        /**
+         * The year, month and day aren't separated by '-'.
+         */
+        MISSING_SEPARATOR,
+        /**
+         * The month isn't between 01 and 12.
+         */
+        INVALID_MONTH,
+        /**
+         * The day is 00, or beyond the end of the month (taking leap years into account).
+         */
+        INVALID_DAY
+    }
+
+    /**
+     * Cached, since {@link Problem#values()} returns a new array every time.
+     */
+    private static final Problem[] PROBLEMS = Problem.values();
+
+    private DateCodec() {
+    }
+
+    /**
+     * Parses and validates a YYYY-MM-DD date.
+     * @param   text
+     *          the input.
+     * @return
+     *          the date as YYYYMMDD, or a negative number if it's malformed (see {@link #problemOf(int)}).
+     */
+    public static int parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses and validates a YYYY-MM-DD date in a part of a longer text, for example a column of a CSV line.
+     * @param   text
+     *          the input.
+     * @param   start
+     *          the index of the first character of the date.
+     * @param   end
+     *          the index after the last character of the date.
+     * @return
+     *          the date as YYYYMMDD, or a negative number if it's malformed (see {@link #problemOf(int)}).
+     */
+    public static int parse(CharSequence text, int start, int end) {
+        if (end == start) {
+            return fail(Problem.EMPTY);
+        }
+        if (end - start != LENGTH) {
+            return fail(Problem.WRONG_LENGTH);
+        }
+        if (text.charAt(start + 4) != '-' || text.charAt(start + 7) != '-') {
+            return fail(Problem.MISSING_SEPARATOR);
+        }
+
+        int year = 0;
+        for (int i = start; i < start + 4; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return fail(Problem.NOT_A_DIGIT);
+            }
+            year = year * 10 + digit;
+        }
+        int month = twoDigits(text, start + 5);
+        int day = twoDigits(text, start + 8);
+        if (month < 0 || day < 0) {
+            return fail(Problem.NOT_A_DIGIT);
+        }
+
+        if (month < 1 || month > 12) {
+            return fail(Problem.INVALID_MONTH);
+        }
+        if (day < 1 || day > lengthOfMonth(year, month)) {
+            return fail(Problem.INVALID_DAY);
+        }
+        return year * 10000 + month * 100 + day;
+    }
+
+    /**
+     * @param   parsed
+     *          a result of {@link #parse(CharSequence)}.
+     * @return
+     *          <code>true</code> if the input was a valid date.
+     */
+    public static boolean isValid(int parsed) {
+        return parsed >= 0;
+    }
+
+    /**
+     * @param   parsed
+     *          a result of {@link #parse(CharSequence)}.
+     * @return
+     *          what was wrong with the input, or <code>null</code> if it was a valid date.
+     */
+    public static Problem problemOf(int parsed) {
+        return parsed >= 0 ? null : PROBLEMS[-parsed - 1];
+    }
+
+    public static int yearOf(int parsed) {
+        return parsed / 10000;
+    }
+
+    public static int monthOf(int parsed) {
+        return parsed / 100 % 100;
+    }
+
+    public static int dayOf(int parsed) {
+        return parsed % 100;
+    }
+
+    /**
+     * Formats a date as YYYY-MM-DD, filling a single <code>char[]</code>. Years outside 0000-9999 can't be
+     * represented in this format, so they're written in full (and won't parse back).
+     * @param   year
+     *          the year.
+     * @param   month
+     *          the month, from 1 to 12.
+     * @param   day
+     *          the day of the month.
+     * @return
+     *          the formatted date.
+     */
+    public static String format(int year, int month, int day) {
+        if (year < 0 || year > 9999) {
+            return year + "-" + (char) ('0' + month / 10) + (char) ('0' + month % 10)
+                    + "-" + (char) ('0' + day / 10) + (char) ('0' + day % 10);
+        }
+        char[] chars = new char[LENGTH];
+        chars[0] = (char) ('0' + year / 1000);
+        chars[1] = (char) ('0' + year / 100 % 10);
+        chars[2] = (char) ('0' + year / 10 % 10);
+        chars[3] = (char) ('0' + year % 10);
+        chars[4] = '-';
+        chars[5] = (char) ('0' + month / 10);
+        chars[6] = (char) ('0' + month % 10);
+        chars[7] = '-';
+        chars[8] = (char) ('0' + day / 10);
+        chars[9] = (char) ('0' + day % 10);
+        return new String(chars);
+    }
+
+    /**
+     * @return
+     *          the number of days in the given month of the (proleptic) Gregorian calendar.
+     */
+    public static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * @return
+     *          the value of two digits, or <code>-1</code> if either isn't a digit.
+     */
+    private static int twoDigits(CharSequence text, int index) {
+        int tens = text.charAt(index) - '0';
+        int ones = text.charAt(index + 1) - '0';
+        if (tens < 0 || tens > 9 || ones < 0 || ones > 9) {
+            return -1;
+        }
+        return tens * 10 + ones;
+    }
+
+    private static int fail(Problem problem) {
+        return -problem.ordinal() - 1;
+    }
+}
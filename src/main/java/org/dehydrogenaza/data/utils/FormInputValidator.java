@@ -0,0 +1,77 @@
+package org.dehydrogenaza.data.utils;
+
+import org.dehydrogenaza.data.Form;
+
+/**
+ * The {@link InputValidator} of a single {@link Form} (see {@link Form#getValidator()}): its lower bound is the child's
+ * date of birth. Mutable, and owned by its Form, so it's never shared between threads.
+ */
+public final class FormInputValidator extends InputValidator {
+    /**
+     * The lower bound as YYYYMMDD: the later of {@link #EARLIEST} and the date of birth. Recomputed only when the
+     * date of birth changes (see {@link #setDateOfBirth(String)}), not on every check.
+     */
+    private int minimum = EARLIEST;
+
+    /**
+     * Incremented whenever the bounds change, so that results of {@link #validateBounds(String)} can be cached
+     * against it (see {@link org.dehydrogenaza.data.Dose#isInBounds()}).
+     */
+    private int version;
+
+    /**
+     * Instrumentation: the number of times {@link #validateBounds(String)} has run.
+     */
+    private int evaluations;
+
+    /**
+     * Constructs a validator with only the fixed bounds. The {@link Form} that owns it passes on every change of the
+     * date of birth.
+     */
+    public FormInputValidator() {
+    }
+
+    /**
+     * Updates the lower bound to a new date of birth. Called by the {@link Form} whenever its date of birth changes.
+     * @param   dateOfBirth
+     *          the child's date of birth as YYYY-MM-DD; if it's empty or malformed, only the fixed bounds apply.
+     */
+    public void setDateOfBirth(String dateOfBirth) {
+        //a malformed date parses to a negative number, which doesn't restrict anything
+        int newMinimum = Math.max(EARLIEST, DateCodec.parse(dateOfBirth));
+        if (newMinimum != minimum) {
+            minimum = newMinimum;
+            version++;
+        }
+    }
+
+    @Override
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Instrumentation, to check how many rows are actually re-evaluated on a render: counts every call of
+     * {@link #validateBounds(String)} made through this validator.
+     * @return
+     *          the number of evaluations so far.
+     */
+    public int getEvaluationCount() {
+        return evaluations;
+    }
+
+    /**
+     * Checks if the inputted date falls within supported range (see {@link InputValidator#validateBounds(String)}),
+     * and no earlier than the date of birth (see {@link #setDateOfBirth(String)}). Both bounds are precomputed.
+     * @param   date
+     *          a date tested if it falls within accepted range, as YYYY-MM-DD.
+     * @return
+     *          <code>true</code> if the date is no later than 3000-12-31 AND no earlier than the date of birth or
+     *          1900-01-01 (whichever comes later); <code>false</code> otherwise.
+     */
+    @Override
+    public boolean validateBounds(String date) {
+        evaluations++;
+        return isBetween(date, minimum);
+    }
+}
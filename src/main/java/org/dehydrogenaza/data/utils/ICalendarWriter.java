@@ -0,0 +1,297 @@
+package org.dehydrogenaza.data.utils;
+
+import org.dehydrogenaza.Client;
+import org.dehydrogenaza.data.Dose;
+import org.dehydrogenaza.data.ScheduleForDay;
+import org.dehydrogenaza.data.VaccinationCalendar;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Utility class which provides an iCalendar (RFC 5545, <code>.ics</code>) export capability, so that users can import
+ * their schedules into the calendar apps of their phones.
+ * <p>Each {@link ScheduleForDay} becomes a single all-day VEVENT, listing its doses. Its UID is derived from the
+ * {@link Dose} that comes first on that day (the lowest vaccine ID, then the lowest dose index), together with an ID of
+ * the whole calendar (for example, {@link VaccinationCalendar#getCalendarID()}, or a registry ID). Since every dose is
+ * on exactly one day, the UIDs of a calendar are unique; and since they don't depend on the date, importing the
+ * calendar again after a day was moved updates the existing event instead of adding another one.</p>
+ * <p>As with the {@link CSVWriter}, the text is streamed to any {@link Appendable} in a single pass: every character is
+ * escaped and counted as it's written, and content lines are folded as they reach 75 octets (of UTF-8), so no line is
+ * ever held in memory.</p>
+ */
+public class ICalendarWriter {
+    /**
+     * Common beginning of all URI strings encoding iCalendar files.
+     */
+    private static final String URI_SCHEME = "data:text/calendar;charset=utf-8,";
+    private static final String PRODUCT_ID = "-//dehydrogenaza//Kalendarz szczepien//PL";
+    /**
+     * The right-hand side of every UID, after the ID of the calendar.
+     */
+    private static final String UID_DOMAIN = "@vaccines.dehydrogenaza.org";
+    private static final String SUMMARY = "Szczepienie: ";
+    /**
+     * The longest content line allowed, in octets, not counting the line break.
+     */
+    private static final int MAX_LINE_OCTETS = 75;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    /**
+     * Generates and returns a URI encoding the schedule as a downloadable iCalendar file. This URI is then supplied
+     * (through the {@link Client#getICalendarExportURI()} method) as the <i>href</i> attribute for the "Export to
+     * calendar" button.
+     * @param   dates
+     *          A list of {@link ScheduleForDay}s, representing the current vaccination schedule (calendar).
+     * @param   calendarID
+     *          identifies the calendar within the UIDs of its events; should be the same every time it's exported.
+     * @param   stampMillis
+     *          the time of the export (see {@link System#currentTimeMillis()}), written as the DTSTAMP of the events.
+     * @return
+     *          An iCalendar file encoded as a URI.
+     */
+    public static String getDataURI(List<ScheduleForDay> dates, String calendarID, long stampMillis) {
+        StringBuilder uri = new StringBuilder(URI_SCHEME);
+        try {
+            write(dates, calendarID, stampMillis, uri, true);
+        } catch (IOException e) {
+            //a StringBuilder never throws
+            throw new IllegalStateException(e);
+        }
+        return uri.toString();
+    }
+
+    /**
+     * Streams a whole iCalendar file (a VCALENDAR with one VEVENT per {@link ScheduleForDay}) to <code>out</code>.
+     * @param   dates
+     *          the {@link ScheduleForDay}s to export, in order.
+     * @param   calendarID
+     *          identifies the calendar within the UIDs of its events.
+     * @param   stampMillis
+     *          the time of the export, written as the DTSTAMP of the events.
+     * @param   out
+     *          the destination.
+     * @param   uriEscaped
+     *          <code>true</code> to escape the text for use in a URI (see {@link #getDataURI(List, String, long)}),
+     *          <code>false</code> to write a plain iCalendar file.
+     * @throws  IOException
+     *          if <code>out</code> fails.
+     */
+    public static void write(Iterable<ScheduleForDay> dates, String calendarID, long stampMillis, Appendable out,
+                             boolean uriEscaped) throws IOException {
+        Lines lines = new Lines(out, uriEscaped);
+        lines.raw("BEGIN:VCALENDAR").end();
+        lines.raw("VERSION:2.0").end();
+        lines.raw("PRODID:").raw(PRODUCT_ID).end();
+        lines.raw("CALSCALE:GREGORIAN").end();
+
+        for (ScheduleForDay date : dates) {
+            Dose first = firstDose(date);
+            if (first == null) {
+                continue;
+            }
+            lines.raw("BEGIN:VEVENT").end();
+            lines.raw("UID:").raw("v").number(first.getType().getId()).raw("-d").number(first.getDoseIndex())
+                    .raw("-").text(calendarID).raw(UID_DOMAIN).end();
+            lines.raw("DTSTAMP:").stamp(stampMillis).end();
+            lines.raw("DTSTART;VALUE=DATE:").number(date.getTinyDate().asNumber()).end();
+
+            lines.raw("SUMMARY:").raw(SUMMARY);
+            boolean separated = false;
+            for (Dose dose : date.getDoses()) {
+                if (separated) {
+                    lines.text(", ");
+                }
+                lines.text(dose.getType().getName());
+                separated = true;
+            }
+            lines.end();
+
+            lines.raw("DESCRIPTION:");
+            separated = false;
+            for (Dose dose : date.getDoses()) {
+                if (separated) {
+                    lines.text("\n");
+                }
+                lines.text(dose.getAltName()).text(" (").text(dose.getType().getDisease()).text(")");
+                separated = true;
+            }
+            lines.end();
+
+            lines.raw("TRANSP:TRANSPARENT").end();
+            lines.raw("END:VEVENT").end();
+        }
+        lines.raw("END:VCALENDAR").end();
+    }
+
+    /**
+     * @return
+     *          the dose with the lowest vaccine ID (and, for the same vaccine, the lowest dose index) on a day; or
+     *          <code>null</code> if the day has no doses.
+     */
+    private static Dose firstDose(ScheduleForDay date) {
+        Dose first = null;
+        for (Dose dose : date.getDoses()) {
+            if (first == null
+                    || dose.getType().getId() < first.getType().getId()
+                    || dose.getType().getId() == first.getType().getId()
+                    && dose.getDoseIndex() < first.getDoseIndex()) {
+                first = dose;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Writes content lines, folding them (a line break followed by a single space) before they grow longer than
+     * {@link #MAX_LINE_OCTETS}. A character is never split across a fold, not even a surrogate pair.
+     */
+    private static final class Lines {
+        private final Appendable out;
+        private final boolean uriEscaped;
+        /**
+         * The number of octets written to the current line so far.
+         */
+        private int octets;
+
+        private Lines(Appendable out, boolean uriEscaped) {
+            this.out = out;
+            this.uriEscaped = uriEscaped;
+        }
+
+        /**
+         * Writes characters that need no escaping in iCalendar: names, parameters and values that are not TEXT.
+         */
+        private Lines raw(String chars) throws IOException {
+            for (int i = 0; i < chars.length(); i++) {
+                put(chars.charAt(i));
+            }
+            return this;
+        }
+
+        /**
+         * Writes a TEXT value, escaping backslashes, semicolons, commas and newlines (RFC 5545, 3.3.11).
+         */
+        private Lines text(String text) throws IOException {
+            for (int i = 0; i < text.length(); i++) {
+                char currentChar = text.charAt(i);
+                switch (currentChar) {
+                    case '\\':
+                    case ';':
+                    case ',':
+                        fold(2);
+                        put('\\');
+                        put(currentChar);
+                        break;
+                    case '\n':
+                        fold(2);
+                        put('\\');
+                        put('n');
+                        break;
+                    case '\r':
+                        break;
+                    default:
+                        put(currentChar);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Writes a non-negative number, without any intermediate String.
+         */
+        private Lines number(int value) throws IOException {
+            int divisor = 1;
+            while (value / divisor >= 10) {
+                divisor *= 10;
+            }
+            for (; divisor > 0; divisor /= 10) {
+                put((char) ('0' + value / divisor % 10));
+            }
+            return this;
+        }
+
+        /**
+         * Writes a UTC date-time, <code>YYYYMMDDTHHMMSSZ</code>.
+         */
+        private Lines stamp(long millis) throws IOException {
+            int epochDay = (int) Math.floorDiv(millis, MILLIS_PER_DAY);
+            int seconds = (int) (Math.floorMod(millis, MILLIS_PER_DAY) / 1000);
+            number(TinyDate.ofEpochDay(epochDay).asNumber());
+            put('T');
+            twoDigits(seconds / 3600);
+            twoDigits(seconds / 60 % 60);
+            twoDigits(seconds % 60);
+            put('Z');
+            return this;
+        }
+
+        private void twoDigits(int value) throws IOException {
+            put((char) ('0' + value / 10));
+            put((char) ('0' + value % 10));
+        }
+
+        /**
+         * Ends the current content line.
+         */
+        private void end() throws IOException {
+            lineBreak();
+            octets = 0;
+        }
+
+        /**
+         * Writes a single character, folding the line first if it wouldn't fit.
+         */
+        private void put(char currentChar) throws IOException {
+            if (!Character.isLowSurrogate(currentChar)) {
+                fold(octetsOf(currentChar));
+            }
+            octets += octetsOf(currentChar);
+            if (uriEscaped) {
+                CSVWriter.appendEscaped(currentChar, out, true);
+            } else {
+                out.append(currentChar);
+            }
+        }
+
+        /**
+         * Folds the line if the next <code>length</code> octets wouldn't fit in it.
+         */
+        private void fold(int length) throws IOException {
+            if (octets + length > MAX_LINE_OCTETS) {
+                lineBreak();
+                if (uriEscaped) {
+                    CSVWriter.appendEscaped(' ', out, true);
+                } else {
+                    out.append(' ');
+                }
+                octets = 1;
+            }
+        }
+
+        private void lineBreak() throws IOException {
+            if (uriEscaped) {
+                CSVWriter.appendEscaped('\n', out, true);
+            } else {
+                out.append("\r\n");
+            }
+        }
+
+        /**
+         * @return
+         *          the length of a character in UTF-8; a surrogate pair takes 4 octets, all counted for its first half.
+         */
+        private static int octetsOf(char currentChar) {
+            if (currentChar < 0x80) {
+                return 1;
+            } else if (currentChar < 0x800) {
+                return 2;
+            } else if (Character.isHighSurrogate(currentChar)) {
+                return 4;
+            } else if (Character.isLowSurrogate(currentChar)) {
+                return 0;
+            }
+            return 3;
+        }
+    }
+}
@@ -2,59 +2,67 @@ package org.dehydrogenaza.data.utils;
 
 import org.dehydrogenaza.data.Form;
 
-// TODO: Restrict the constructor to private, to prevent instantiation.
-
 // TODO: Move format validation from the Form (.validateDates() method) to this class.
 
 /**
- * This is a "static" utility class which determines if a date (taken from user input) is in supported range.
+ * Determines if a date (taken from user input) is in supported range.
+ * <p>An InputValidator itself only knows the fixed bounds, and is immutable: {@link #WITHOUT_FORM} is shared by every
+ * day and dose that isn't (yet) part of a calendar, on any thread. Each {@link Form} has its own
+ * {@link FormInputValidator}, which also knows the child's date of birth, and which is handed to the
+ * {@link org.dehydrogenaza.data.ScheduleForDay}s and {@link org.dehydrogenaza.data.Dose}s of its calendar, so that
+ * calendars of different children (e.g. on different threads) never share validation state.</p>
  */
 public class InputValidator {
     /**
-     * A reference to the input {@link Form}.
+     * A validator that isn't tied to any {@link Form}: only the fixed bounds apply. Used for days and doses that
+     * aren't (yet) part of a calendar.
+     */
+    public static final InputValidator WITHOUT_FORM = new InputValidator();
+
+    /**
+     * The earliest supported date, as YYYYMMDD (see {@link DateCodec#parse(CharSequence)}).
+     */
+    static final int EARLIEST = 19000101;
+    /**
+     * The latest supported date, as YYYYMMDD.
      */
-    private static Form form;
+    static final int LATEST = 30001231;
 
     /**
-     * Registers the input {@link Form}. This is necessary, because InputValidator must know the inputted
-     * <i>dateOfBirth</i> (and potentially other things).
-     * @param   form
-     *          a reference to the input form.
+     * Only {@link #WITHOUT_FORM} and {@link FormInputValidator}s exist.
      */
-    public static void init(Form form) {
-        InputValidator.form = form;
+    InputValidator() {
     }
 
     /**
-     * Checks if the inputted date (provided as a YYYY-MM-DD <code>String</code>) falls within supported range.
-     * <p>The range starts on <i>dateOfBirth</i> (taken from the {@link #form}), but no earlier than 1900-01-01; and
-     * ends on 3000-12-31 (you're welcome, future mankind!).</p>
-     * <p>Note that this method merely checks the <strong>values</strong> and says nothing about the format.</p>
+     * @return
+     *          a number that changes whenever the bounds change; the fixed bounds never do.
+     */
+    public int getVersion() {
+        return 0;
+    }
+
+    /**
+     * Checks if the inputted date (provided as a YYYY-MM-DD <code>String</code>) falls within supported range: no
+     * earlier than 1900-01-01, and no later than 3000-12-31 (you're welcome, future mankind!).
+     * <p>Malformed input (see {@link DateCodec}) is out of bounds.</p>
      * @param   date
-     *          a date tested if it falls within accepted range; assumed to be a valid YYYY-MM-DD <code>String</code>.
+     *          a date tested if it falls within accepted range, as YYYY-MM-DD.
      * @return
-     *          <code>true</code> if the date is no later than 3000-12-31 AND no earlier than the date of birth or
-     *          1900-01-01 (whichever comes later); <code>false</code> otherwise.
+     *          <code>true</code> if the date is within the bounds; <code>false</code> otherwise.
+     */
+    public boolean validateBounds(String date) {
+        return isBetween(date, EARLIEST);
+    }
+
+    /**
+     * Parses only the given date, and compares two ints: it's called for every day and dose on every render.
      */
-    public static boolean validateBounds(String date) {
+    static boolean isBetween(String date, int minimum) {
         if (date.isEmpty()) {
             return true;
         }
-
-        String[] dateMinimums = new String[]{"1900-01-01", form.getDateOfBirth()};
-        String[] dateMaximums = new String[]{"3000-12-31"};
-        int dateAsNumber = TinyDate.of(date).asNumber();
-
-        for (String min : dateMinimums) {
-            if (dateAsNumber < TinyDate.of(min).asNumber()) {
-                return false;
-            }
-        }
-        for (String max : dateMaximums) {
-            if (dateAsNumber > TinyDate.of(max).asNumber()) {
-                return false;
-            }
-        }
-        return true;
+        int dateAsNumber = DateCodec.parse(date);
+        return dateAsNumber >= minimum && dateAsNumber <= LATEST;
     }
 }
@@ -0,0 +1,114 @@
+package org.dehydrogenaza.data.utils;
+
+import org.dehydrogenaza.data.CalendarJournal;
+import org.dehydrogenaza.data.JournalStore;
+import org.teavm.jso.browser.Storage;
+
+/**
+ * A {@link JournalStore} kept in the browser's Web Storage (normally <code>localStorage</code>), for the
+ * {@link CalendarJournal} of the web client.
+ * <p>Every record is a separate item, so appending one writes a few bytes (the record and the new end of the
+ * journal), instead of rewriting the whole journal. The items are named after a common prefix:</p>
+ * <pre>
+ * prefix.snapshot          the sequence number of the first record after the snapshot, ':', the snapshot
+ * prefix.end               the sequence number of the next record
+ * prefix.0, prefix.1, ...  the records, by sequence number
+ * </pre>
+ * <p>Sequence numbers keep growing across snapshots. Since a snapshot item names the first record that follows it,
+ * replacing the snapshot is a single write, and older records are ignored even if removing them is interrupted.</p>
+ */
+public class LocalStorageJournalStore implements JournalStore {
+    private final Storage storage;
+    private final String prefix;
+    /**
+     * The sequence number of the first record after the snapshot.
+     */
+    private int base;
+    /**
+     * The sequence number of the next record.
+     */
+    private int end;
+
+    /**
+     * Constructs the store, reading the position of the records already kept under this prefix.
+     * @param   storage
+     *          the Web Storage to use, for example {@link Storage#getLocalStorage()}.
+     * @param   prefix
+     *          the prefix of the item names.
+     */
+    public LocalStorageJournalStore(Storage storage, String prefix) {
+        this.storage = storage;
+        this.prefix = prefix + ".";
+
+        String snapshot = storage.getItem(snapshotKey());
+        String storedEnd = storage.getItem(endKey());
+        try {
+            base = snapshot == null ? 0 : Integer.parseInt(snapshot.substring(0, snapshot.indexOf(':')));
+            end = storedEnd == null ? base : Math.max(base, Integer.parseInt(storedEnd));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            base = 0;
+            end = 0;
+        }
+    }
+
+    @Override
+    public String readSnapshot() {
+        String snapshot = storage.getItem(snapshotKey());
+        return snapshot == null ? null : snapshot.substring(snapshot.indexOf(':') + 1);
+    }
+
+    @Override
+    public String[] readRecords() {
+        String[] records = new String[end - base];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = storage.getItem(prefix + (base + i));
+            if (records[i] == null) {
+                throw new IllegalArgumentException("Journal record " + (base + i) + " is missing.");
+            }
+        }
+        return records;
+    }
+
+    @Override
+    public int size() {
+        return end - base;
+    }
+
+    @Override
+    public void append(String record) {
+        storage.setItem(prefix + end, record);
+        end++;
+        storage.setItem(endKey(), String.valueOf(end));
+    }
+
+    @Override
+    public void replaceSnapshot(String snapshot) {
+        int oldBase = base;
+        storage.setItem(snapshotKey(), end + ":" + snapshot);
+        base = end;
+        removeRecords(oldBase, end);
+    }
+
+    @Override
+    public void clear() {
+        storage.removeItem(snapshotKey());
+        storage.removeItem(endKey());
+        removeRecords(base, end);
+        base = 0;
+        end = 0;
+    }
+
+    private void removeRecords(int from, int to) {
+        for (int i = from; i < to; i++) {
+            storage.removeItem(prefix + i);
+        }
+    }
+
+    private String snapshotKey() {
+        return prefix + "snapshot";
+    }
+
+    private String endKey() {
+        return prefix + "end";
+    }
+}
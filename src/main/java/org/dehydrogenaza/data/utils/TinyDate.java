@@ -9,91 +9,46 @@ package org.dehydrogenaza.data.utils;
  * want to keep our files small, so we're basically re-inventing the wheel here in order to save ~150 kB of resulting
  * JavaScript.</p>
  */
-public class TinyDate {
+public class TinyDate implements Comparable<TinyDate> {
 
     private final int year;
     private final int month;
     private final int day;
 
     /**
-     * Maps the month to its length in days. <strong>The order (index) is important</strong> (for example, JANUARY at
-     * index 1), because it's used to (also) map the month to its numeric representation. Which is a bit
-     * <emphasis>hacky</emphasis>, but it works for our purposes.
-     */
-    private enum Month {
-        INVALID(0),
-        JANUARY(31),
-        FEBRUARY(28),
-        MARCH(31),
-        APRIL(30),
-        MAY(31),
-        JUNE(30),
-        JULY(31),
-        AUGUST(31),
-        SEPTEMBER(30),
-        OCTOBER(31),
-        NOVEMBER(30),
-        DECEMBER(31);
-
-        Month(final int daysIn) {
-            this.daysInMonth = daysIn;
-        }
-
-        /**
-         * The length of this month, in days, <strong>NOT</strong> accounting for leap years. For internal use.
-         */
-        private final int daysInMonth;
-
-        /**
-         * Gets the length of this month, in days, accounting for <emphasis>leap years</emphasis>.
-         * @param   isLeapYear
-         *          <code>true</code> for a leap (366 day) year, <code>false</code> for a normal (365 day) year.
-         * @return
-         *          the number of days in this month.
-         */
-        private int daysIn(boolean isLeapYear) {
-            if (this == FEBRUARY && isLeapYear) {
-                return daysInMonth + 1;
-            }
-            return daysInMonth;
-        }
-
-        /**
-         * Calculates the number of days from a given day to the end of this month ("0" if it's the last day of the
-         * month, "1" if there's one day left and so on). Accounts for leap years.
-         * @param   currentDay
-         *          the current day of the month.
-         * @param   leapYear
-         *          <code>true</code> for a leap (366 day) year, <code>false</code> for a normal (365 day) year.
-         * @return
-         *          the number of days left until the end of this month.
-         */
-        private int daysLeft(int currentDay, boolean leapYear) {
-            return this.daysIn(leapYear) - currentDay;
-        }
+     * This date as YYYY-MM-DD, cached: either the String it was parsed from, or formatted on the first call to
+     * {@link #toString()}. TinyDates are immutable, so it never goes stale.
+     */
+    private String iso;
 
-    }
+    /**
+     * Number of days between 0000-03-01 and 1970-01-01 in the proleptic Gregorian calendar. Used to shift the
+     * internal, March-based day count (see {@link #toEpochDay()}) so that "day 0" falls on 1970-01-01.
+     */
+    private static final int DAYS_0000_TO_1970 = 719468;
 
     /**
-     * Array of every Month enum field. Index 0 is reserved for "INVALID" months, index 1 is JANUARY etc. This array
-     * is used to reference Months by their index, for example:
-     * <br><code>monthsByValue[2] == Month.FEBRUARY</code>
-     * <br><code>monthsByValue[12] == Month.DECEMBER</code>
+     * Number of days in a full 400-year cycle of the Gregorian calendar ("era").
      */
-    private final static Month[] monthsByValue = Month.values();
+    private static final int DAYS_PER_ERA = 146097;
 
     /**
-     * Constructs a TinyDate from a YYYY-MM-DD <code>String</code>.
-     *
-     * <p>This constructor assumes that input is properly formatted.</p>
+     * Constructs a TinyDate from a YYYY-MM-DD <code>String</code>, parsed by the {@link DateCodec} (without any
+     * intermediate Strings). The String itself is kept as the result of {@link #toString()}.
      * @param   date
      *          Properly formatted YYYY-MM-DD string.
+     * @throws  IllegalArgumentException
+     *          if the input isn't a valid date; the message names the {@link DateCodec.Problem}.
      */
     public TinyDate(String date) {
-        //YYYY-MM-DD
-        this.year = Integer.parseInt(date.substring(0, 4));
-        this.month = Integer.parseInt(date.substring(5, 7));
-        this.day = Integer.parseInt(date.substring(8, 10));
+        int parsed = DateCodec.parse(date);
+        if (!DateCodec.isValid(parsed)) {
+            throw new IllegalArgumentException("Invalid date \"" + date + "\": " + DateCodec.problemOf(parsed));
+        }
+        this.year = DateCodec.yearOf(parsed);
+        this.month = DateCodec.monthOf(parsed);
+        this.day = DateCodec.dayOf(parsed);
+        this.iso = date;
     }
 
     /**
@@ -113,49 +68,99 @@ public class TinyDate {
 
     /**
      * Factory method that returns a TinyDate corresponding to the given String.
-     *
-     * <p>This method assumes that input is properly formatted.</p>
      * @param   date
      *          Properly formatted YYYY-MM-DD string.
      * @return
      *          A TinyDate object constructed from this string.
+     * @throws  IllegalArgumentException
+     *          if the input isn't a valid date.
      */
     public static TinyDate of(String date) {
         return new TinyDate(date);
     }
 
+    /**
+     * Factory method that returns a TinyDate corresponding to the given <i>epoch day</i>, that is the number of days
+     * since 1970-01-01 (which is day "0"). Negative values stand for earlier dates. This is the inverse of
+     * {@link #toEpochDay()}.
+     *
+     * <p>The conversion runs in constant time (no looping over months or years), using the "civil from days"
+     * algorithm which treats March as the first month of the year, so that the leap day always falls at the very end
+     * of a (shifted) year.</p>
+     * @param   epochDay
+     *          the number of days since 1970-01-01.
+     * @return
+     *          a TinyDate representing this day.
+     */
+    public static TinyDate ofEpochDay(int epochDay) {
+        int shifted = epochDay + DAYS_0000_TO_1970;
+        int era = (shifted >= 0 ? shifted : shifted - (DAYS_PER_ERA - 1)) / DAYS_PER_ERA;
+        int dayOfEra = shifted - era * DAYS_PER_ERA;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        //months counted from March (0) to February (11)
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+
+        int d = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int m = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        int y = yearOfEra + era * 400 + (m <= 2 ? 1 : 0);
+
+        return new TinyDate(y, m, d);
+    }
+
+    /**
+     * Returns this date as an <i>epoch day</i>, that is the number of days since 1970-01-01 (which is day "0").
+     * Unlike {@link #asNumber()}, consecutive days always differ by exactly 1, so epoch days can be used for
+     * date arithmetic. This is the inverse of {@link #ofEpochDay(int)} and runs in constant time.
+     * @return
+     *          the number of days between 1970-01-01 and this date (negative for earlier dates).
+     */
+    public int toEpochDay() {
+        //January and February are counted as the last months of the previous year
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int shiftedMonth = month > 2 ? month - 3 : month + 9;
+        int dayOfYear = (153 * shiftedMonth + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * DAYS_PER_ERA + dayOfEra - DAYS_0000_TO_1970;
+    }
+
     /**
      * Returns a new TinyDate that represents a date that's some <code>offset</code> days after this date
-     * (represented by this TinyDate object).
+     * (represented by this TinyDate object). Runs in constant time, regardless of the offset, by going through
+     * the {@link #toEpochDay() epoch day} representation.
      * @param   offset
-     *          the number of days to add to this date.
+     *          the number of days to add to this date; may be negative.
      * @return
      *          the new TinyDate, <code>offset</code> days later.
      */
     public TinyDate addDays(int offset) {
-        int y = year;
-        int m = month;
-        int d = day;
-
-        int daysLeft = monthsByValue[m].daysLeft(d, isLeapYear(y));
-
-        //add days month after month
-        while (offset > daysLeft) {
-            offset -= daysLeft;
-            d = 0;
-
-            if (m == 12) {
-                m = 1;
-                y++;
-            } else {
-                m++;
-            }
+        return ofEpochDay(toEpochDay() + offset);
+    }
 
-            daysLeft = monthsByValue[m].daysLeft(d, isLeapYear(y));
-        }
-        d += offset;
+    /**
+     * Calculates the number of days from <b>this</b> TinyDate to <b>otherDate</b>.
+     * @param   otherDate
+     *          the end date.
+     * @return
+     *          the number of days between the two dates; positive if <code>otherDate</code> comes later, negative
+     *          if it comes earlier, and "0" for the same day.
+     */
+    public int daysBetween(TinyDate otherDate) {
+        return otherDate.toEpochDay() - this.toEpochDay();
+    }
 
-        return new TinyDate(y, m, d);
+    /**
+     * Checks if <b>this</b> TinyDate comes strictly before <b>otherDate</b>.
+     * @param   otherDate
+     *          The date to compare against.
+     * @return
+     *          <code>true</code> if this date is strictly earlier than otherDate, <code>false</code> otherwise.
+     */
+    public boolean before(TinyDate otherDate) {
+        return this.asNumber() < otherDate.asNumber();
     }
 
     /**
@@ -192,45 +197,29 @@ public class TinyDate {
 
     /**
      * Returns this date as a YYYY-MM-DD String. The result will be properly formatted, with the month and day always
-     * taking two characters (i.e. "01" instead of "1" for January), except for the year, which is assumed to be >=
-     * 1000 naturally.
+     * taking two characters (i.e. "01" instead of "1" for January), and the year four. Formatted only once (see
+     * {@link #iso}), so it's cheap to call repeatedly, for example on every render of the UI.
      * @return
      *          the <code>String</code> representation of this date.
      */
     @Override
     public String toString() {
-        //this wouldn't work for Mieszko I
-        return year + "-" + fixLength(month) + "-" + fixLength(day);
-    }
-
-    /**
-     * Helper method to determine if the given year is a leap (366 day) year.
-     * @param   year
-     *          the year in question.
-     * @return
-     *          <code>true</code> for a leap (366 day) year, <code>false</code> for a normal (365 day) year.
-     */
-    private boolean isLeapYear(int year) {
-        //leap year = divisible by 4
-        //except NOT a leap year if also divisible by 100
-        //UNLESS also divisible by 400
-        //for example: 2000 is a leap year, 1900 is not
-        return (year % 4 == 0) && ((year % 400 == 0) || (year % 100 != 0));
+        if (iso == null) {
+            iso = DateCodec.format(year, month, day);
+        }
+        return iso;
     }
 
     /**
-     * Helper method to add a leading "0" to a single-digit day/month, for example turning January "1" to "01". Used
-     * to represent days/months as proper MM-DD <code>String</code>s.
-     * @param dateFragment
-     *          either day or month to convert.
+     * Compares two dates chronologically.
+     * @param   otherDate
+     *          The date to compare against.
      * @return
-     *          the day/month as a DD/MM <code>String</code>.
+     *          a negative number if this date comes earlier, a positive number if it comes later, "0" for the same day.
      */
-    private String fixLength(int dateFragment) {
-        if (dateFragment < 10) {
-            return "0" + dateFragment;
-        }
-        return "" + dateFragment;
+    @Override
+    public int compareTo(TinyDate otherDate) {
+        return this.asNumber() - otherDate.asNumber();
     }
 
     @Override
@@ -0,0 +1,115 @@
+package org.dehydrogenaza.server;
+
+import org.dehydrogenaza.data.Dose;
+import org.dehydrogenaza.data.ScheduleForDay;
+
+import java.io.IOException;
+
+/**
+ * Streams a schedule as JSON to any {@link Appendable}, in a single pass (like the
+ * {@link org.dehydrogenaza.data.utils.CSVWriter}). Hand-written rather than using a JSON library, since the format
+ * is tiny and fixed:
+ * <pre>
+ * {"dates":[{"date":"2021-05-14","doses":[{"name":"DTPw","vaccine":"DTP","disease":"..."}, ...]}, ...]}
+ * </pre>
+ * <p>where <i>name</i> is the display name of the dose (see {@link Dose#getAltName()}) and <i>vaccine</i> the name of
+ * its vaccine.</p>
+ */
+public class CalendarJsonWriter {
+
+    private CalendarJsonWriter() {
+    }
+
+    /**
+     * Streams the whole JSON document.
+     * @param   dates
+     *          the {@link ScheduleForDay}s to export, in order.
+     * @param   out
+     *          the destination.
+     * @throws  IOException
+     *          if <code>out</code> fails.
+     */
+    public static void write(Iterable<ScheduleForDay> dates, Appendable out) throws IOException {
+        out.append("{\"dates\":[");
+        boolean firstDate = true;
+        for (ScheduleForDay date : dates) {
+            if (!firstDate) {
+                out.append(',');
+            }
+            firstDate = false;
+
+            out.append("{\"date\":");
+            appendString(date.getDate(), out);
+            out.append(",\"doses\":[");
+            boolean firstDose = true;
+            for (Dose dose : date.getDoses()) {
+                if (!firstDose) {
+                    out.append(',');
+                }
+                firstDose = false;
+
+                out.append("{\"name\":");
+                appendString(dose.getAltName(), out);
+                out.append(",\"vaccine\":");
+                appendString(dose.getType().getName(), out);
+                out.append(",\"disease\":");
+                appendString(dose.getType().getDisease(), out);
+                out.append('}');
+            }
+            out.append("]}");
+        }
+        out.append("]}");
+    }
+
+    /**
+     * Writes a JSON error document: <code>{"error":"..."}</code>.
+     * @param   message
+     *          the error message.
+     * @param   out
+     *          the destination.
+     * @throws  IOException
+     *          if <code>out</code> fails.
+     */
+    public static void writeError(String message, Appendable out) throws IOException {
+        out.append("{\"error\":");
+        appendString(message, out);
+        out.append('}');
+    }
+
+    /**
+     * Writes a quoted JSON string, escaping quotes, backslashes and control characters. Everything else (including
+     * Polish letters) is written as-is, since the response is UTF-8.
+     */
+    private static void appendString(String text, Appendable out) throws IOException {
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append("\\u00");
+                        out.append(Character.forDigit(c >> 4, 16));
+                        out.append(Character.forDigit(c & 0xF, 16));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,94 @@
+package org.dehydrogenaza.server;
+
+import org.dehydrogenaza.data.*;
+import org.dehydrogenaza.data.datasources.IVaccineSource;
+import org.dehydrogenaza.data.utils.DisplayState;
+
+/**
+ * Computes {@link VaccinationCalendar}s on the server (JVM-only, never transpiled to JS), through the same
+ * {@link Form} path as the web client.
+ * <p>Every call builds its own {@link DataProvider} and {@link Form}; the only thing shared between calls (and
+ * threads) are the immutable {@link VaccineCatalog}s. That makes the service safe to call from any number of threads
+ * at once, without locking.</p>
+ */
+public class CalendarService {
+
+    private CalendarService() {
+    }
+
+    /**
+     * Computes a calendar.
+     * @param   dateOfBirth
+     *          child's birthdate as YYYY-MM-DD.
+     * @param   dateOfFirstVaccination
+     *          chosen date of the first vaccination as YYYY-MM-DD, or <code>null</code> to use the date of birth.
+     * @param   schemeID
+     *          the ID of the {@link VaccinationScheme} (see {@link IVaccineSource#forScheme(String)}).
+     * @param   vaccines
+     *          names of the selected vaccines (see {@link VaccineType#getName()}), or <code>null</code> to use the
+     *          scheme's default selection. They're selected in catalog order, so if two of them exclude each other,
+     *          the latter one wins.
+     * @return
+     *          a new calendar, owned by the caller.
+     * @throws  IllegalArgumentException
+     *          if the dates are missing or invalid, if there's no scheme with the given ID, or if a vaccine isn't
+     *          part of the scheme.
+     */
+    public static VaccinationCalendar compute(String dateOfBirth, String dateOfFirstVaccination, String schemeID,
+                                              String[] vaccines) {
+        if (dateOfBirth == null || dateOfBirth.isEmpty()) {
+            throw new IllegalArgumentException("Missing date of birth.");
+        }
+
+        DataProvider dataProvider = new DataProvider(schemeID == null ? "1" : schemeID);
+        Form form = new Form(dataProvider);
+        form.setLicenseAccepted(true);
+        form.setDateOfBirth(dateOfBirth);
+        if (dateOfFirstVaccination != null && !dateOfFirstVaccination.isEmpty()) {
+            form.setDateOfFirstVaccination(dateOfFirstVaccination);
+        }
+        if (form.submit() != DisplayState.CALENDAR) {
+            throw new IllegalArgumentException("Invalid dates: expected YYYY-MM-DD, with the first vaccination "
+                    + "no earlier than the date of birth.");
+        }
+
+        if (vaccines != null) {
+            select(dataProvider, vaccines);
+        }
+        dataProvider.applyFormDataHandlers(form);
+
+        return new VaccinationCalendar(form);
+    }
+
+    /**
+     * Replaces the default selection with the given vaccines.
+     */
+    private static void select(DataProvider dataProvider, String[] vaccines) {
+        for (String name : vaccines) {
+            if (!isInCatalog(dataProvider.getCatalog(), name)) {
+                throw new IllegalArgumentException("Unknown vaccine: " + name);
+            }
+        }
+        for (VaccineChoice vax : dataProvider.getVaccines()) {
+            vax.setSelected(contains(vaccines, vax.getName()));
+        }
+    }
+
+    private static boolean isInCatalog(VaccineCatalog catalog, String name) {
+        for (VaccineType type : catalog.getVaccines()) {
+            if (type.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(String[] names, String name) {
+        for (String n : names) {
+            if (n.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
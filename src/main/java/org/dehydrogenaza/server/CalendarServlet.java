@@ -0,0 +1,100 @@
+package org.dehydrogenaza.server;
+
+import org.dehydrogenaza.data.VaccinationCalendar;
+import org.dehydrogenaza.data.utils.CSVWriter;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * HTTP endpoint that computes a vaccination calendar (mapped in <code>web.xml</code>). Accepts GET and POST with the
+ * following parameters:
+ * <ul>
+ *     <li><b>dob</b> (required): child's birthdate as YYYY-MM-DD,</li>
+ *     <li><b>first</b>: date of the first vaccination as YYYY-MM-DD; defaults to <i>dob</i>,</li>
+ *     <li><b>scheme</b>: the ID of the vaccination scheme; defaults to "1",</li>
+ *     <li><b>vaccines</b>: comma-separated names of the selected vaccines; defaults to the scheme's selection,</li>
+ *     <li><b>format</b>: <i>json</i> (default) or <i>csv</i> (the same file as the web client's export).</li>
+ * </ul>
+ * <p>Invalid input is answered with 400 and a JSON error. The servlet has no fields: every request is computed from
+ * scratch by the {@link CalendarService}, so concurrent requests never share mutable state.</p>
+ */
+public class CalendarServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+    private static final String JSON_CONTENT_TYPE = "application/json";
+    private static final String CSV_CONTENT_TYPE = "text/csv";
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        handle(request, response);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        handle(request, response);
+    }
+
+    private void handle(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+
+        String format = request.getParameter("format");
+        boolean csv = "csv".equals(format);
+        if (format != null && !csv && !"json".equals(format)) {
+            writeError(response, "Unknown format: " + format);
+            return;
+        }
+
+        VaccinationCalendar calendar;
+        try {
+            calendar = CalendarService.compute(
+                    request.getParameter("dob"),
+                    request.getParameter("first"),
+                    request.getParameter("scheme"),
+                    splitVaccines(request.getParameter("vaccines")));
+        } catch (IllegalArgumentException e) {
+            writeError(response, e.getMessage());
+            return;
+        }
+
+        if (csv) {
+            response.setContentType(CSV_CONTENT_TYPE);
+            response.setHeader("Content-Disposition", "attachment; filename=\"kalendarz.csv\"");
+            CSVWriter.write(calendar.get(), response.getWriter(), false);
+        } else {
+            response.setContentType(JSON_CONTENT_TYPE);
+            CalendarJsonWriter.write(calendar.get(), response.getWriter());
+        }
+        response.getWriter().flush();
+    }
+
+    /**
+     * Splits the <i>vaccines</i> parameter on commas.
+     * @return
+     *          the trimmed names, or <code>null</code> if the parameter is missing.
+     */
+    private static String[] splitVaccines(String vaccines) {
+        if (vaccines == null) {
+            return null;
+        }
+        if (vaccines.trim().isEmpty()) {
+            return new String[0];
+        }
+        String[] names = vaccines.split(",");
+        for (int i = 0; i < names.length; i++) {
+            names[i] = names[i].trim();
+        }
+        return names;
+    }
+
+    private static void writeError(HttpServletResponse response, String message) throws IOException {
+        response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        response.setContentType(JSON_CONTENT_TYPE);
+        PrintWriter out = response.getWriter();
+        CalendarJsonWriter.writeError(message, out);
+        out.flush();
+    }
+}
@@ -0,0 +1,176 @@
+package org.dehydrogenaza.server;
+
+import org.dehydrogenaza.data.CalendarJournal;
+import org.dehydrogenaza.data.JournalStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A {@link JournalStore} kept in files, for a {@link CalendarJournal} on the server (JVM-only): the snapshot in
+ * <i>name</i><code>.snapshot</code>, and the records, one per line, in <i>name</i><code>.</code><i>generation</i>
+ * <code>.journal</code>.
+ * <p>Appending a record appends a single line. Each snapshot starts a new generation: its file names the generation
+ * whose journal follows it, and is written to a temporary file first and then moved into place. Replacing the
+ * snapshot is therefore a single atomic step, after which the records of the previous generation are ignored (and
+ * deleted).</p>
+ * <p>Generations only grow while a store is open. A journal file left behind (say, by a crash between replacing the
+ * snapshot and deleting the old records) is never picked up by a later snapshot: clearing the store deletes the
+ * records of every generation, and a new snapshot deletes any records of its generation before it's moved into
+ * place.</p>
+ * <p>Not thread-safe: a journal belongs to a single calendar, and should be used by one request at a time.</p>
+ */
+public class FileJournalStore implements JournalStore {
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    private final Path directory;
+    private final String name;
+    private final Path snapshotFile;
+    /**
+     * The generation of the current snapshot, which names the journal file.
+     */
+    private long generation;
+    /**
+     * The number of lines in the current journal file.
+     */
+    private int size;
+
+    /**
+     * Opens the store, counting the records already in the current journal file.
+     * @param   directory
+     *          the directory holding the files.
+     * @param   name
+     *          the common name of the files, for example the ID of the calendar.
+     * @throws  UncheckedIOException
+     *          if the existing files can't be read.
+     */
+    public FileJournalStore(Path directory, String name) {
+        this.directory = directory;
+        this.name = name;
+        this.snapshotFile = directory.resolve(name + ".snapshot");
+
+        String snapshot = readSnapshotFile();
+        if (snapshot != null) {
+            try {
+                generation = Long.parseLong(snapshot.substring(0, snapshot.indexOf('\n')));
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                generation = 0;
+            }
+        }
+        this.size = readRecords().length;
+    }
+
+    @Override
+    public String readSnapshot() {
+        String snapshot = readSnapshotFile();
+        return snapshot == null ? null : snapshot.substring(snapshot.indexOf('\n') + 1);
+    }
+
+    @Override
+    public String[] readRecords() {
+        try {
+            Path journalFile = journalFile(generation);
+            if (!Files.exists(journalFile)) {
+                return new String[0];
+            }
+            List<String> lines = Files.readAllLines(journalFile, StandardCharsets.US_ASCII);
+            return lines.toArray(new String[0]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void append(String record) {
+        try {
+            Files.write(journalFile(generation), (record + "\n").getBytes(StandardCharsets.US_ASCII),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            size++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void replaceSnapshot(String snapshot) {
+        try {
+            long next = generation + 1;
+            Files.deleteIfExists(journalFile(next));
+            Path temporary = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            Files.write(temporary, (next + "\n" + snapshot).getBytes(StandardCharsets.US_ASCII));
+            Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            Files.deleteIfExists(journalFile(generation));
+            generation = next;
+            size = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Deletes the snapshot and the records of every generation, not only the current one. The generation itself
+     * keeps growing, so the next snapshot starts a generation this store never used.
+     */
+    @Override
+    public void clear() {
+        try {
+            Files.deleteIfExists(snapshotFile);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    if (isJournalFile(file.getFileName().toString())) {
+                        Files.delete(file);
+                    }
+                }
+            }
+            size = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path journalFile(long generation) {
+        return directory.resolve(name + "." + generation + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * @return
+     *          <code>true</code> if the file name is <i>name</i><code>.</code><i>generation</i><code>.journal</code>,
+     *          for any generation.
+     */
+    private boolean isJournalFile(String fileName) {
+        int from = name.length() + 1;
+        int to = fileName.length() - JOURNAL_SUFFIX.length();
+        if (to <= from || !fileName.startsWith(name + ".") || !fileName.endsWith(JOURNAL_SUFFIX)) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (fileName.charAt(i) < '0' || fileName.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readSnapshotFile() {
+        try {
+            return Files.exists(snapshotFile)
+                    ? new String(Files.readAllBytes(snapshotFile), StandardCharsets.US_ASCII)
+                    : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
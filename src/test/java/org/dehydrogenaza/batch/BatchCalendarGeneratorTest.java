@@ -0,0 +1,132 @@
+package org.dehydrogenaza.batch;
+
+import org.dehydrogenaza.data.DataProvider;
+import org.dehydrogenaza.data.VaccineType;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Stress test of the {@link BatchCalendarGenerator}: the output of many worker threads must be identical to the
+ * output of a single one.
+ */
+class BatchCalendarGeneratorTest {
+    private static final int ROWS = 20_000;
+
+    private static String input;
+
+    @BeforeAll
+    static void generateInput() {
+        input = randomExtract(new Random(42), ROWS);
+    }
+
+    @Test
+    void parallelOutputMatchesSequential() throws IOException {
+        StringWriter sequential = new StringWriter();
+        BatchStats sequentialStats = run(1, sequential);
+
+        for (int threads : new int[]{2, 4, 8}) {
+            StringWriter parallel = new StringWriter();
+            BatchStats parallelStats = run(threads, parallel);
+
+            assertEquals(sequential.toString(), parallel.toString(), threads + " threads");
+            assertEquals(sequentialStats.getRows(), parallelStats.getRows());
+            assertEquals(sequentialStats.getRejectedRows(), parallelStats.getRejectedRows());
+            assertEquals(sequentialStats.getDoses(), parallelStats.getDoses());
+        }
+    }
+
+    @Test
+    void invalidRowsAreRejected() throws IOException {
+        StringWriter output = new StringWriter();
+        BatchCalendarGenerator generator = new BatchCalendarGenerator(2, 16);
+        try {
+            BatchStats stats = generator.run(new StringReader(
+                    "2021-05-14,2021-05-15,1,BCG\n"
+                            + "not a row\n"
+                            + "2021-05-14,2021-02-30,1,BCG\n"
+                            + "2021-05-14,2021-05-01,1,BCG\n"
+                            + "2021-05-14,2021-05-15,7,BCG\n"), output);
+            assertEquals(5, stats.getRows());
+            assertEquals(4, stats.getRejectedRows());
+            assertEquals("1,2021-05-15,BCG\n", output.toString());
+        } finally {
+            generator.shutdown();
+        }
+    }
+
+    @Test
+    void rowsAreNumberedByLine() throws IOException {
+        StringWriter output = new StringWriter();
+        //blocks of two rows, so that the numbering carries over from one block to the next
+        BatchCalendarGenerator generator = new BatchCalendarGenerator(2, 2);
+        try {
+            BatchStats stats = generator.run(new StringReader(
+                    "2021-05-14,2021-05-15,1,BCG\n"
+                            + "\n"
+                            + "\n"
+                            + "2021-05-14,2021-05-16,1,BCG\n"
+                            + "not a row\n"
+                            + "\n"
+                            + "2021-05-14,2021-05-17,1,BCG\n"), output);
+            assertEquals(4, stats.getRows());
+            assertEquals(1, stats.getRejectedRows());
+            assertEquals("1,2021-05-15,BCG\n4,2021-05-16,BCG\n7,2021-05-17,BCG\n", output.toString());
+        } finally {
+            generator.shutdown();
+        }
+    }
+
+    /**
+     * Runs the generator with a block size small enough to make it read, compute and write many blocks.
+     */
+    private static BatchStats run(int threads, StringWriter output) throws IOException {
+        BatchCalendarGenerator generator = new BatchCalendarGenerator(threads, 3_000);
+        try {
+            return generator.run(new StringReader(input), output);
+        } finally {
+            generator.shutdown();
+        }
+    }
+
+    /**
+     * @return
+     *          an extract of children of both schemes, with random dates and selections, and a few invalid rows.
+     */
+    static String randomExtract(Random random, int rows) {
+        StringBuilder extract = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            String scheme = random.nextInt(4) == 0 ? "0" : "1";
+            int year = 2000 + random.nextInt(25);
+            int month = 1 + random.nextInt(12);
+            int day = 1 + random.nextInt(28);
+            String dateOfBirth = String.format("%d-%02d-%02d", year, month, day);
+            String firstVaccination = String.format("%d-%02d-%02d", year, month, Math.min(28, day + random.nextInt(5)));
+            if (random.nextInt(100) == 0) {
+                firstVaccination = String.format("%d-%02d-%02d", year - 1, month, day);
+            }
+
+            extract.append(dateOfBirth).append(',').append(firstVaccination).append(',').append(scheme).append(',');
+            List<VaccineType> vaccines = new DataProvider(scheme).getCatalog().getVaccines();
+            boolean first = true;
+            for (VaccineType vaccine : vaccines) {
+                if (random.nextBoolean()) {
+                    if (!first) {
+                        extract.append(';');
+                    }
+                    extract.append(vaccine.getName());
+                    first = false;
+                }
+            }
+            extract.append('\n');
+        }
+        return extract.toString();
+    }
+}
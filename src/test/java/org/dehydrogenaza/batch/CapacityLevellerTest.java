@@ -0,0 +1,173 @@
+package org.dehydrogenaza.batch;
+
+import org.dehydrogenaza.data.DataProvider;
+import org.dehydrogenaza.data.Dose;
+import org.dehydrogenaza.data.ScheduleForDay;
+import org.dehydrogenaza.data.TestForms;
+import org.dehydrogenaza.data.VaccinationCalendar;
+import org.dehydrogenaza.data.VaccineCatalog;
+import org.dehydrogenaza.data.VaccineType;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the days chosen by the {@link CapacityLeveller}, and the calendars it leaves behind.
+ */
+class CapacityLevellerTest {
+    /**
+     * A two-dose series, 28 days apart, with no tolerance of its own (so the leveller's default applies).
+     */
+    private static final int SERIES = 0;
+    /**
+     * A single dose that must be given on its day.
+     */
+    private static final int STRICT = 1;
+    private static final int SPACING = 28;
+    private static final int DAYS_LATER = 30;
+
+    private static final VaccineCatalog CATALOG = buildCatalog();
+
+    @Test
+    void capacityIsRespected() {
+        int children = 20;
+        int capacity = 4;
+        CapacityLeveller leveller = new CapacityLeveller(0, DAYS_LATER, capacity);
+        int[] birthDay = new int[children];
+        for (int p = 0; p < children; p++) {
+            VaccinationCalendar calendar = newCalendar(SERIES);
+            birthDay[p] = calendar.get().get(0).getEpochDay();
+            leveller.addPatient("clinic", calendar);
+        }
+        LevellingStats stats = leveller.level();
+
+        assertEquals(children, stats.getPeakBefore());
+        assertEquals(capacity, stats.getPeakAfter());
+        assertEquals(0, stats.getDaysOverCapacityAfter());
+        Map<Integer, Integer> load = new HashMap<>();
+        for (int p = 0; p < children; p++) {
+            int first = leveller.getAssignedDay(p, 0);
+            int second = leveller.getAssignedDay(p, 1);
+            assertTrue(first >= birthDay[p] && first <= birthDay[p] + DAYS_LATER, "first dose out of its window");
+            assertTrue(second - first >= SPACING, "series spacing shortened: " + (second - first));
+            load.merge(first, 1, Integer::sum);
+            load.merge(second, 1, Integer::sum);
+        }
+        for (int visitsThatDay : load.values()) {
+            assertTrue(visitsThatDay <= capacity);
+        }
+    }
+
+    @Test
+    void visitsOnTheirLatestDayExceedCapacity() {
+        int capacity = 2;
+        CapacityLeveller leveller = new CapacityLeveller(0, DAYS_LATER, capacity);
+        int day = 0;
+        for (int p = 0; p < 5; p++) {
+            VaccinationCalendar calendar = newCalendar(STRICT);
+            day = calendar.get().get(0).getEpochDay();
+            leveller.addPatient("clinic", calendar);
+        }
+        for (int p = 5; p < 10; p++) {
+            leveller.addPatient("clinic", newCalendar(SERIES));
+        }
+        LevellingStats stats = leveller.level();
+
+        //the strict visits can't move, so they all stay, and the flexible ones make way
+        Map<Integer, Integer> load = new HashMap<>();
+        for (int p = 0; p < 10; p++) {
+            load.merge(leveller.getAssignedDay(p, 0), 1, Integer::sum);
+        }
+        for (int p = 0; p < 5; p++) {
+            assertEquals(day, leveller.getAssignedDay(p, 0));
+        }
+        assertEquals(5, load.get(day));
+        for (Map.Entry<Integer, Integer> visitsThatDay : load.entrySet()) {
+            if (visitsThatDay.getKey() != day) {
+                assertTrue(visitsThatDay.getValue() <= capacity);
+            }
+        }
+        assertEquals(1, stats.getDaysOverCapacityAfter());
+
+        //a separate clinic isn't affected
+        CapacityLeveller other = new CapacityLeveller(0, DAYS_LATER, capacity);
+        other.setCapacity("large", 10);
+        for (int p = 0; p < 5; p++) {
+            other.addPatient("large", newCalendar(STRICT));
+        }
+        assertEquals(0, other.level().getDaysOverCapacityAfter());
+    }
+
+    @Test
+    void postponedDosesPostponeTheirSeries() {
+        //capacity 1: the last child's first dose waits 9 days, and the second must keep the spacing anyway
+        CapacityLeveller leveller = new CapacityLeveller(0, DAYS_LATER, 1);
+        for (int p = 0; p < 10; p++) {
+            leveller.addPatient("clinic", newCalendar(SERIES));
+        }
+        leveller.level();
+        int latestFirst = Integer.MIN_VALUE;
+        for (int p = 0; p < 10; p++) {
+            int first = leveller.getAssignedDay(p, 0);
+            latestFirst = Math.max(latestFirst, first);
+            assertTrue(leveller.getAssignedDay(p, 1) - first >= SPACING);
+        }
+        assertEquals(newCalendar(SERIES).get().get(0).getEpochDay() + 9, latestFirst);
+    }
+
+    @Test
+    void applyMovesEveryDose() {
+        int children = 30;
+        VaccinationCalendar[] calendars = new VaccinationCalendar[children];
+        int[] visits = new int[children];
+        CapacityLeveller leveller = new CapacityLeveller(0, 14, 3);
+        for (int p = 0; p < children; p++) {
+            calendars[p] = new VaccinationCalendar(TestForms.submitted("1", "2021-05-14"));
+            visits[p] = calendars[p].get().size();
+            assertEquals(p, leveller.addPatient("clinic", calendars[p]));
+        }
+        assertTrue(leveller.level().getMovedVisits() > 0);
+        leveller.apply();
+
+        for (int p = 0; p < children; p++) {
+            List<ScheduleForDay> dates = calendars[p].get();
+            assertEquals(visits[p], dates.size());
+            for (int i = 0; i < dates.size(); i++) {
+                ScheduleForDay date = dates.get(i);
+                assertEquals(leveller.getAssignedDay(p, i), date.getEpochDay());
+                for (Dose dose : date.getDoses()) {
+                    assertEquals(date.getEpochDay(), dose.getDate().toEpochDay(), dose.getAltName());
+                    assertEquals(date.getDate(), dose.getTempDate());
+                    assertFalse(dose.isSetToNew());
+                    assertSame(date, calendars[p].getDateOf(dose));
+                }
+            }
+        }
+    }
+
+    private static VaccinationCalendar newCalendar(int vaccine) {
+        DataProvider dataProvider = new DataProvider(() -> CATALOG);
+        for (int v = 0; v < CATALOG.size(); v++) {
+            dataProvider.setSelected(v, v == vaccine);
+        }
+        return new VaccinationCalendar(TestForms.submitted(dataProvider, "2021-05-14"));
+    }
+
+    private static VaccineCatalog buildCatalog() {
+        VaccineCatalog.Builder catalog = new VaccineCatalog.Builder();
+        assertEquals(SERIES, catalog.add(new VaccineType.Builder(catalog)
+                .withDateOffsets(0, SPACING)
+                .create("series", true)));
+        assertEquals(STRICT, catalog.add(new VaccineType.Builder(catalog)
+                .withTolerance(0, 0)
+                .create("strict", false)));
+        return catalog.build();
+    }
+}
@@ -0,0 +1,74 @@
+package org.dehydrogenaza.batch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the {@link ICalendarExporter} identifies each calendar by its child, not by its place in the extract.
+ */
+class ICalendarExporterTest {
+    private static final String FIRST = "c-17,2021-05-14,2021-05-15,1,BCG;HBV;DTP";
+    private static final String SECOND = "c-18,2020-11-02,2020-11-02,1,BCG;MenB";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void filesAndUIDsFollowTheChild() throws IOException {
+        Path sorted = directory.resolve("sorted");
+        Path reversed = directory.resolve("reversed");
+        new ICalendarExporter().run(new StringReader(FIRST + "\n" + SECOND + "\n"), sorted);
+        new ICalendarExporter().run(new StringReader("\n" + SECOND + "\n" + FIRST + "\n"), reversed);
+
+        for (String child : new String[]{"c-17", "c-18"}) {
+            List<String> events = withoutStamps(sorted.resolve(child + ".ics"));
+            assertEquals(events, withoutStamps(reversed.resolve(child + ".ics")), child);
+            assertTrue(events.stream().anyMatch(line -> line.startsWith("UID:") && line.contains("-" + child + "@")),
+                    child);
+        }
+        assertFalse(withoutStamps(sorted.resolve("c-17.ics")).equals(withoutStamps(sorted.resolve("c-18.ics"))));
+    }
+
+    @Test
+    void invalidAndRepeatedIDsAreRejected() throws IOException {
+        BatchStats stats = new ICalendarExporter().run(new StringReader(
+                FIRST + "\n"
+                        + "../c-19,2021-05-14,2021-05-15,1,BCG\n"
+                        + ",2021-05-14,2021-05-15,1,BCG\n"
+                        + "c-17,2021-06-01,2021-06-01,1,BCG\n"
+                        + "c-20,2021-05-14,2021-02-30,1,BCG\n"
+                        + "not a row\n"), directory);
+
+        assertEquals(6, stats.getRows());
+        assertEquals(5, stats.getRejectedRows());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(List.of(directory.resolve("c-17.ics")), files.collect(Collectors.toList()));
+        }
+        assertTrue(ICalendarExporter.isValidChildID("A.b_c-1"));
+        assertFalse(ICalendarExporter.isValidChildID(".hidden"));
+        assertFalse(ICalendarExporter.isValidChildID("a/b"));
+    }
+
+    /**
+     * @return
+     *          the lines of an iCalendar file, except the DTSTAMPs, which record the time of the export.
+     */
+    private static List<String> withoutStamps(Path file) throws IOException {
+        return Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+                .filter(line -> !line.startsWith("DTSTAMP:"))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,67 @@
+package org.dehydrogenaza.data;
+
+import org.dehydrogenaza.data.utils.TinyDate;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CalendarCodecTest {
+    private static final String DATE_OF_BIRTH = "2021-05-14";
+
+    @Test
+    void calendarIDSurvivesEncoding() {
+        VaccinationCalendar calendar = new VaccinationCalendar(newForm());
+        String id = calendar.getCalendarID();
+        assertEquals(id, calendar.getCalendarID());
+
+        VaccinationCalendar decoded = CalendarCodec.decode(CalendarCodec.encodeToString(calendar), newForm());
+        assertEquals(id, decoded.getCalendarID());
+        assertEquals(id, CalendarCodec.decode(CalendarCodec.encode(decoded), newForm()).getCalendarID());
+    }
+
+    @Test
+    void twinsGetDifferentIDs() {
+        VaccinationCalendar first = new VaccinationCalendar(newForm());
+        VaccinationCalendar second = new VaccinationCalendar(newForm());
+        assertNotEquals(first.getCalendarID(), second.getCalendarID());
+        assertNotEquals(first.getCalendarID(), first.copy().getCalendarID());
+    }
+
+    @Test
+    void codesWithoutIDAreDecoded() {
+        Form form = newForm();
+        int birthDay = new TinyDate(DATE_OF_BIRTH).toEpochDay();
+        int mask = form.getDataProvider().getSelectionMask();
+        //version 1: scheme "1", date of birth, first vaccination on the same day, selection, no edits
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        code.write(1);
+        code.write(1);
+        code.write('1');
+        writeVarint(code, birthDay << 1);
+        writeVarint(code, 0);
+        writeVarint(code, mask);
+        writeVarint(code, 0);
+
+        VaccinationCalendar decoded = CalendarCodec.decode(code.toByteArray(), form);
+        assertSame(form, decoded.getForm());
+        assertEquals(DATE_OF_BIRTH, form.getDateOfBirth());
+        assertEquals(new VaccinationCalendar(newForm()).get().size(), decoded.get().size());
+        assertNotEquals(0, decoded.getId());
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static Form newForm() {
+        return TestForms.submitted("1", DATE_OF_BIRTH);
+    }
+}
@@ -0,0 +1,125 @@
+package org.dehydrogenaza.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CalendarJournalTest {
+
+    @Test
+    void journalIsRestored() {
+        MemoryStore store = new MemoryStore();
+        CalendarJournal journal = new CalendarJournal(store, 64);
+        VaccinationCalendar calendar = new VaccinationCalendar(TestForms.submitted("1", "2021-05-14"));
+        journal.start(calendar);
+
+        ScheduleForDay date = calendar.get().get(1);
+        Dose dose = date.getDoses().get(0);
+        dose.setTempDate("2021-08-01");
+        calendar.updateDose(date, dose);
+        journal.recordDoseChange(dose, "2021-08-01");
+        Dose removed = calendar.get().get(0).getDoses().get(0);
+        calendar.removeDose(calendar.get().get(0), removed);
+        journal.recordRemoval(removed);
+
+        Form form = new Form(new DataProvider("0"));
+        VaccinationCalendar restored = new CalendarJournal(store, 64).restore(form);
+        assertNotNull(restored);
+        assertSame(form, restored.getForm());
+        assertEquals(calendar.getCalendarID(), restored.getCalendarID());
+        assertEquals(CalendarCodec.encodeToString(calendar), CalendarCodec.encodeToString(restored));
+    }
+
+    @Test
+    void corruptJournalLeavesFormUntouched() {
+        String[][] corruptRecords = {
+                {"M0.0.18800", "T99"},
+                {"S-1"},
+                {"R0"},
+                {""},
+                {"X1"},
+        };
+        for (String[] records : corruptRecords) {
+            MemoryStore store = new MemoryStore();
+            new CalendarJournal(store, 64).start(new VaccinationCalendar(TestForms.submitted("1", "2021-05-14")));
+            for (String record : records) {
+                store.append(record);
+            }
+
+            Form form = TestForms.submitted("0", "2020-01-01");
+            DataProvider dataProvider = form.getDataProvider();
+            int mask = dataProvider.getSelectionMask();
+            VaccineCatalog catalog = dataProvider.getCatalog();
+
+            assertNull(new CalendarJournal(store, 64).restore(form), String.join(",", records));
+            assertEquals("2020-01-01", form.getDateOfBirth());
+            assertEquals("0", dataProvider.getChosenSchemeID());
+            assertSame(catalog, dataProvider.getCatalog());
+            assertEquals(mask, dataProvider.getSelectionMask());
+            assertNull(store.readSnapshot());
+        }
+    }
+
+    @Test
+    void corruptCodeLeavesFormUntouched() {
+        byte[] code = CalendarCodec.encode(new VaccinationCalendar(TestForms.submitted("1", "2021-05-14")));
+        //the last byte of an untouched calendar is its number of edits: add one, of a vaccine that isn't selected
+        byte[] withEdit = Arrays.copyOf(code, code.length + 3);
+        withEdit[code.length - 1] = 1;
+        withEdit[code.length] = 31;
+
+        Form form = TestForms.submitted("0", "2020-01-01");
+        assertThrows(IllegalArgumentException.class, () -> CalendarCodec.decode(withEdit, form));
+        assertEquals("2020-01-01", form.getDateOfBirth());
+        assertEquals("0", form.getDataProvider().getChosenSchemeID());
+
+        CalendarCodec.decode(code, form);
+        assertEquals("2021-05-14", form.getDateOfBirth());
+        assertEquals("1", form.getDataProvider().getChosenSchemeID());
+    }
+
+    private static class MemoryStore implements JournalStore {
+        private String snapshot;
+        private final List<String> records = new ArrayList<>();
+
+        @Override
+        public String readSnapshot() {
+            return snapshot;
+        }
+
+        @Override
+        public String[] readRecords() {
+            return records.toArray(new String[0]);
+        }
+
+        @Override
+        public int size() {
+            return records.size();
+        }
+
+        @Override
+        public void append(String record) {
+            records.add(record);
+        }
+
+        @Override
+        public void replaceSnapshot(String snapshot) {
+            this.snapshot = snapshot;
+            records.clear();
+        }
+
+        @Override
+        public void clear() {
+            snapshot = null;
+            records.clear();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.dehydrogenaza.data;
+
+import org.dehydrogenaza.data.utils.TinyDate;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks which given doses the {@link CatchUpPlanner} counts, and when it plans the remaining ones.
+ */
+class CatchUpPlannerTest {
+    private static final String DATE_OF_BIRTH = "2021-05-14";
+    private static final int START = new TinyDate(DATE_OF_BIRTH).toEpochDay();
+
+    /**
+     * Three doses, 30 days apart, each allowed 10 days either way, and at least 28 days after the previous one.
+     */
+    private static final int SERIES = 0;
+    /**
+     * Two doses, 30 days apart, each allowed 10 days later; started over after a break of more than 90 days.
+     */
+    private static final int RESTARTING = 1;
+
+    private static final VaccineCatalog CATALOG = buildCatalog();
+
+    private final CatchUpPlanner planner = new CatchUpPlanner(0, 0);
+
+    @Test
+    void dosesGivenTooSoonAreIgnored() {
+        start(SERIES, START + 35);
+        planner.addGivenDose("series", START);
+        //only 10 days after the first one: has to be given again
+        planner.addGivenDose("series", START + 10);
+        planner.addGivenDose("series", START + 30);
+        VaccinationCalendar calendar = planner.plan();
+
+        assertEquals(2, planner.getCountedDoses(SERIES));
+        assertEquals(1, planner.getIgnoredDoses());
+        assertFalse(planner.isRestarted(SERIES));
+        assertFalse(planner.isLate(SERIES));
+        assertRemaining(calendar, SERIES, 2, START + 60);
+    }
+
+    @Test
+    void dosesBeyondTheSeriesAreIgnored() {
+        start(RESTARTING, START + 70);
+        planner.addGivenDose("restarting", START);
+        planner.addGivenDose("restarting", START + 30);
+        planner.addGivenDose("restarting", START + 60);
+        VaccinationCalendar calendar = planner.plan();
+
+        assertEquals(2, planner.getCountedDoses(RESTARTING));
+        assertEquals(1, planner.getIgnoredDoses());
+        assertTrue(calendar.get().isEmpty());
+    }
+
+    @Test
+    void aLongBreakRestartsTheSeries() {
+        start(RESTARTING, START + 210);
+        planner.addGivenDose("restarting", START);
+        //200 days later: the first dose no longer counts, this one starts the series over
+        planner.addGivenDose("restarting", START + 200);
+        VaccinationCalendar calendar = planner.plan();
+
+        assertTrue(planner.isRestarted(RESTARTING));
+        assertEquals(1, planner.getCountedDoses(RESTARTING));
+        assertEquals(1, planner.getIgnoredDoses());
+        assertTrue(planner.isLate(RESTARTING));
+        assertRemaining(calendar, RESTARTING, 1, START + 230);
+    }
+
+    @Test
+    void aLongBreakUntilTodayRestartsTheSeries() {
+        start(RESTARTING, START + 100);
+        planner.addGivenDose("restarting", START);
+        VaccinationCalendar calendar = planner.plan();
+
+        assertTrue(planner.isRestarted(RESTARTING));
+        assertEquals(0, planner.getCountedDoses(RESTARTING));
+        assertRemaining(calendar, RESTARTING, 0, START + 100, START + 130);
+    }
+
+    @Test
+    void overdueDosesAreLate() {
+        start(SERIES, START);
+        planner.plan();
+        assertFalse(planner.isLate(SERIES));
+
+        start(SERIES, START + 100);
+        VaccinationCalendar calendar = planner.plan();
+        assertTrue(planner.isLate(SERIES));
+        assertRemaining(calendar, SERIES, 0, START + 100, START + 128, START + 156);
+    }
+
+    @Test
+    void noDoseIsPlannedBeforeToday() {
+        start(SERIES, START + 45);
+        planner.addGivenDose("series", START);
+        VaccinationCalendar calendar = planner.plan();
+
+        //the second dose would be on day 30 (at the latest 40), the third keeps its spacing after it
+        assertRemaining(calendar, SERIES, 1, START + 45, START + 73);
+        assertTrue(planner.isLate(SERIES));
+    }
+
+    @Test
+    void unselectedVaccinesAreIgnored() {
+        start(SERIES, START);
+        assertFalse(planner.addGivenDose("restarting", START));
+        assertFalse(planner.addGivenDose("unknown", START));
+        assertTrue(planner.addGivenDose("series", START));
+    }
+
+    private void start(int vaccine, int today) {
+        DataProvider dataProvider = new DataProvider(() -> CATALOG);
+        for (int v = 0; v < CATALOG.size(); v++) {
+            dataProvider.setSelected(v, v == vaccine);
+        }
+        planner.start(TestForms.submitted(dataProvider, DATE_OF_BIRTH), today);
+    }
+
+    /**
+     * Checks that the only doses in the calendar are the remaining doses of a vaccine, from <code>firstDose</code>
+     * on, on the given days.
+     */
+    private static void assertRemaining(VaccinationCalendar calendar, int vaccine, int firstDose, int... days) {
+        List<Dose> doses = calendar.getDosesOfType(CATALOG.get(vaccine));
+        assertEquals(days.length, doses.size());
+        int count = 0;
+        for (ScheduleForDay date : calendar.get()) {
+            count += date.getDoses().size();
+        }
+        assertEquals(days.length, count);
+        for (int d = 0; d < days.length; d++) {
+            Dose dose = doses.get(d);
+            assertEquals(firstDose + d, dose.getDoseIndex());
+            assertEquals(days[d], calendar.getDateOf(dose).getEpochDay(), "dose " + dose.getDoseIndex());
+            assertEquals(days[d], dose.getDate().toEpochDay());
+        }
+    }
+
+    private static VaccineCatalog buildCatalog() {
+        VaccineCatalog.Builder catalog = new VaccineCatalog.Builder();
+        assertEquals(SERIES, catalog.add(new VaccineType.Builder(catalog)
+                .withDateOffsets(0, 30, 60)
+                .withDoseWindows(new int[]{10, 10, 10}, new int[]{10, 10, 10})
+                .withMinimumIntervals(28, 28)
+                .create("series", true)));
+        assertEquals(RESTARTING, catalog.add(new VaccineType.Builder(catalog)
+                .withDateOffsets(0, 30)
+                .withTolerance(0, 10)
+                .withRestartAfter(90)
+                .create("restarting", true)));
+        return catalog.build();
+    }
+}
@@ -0,0 +1,137 @@
+package org.dehydrogenaza.data;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks how the {@link ScheduleSolver} propagates windows and spacing along a series, and that re-solving only
+ * touches what changed.
+ */
+class ScheduleSolverTest {
+    private static final int START = 1000;
+
+    /**
+     * Three doses, 30 days apart, each allowed 10 days either way, and at least 28 days after the previous one.
+     */
+    private final VaccineType series = new VaccineType.Builder(new VaccineCatalog.Builder())
+            .withDateOffsets(0, 30, 60)
+            .withDoseWindows(new int[]{10, 10, 10}, new int[]{10, 10, 10})
+            .withMinimumIntervals(28, 28)
+            .create("series", true);
+    private final VaccineType single = new VaccineType.Builder(new VaccineCatalog.Builder())
+            .create("single", true);
+
+    @Test
+    void optimalDaysWhenNothingIsPinned() {
+        ScheduleSolver solver = new ScheduleSolver(START, 0, 0);
+        int s = solver.addSeries(series, series.getDateOffsets());
+        assertEquals(1, solver.solve());
+
+        assertDays(solver, s, 1000, 1030, 1060);
+        assertTrue(solver.isFeasible(s));
+        assertEquals(28, solver.getMinimumInterval(s, 1));
+    }
+
+    @Test
+    void aLateDosePushesTheRestForward() {
+        ScheduleSolver solver = new ScheduleSolver(START, 0, 0);
+        int s = solver.addSeries(series, series.getDateOffsets());
+        solver.pin(s, 0, 1010);
+        solver.solve();
+
+        //1010 + 28 is later than the optimal 1030, and 1038 + 28 later than 1060
+        assertEquals(1038, solver.getEarliest(s, 1));
+        assertEquals(1066, solver.getEarliest(s, 2));
+        assertDays(solver, s, 1010, 1038, 1066);
+        assertTrue(solver.isFeasible(s));
+    }
+
+    @Test
+    void anEarlyDosePullsTheRestBackward() {
+        ScheduleSolver solver = new ScheduleSolver(START, 0, 0);
+        int s = solver.addSeries(series, series.getDateOffsets());
+        solver.pin(s, 2, 1050);
+        solver.solve();
+
+        //the first two doses must leave 28 days each before the pinned one
+        assertEquals(1022, solver.getLatest(s, 1));
+        assertEquals(994, solver.getLatest(s, 0));
+        assertDays(solver, s, 994, 1022, 1050);
+        assertTrue(solver.isFeasible(s));
+    }
+
+    @Test
+    void spacingWinsOverWindows() {
+        ScheduleSolver solver = new ScheduleSolver(START, 0, 0);
+        int s = solver.addSeries(series, series.getDateOffsets());
+        solver.pin(s, 0, 1040);
+        solver.solve();
+
+        assertDays(solver, s, 1040, 1068, 1096);
+        assertFalse(solver.isFeasible(s));
+    }
+
+    @Test
+    void unpinningRestoresTheSchedule() {
+        ScheduleSolver solver = new ScheduleSolver(START, 0, 0);
+        int s = solver.addSeries(series, series.getDateOffsets());
+        solver.pin(s, 1, 1025);
+        solver.solve();
+        assertDays(solver, s, 997, 1025, 1060);
+
+        solver.unpin(s, 1);
+        assertEquals(1, solver.solve());
+        assertDays(solver, s, 1000, 1030, 1060);
+    }
+
+    @Test
+    void resolvingTouchesOnlyDirtySeriesAndTheirDependents() {
+        //the single dose may be postponed by up to 3 days
+        ScheduleSolver solver = new ScheduleSolver(START, 0, 3);
+        int a = solver.addSeries(series, series.getDateOffsets());
+        int b = solver.addSeries(series, series.getDateOffsets());
+        int c = solver.addSeries(single, single.getDateOffsets());
+        //c must not share a day with a
+        solver.separate(c, a);
+        assertEquals(3, solver.solve());
+        assertEquals(0, solver.solve());
+        assertNotEquals(solver.getDay(a, 0), solver.getDay(c, 0));
+        assertEquals(1001, solver.getDay(c, 0));
+        assertTrue(solver.isFeasible(c));
+
+        //b has no dependents
+        solver.pin(b, 0, 1005);
+        assertEquals(1, solver.solve());
+
+        //a's days change, so c is solved again, and moves back to its optimal day
+        solver.pin(a, 0, 1004);
+        assertEquals(2, solver.solve());
+        assertEquals(1000, solver.getDay(c, 0));
+
+        //pinned to the day it already has: a's days don't change, so c isn't solved again
+        solver.pin(a, 0, 1004);
+        assertEquals(1, solver.solve());
+    }
+
+    @Test
+    void notBeforeIsAHardLimit() {
+        ScheduleSolver solver = new ScheduleSolver(START, 0, 0);
+        int s = solver.addSeries(series, series.getDateOffsets());
+        solver.setNotBefore(1050);
+        solver.solve();
+
+        assertDays(solver, s, 1050, 1078, 1106);
+        assertFalse(solver.isFeasible(s));
+    }
+
+    private static void assertDays(ScheduleSolver solver, int series, int... days) {
+        assertEquals(days.length, solver.getDoseCount(series));
+        for (int d = 0; d < days.length; d++) {
+            assertEquals(days[d], solver.getDay(series, d), "dose " + d);
+        }
+    }
+}
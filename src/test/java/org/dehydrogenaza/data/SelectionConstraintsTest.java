@@ -0,0 +1,93 @@
+package org.dehydrogenaza.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that every selection reached by (de)selecting vaccines one at a time satisfies the constraints of the
+ * scheme, including exclusions declared only one way.
+ */
+class SelectionConstraintsTest {
+    private static final int A = 0;
+    private static final int B = 1;
+    private static final int C = 2;
+    private static final int D = 3;
+    private static final int E = 4;
+    private static final int F = 5;
+    private static final int COUNT = 6;
+
+    @Test
+    void oneWayExclusionWorksBothWays() {
+        VaccineCatalog catalog = newCatalog();
+        int mask = catalog.resolveSelection(0, A, true);
+        mask = catalog.resolveSelection(mask, B, true);
+        assertEquals(1 << B, mask);
+        mask = catalog.resolveSelection(mask, A, true);
+        assertEquals(1 << A, mask);
+    }
+
+    @Test
+    void exclusionOfRequirementWorksBothWays() {
+        VaccineCatalog catalog = newCatalog();
+        //C requires D, which excludes E; F requires A, which excludes B
+        int mask = catalog.resolveSelection(0, C, true);
+        mask = catalog.resolveSelection(mask, F, true);
+        assertEquals(1 << A | 1 << C | 1 << D | 1 << F, mask);
+        mask = catalog.resolveSelection(mask, E, true);
+        assertEquals(1 << A | 1 << E | 1 << F, mask);
+        mask = catalog.resolveSelection(mask, B, true);
+        assertEquals(1 << B | 1 << E, mask);
+    }
+
+    @Test
+    void everyReachableSelectionIsConsistent() {
+        VaccineCatalog catalog = newCatalog();
+        Random random = new Random(12);
+        int mask = catalog.getDefaultSelectionMask();
+        for (int i = 0; i < 10_000; i++) {
+            int v = random.nextInt(COUNT);
+            mask = catalog.resolveSelection(mask, v, random.nextBoolean());
+            assertTrue(isConsistent(catalog, mask), "inconsistent selection " + Integer.toBinaryString(mask));
+        }
+    }
+
+    @Test
+    void exclusionOfOwnRequirementIsRejected() {
+        VaccineCatalog.Builder builder = new VaccineCatalog.Builder();
+        int a = builder.add(new VaccineType.Builder(builder).withDateOffsets(0).create("A", false));
+        int b = builder.add(new VaccineType.Builder(builder).withDateOffsets(0).create("B", false));
+        builder.requires(a, b).excludes(b, a);
+        assertThrows(IllegalStateException.class, builder::build);
+    }
+
+    /**
+     * @return
+     *          <code>true</code> if selecting any vaccine of the selection again doesn't change it.
+     */
+    private static boolean isConsistent(VaccineCatalog catalog, int mask) {
+        for (int v = 0; v < COUNT; v++) {
+            if ((mask & 1 << v) != 0 && catalog.resolveSelection(mask, v, true) != mask) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static VaccineCatalog newCatalog() {
+        VaccineCatalog.Builder builder = new VaccineCatalog.Builder();
+        for (String name : new String[]{"A", "B", "C", "D", "E", "F"}) {
+            builder.add(new VaccineType.Builder(builder).withDateOffsets(0).create(name, false));
+        }
+        return builder
+                .excludes(A, B)
+                .requires(C, D)
+                .excludes(D, E)
+                .requires(F, A)
+                .build();
+    }
+}
@@ -0,0 +1,43 @@
+package org.dehydrogenaza.data;
+
+import org.dehydrogenaza.data.utils.DisplayState;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Builds the submitted {@link Form}s that the calendar tests start from.
+ */
+public final class TestForms {
+    private TestForms() {
+    }
+
+    /**
+     * @param   schemeID
+     *          the ID of the vaccination scheme, as for {@link DataProvider#DataProvider(String)}.
+     * @param   dateOfBirth
+     *          the child's date of birth, YYYY-MM-DD; also the date of the first vaccination.
+     * @return
+     *          a form that passed validation, with the scheme's default selection and its form data handlers applied,
+     *          ready for a {@link VaccinationCalendar}.
+     */
+    public static Form submitted(String schemeID, String dateOfBirth) {
+        return submitted(new DataProvider(schemeID), dateOfBirth);
+    }
+
+    /**
+     * @param   dataProvider
+     *          the scheme and selection of the form, for example of a catalog built by the test itself.
+     * @param   dateOfBirth
+     *          the child's date of birth, YYYY-MM-DD; also the date of the first vaccination.
+     * @return
+     *          a form that passed validation, with the scheme's form data handlers applied.
+     */
+    public static Form submitted(DataProvider dataProvider, String dateOfBirth) {
+        Form form = new Form(dataProvider);
+        form.setLicenseAccepted(true);
+        form.setDateOfBirth(dateOfBirth);
+        assertSame(DisplayState.CALENDAR, form.submit());
+        form.getDataProvider().applyFormDataHandlers(form);
+        return form;
+    }
+}
@@ -0,0 +1,227 @@
+package org.dehydrogenaza.data;
+
+import org.dehydrogenaza.data.utils.TinyDate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the secondary index of a {@link VaccinationCalendar} (the doses of each {@link VaccineType}, and the
+ * {@link ScheduleForDay} holding each of them) always agrees with its days, whatever way the calendar is edited.
+ */
+class VaccinationCalendarTest {
+    private Form form;
+    private VaccinationCalendar calendar;
+
+    @BeforeEach
+    void setUp() {
+        form = TestForms.submitted("1", "2021-05-14");
+        DataProvider dataProvider = form.getDataProvider();
+        for (int v = 0; v < dataProvider.getCatalog().size(); v++) {
+            dataProvider.setSelected(v, true);
+        }
+        calendar = new VaccinationCalendar(form);
+        assertConsistent();
+    }
+
+    @Test
+    void addAndMoveDoses() {
+        ScheduleForDay date = calendar.get().get(0);
+        Dose dose = date.getDoses().get(0);
+
+        //to a day of its own
+        int newDay = date.getEpochDay() + 1;
+        assertNull(calendar.getDate(newDay));
+        dose.setTempDate(TinyDate.ofEpochDay(newDay).toString());
+        calendar.updateDose(date, dose);
+        assertConsistent();
+        assertNull(calendar.getDateOf(dose));
+        Dose moved = calendar.findDose(dose.getType(), dose.getDoseIndex());
+        assertNotNull(moved);
+        assertEquals(newDay, calendar.getDateOf(moved).getEpochDay());
+
+        //onto a day that's taken
+        ScheduleForDay last = calendar.get().get(calendar.get().size() - 1);
+        moved.setTempDate(last.getDate());
+        calendar.updateDose(calendar.getDateOf(moved), moved);
+        assertConsistent();
+        assertSame(last, calendar.getDateOf(calendar.findDose(dose.getType(), dose.getDoseIndex())));
+    }
+
+    @Test
+    void mergeAndRemoveDays() {
+        List<ScheduleForDay> dates = calendar.get();
+        ScheduleForDay first = dates.get(0);
+        ScheduleForDay second = dates.get(1);
+        int doses = countDoses();
+        List<Dose> merged = new ArrayList<>(second.getDoses());
+
+        //merging: the second day is moved onto the first one, and its doses are dated on it
+        second.setTempDate(first.getDate());
+        calendar.updateDate(second);
+        assertConsistent();
+        assertEquals(doses, countDoses());
+        for (Dose dose : merged) {
+            assertNull(calendar.getDateOf(dose));
+            Dose moved = calendar.findDose(dose.getType(), dose.getDoseIndex());
+            assertSame(first, calendar.getDateOf(moved));
+            assertEquals(first.getDate(), moved.getDate().toString());
+            assertFalse(moved.isSetToNew());
+        }
+
+        //moving a whole day to an empty one
+        ScheduleForDay third = calendar.get().get(1);
+        int newDay = third.getEpochDay() + 1;
+        third.setTempDate(TinyDate.ofEpochDay(newDay).toString());
+        calendar.updateDate(third);
+        assertConsistent();
+        assertSame(third, calendar.getDate(newDay));
+
+        //removing, by clearing the input
+        third.setTempDate("");
+        calendar.updateDate(third);
+        assertConsistent();
+        for (Dose dose : third.getDoses()) {
+            assertNull(calendar.getDateOf(dose));
+        }
+
+        //removing a single dose, and then the rest of its day
+        ScheduleForDay date = calendar.get().get(0);
+        calendar.removeDose(date, date.getDoses().get(0));
+        assertConsistent();
+        calendar.removeDate(date);
+        assertConsistent();
+        assertEquals(doses - third.getDoses().size() - first.getDoses().size() - 1, countDoses());
+    }
+
+    @Test
+    void removeAllOfType() {
+        VaccineCatalog catalog = form.getDataProvider().getCatalog();
+        for (int v = 0; v < catalog.size(); v++) {
+            calendar.removeAllOfType(catalog.get(v));
+            assertConsistent();
+            assertTrue(calendar.getDosesOfType(catalog.get(v)).isEmpty());
+        }
+        assertTrue(calendar.get().isEmpty());
+    }
+
+    @Test
+    void syncSelection() {
+        DataProvider dataProvider = form.getDataProvider();
+        VaccineCatalog catalog = dataProvider.getCatalog();
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            int v = random.nextInt(catalog.size());
+            dataProvider.setSelected(v, !dataProvider.isSelected(v));
+            calendar.syncSelection();
+            assertConsistent();
+            for (int w = 0; w < catalog.size(); w++) {
+                List<Dose> doses = calendar.getDosesOfType(catalog.get(w));
+                assertEquals(dataProvider.isSelected(w) ? dataProvider.getDateOffsets(w).length : 0, doses.size());
+            }
+        }
+    }
+
+    @Test
+    void randomEdits() {
+        Random random = new Random(7);
+        for (int i = 0; i < 500 && !calendar.get().isEmpty(); i++) {
+            List<ScheduleForDay> dates = calendar.get();
+            ScheduleForDay date = dates.get(random.nextInt(dates.size()));
+            int day = dates.get(random.nextInt(dates.size())).getEpochDay() + random.nextInt(3) - 1;
+            switch (random.nextInt(4)) {
+                case 0:
+                    date.setTempDate(TinyDate.ofEpochDay(day).toString());
+                    calendar.updateDate(date);
+                    break;
+                case 1:
+                    Dose dose = date.getDoses().get(random.nextInt(date.getDoses().size()));
+                    dose.setTempDate(TinyDate.ofEpochDay(day).toString());
+                    calendar.updateDose(date, dose);
+                    break;
+                case 2:
+                    calendar.removeDose(date, date.getDoses().get(0));
+                    break;
+                default:
+                    int v = random.nextInt(form.getDataProvider().getCatalog().size());
+                    form.getDataProvider().setSelected(v, !form.getDataProvider().isSelected(v));
+                    calendar.syncSelection();
+            }
+            assertConsistent();
+        }
+    }
+
+    @Test
+    void decodedCalendar() {
+        ScheduleForDay date = calendar.get().get(2);
+        Dose dose = date.getDoses().get(0);
+        dose.setTempDate(TinyDate.ofEpochDay(date.getEpochDay() + 3).toString());
+        calendar.updateDose(date, dose);
+        calendar.removeDose(calendar.get().get(0), calendar.get().get(0).getDoses().get(0));
+
+        byte[] encoded = CalendarCodec.encode(calendar);
+        VaccinationCalendar decoded = CalendarCodec.decode(encoded, form);
+        calendar = decoded;
+        assertConsistent();
+        assertEquals(countDoses(), CalendarCodec.decode(encoded, form).get().stream()
+                .mapToInt(d -> d.getDoses().size()).sum());
+
+        //a decoded calendar can be edited and synced like any other
+        calendar.syncSelection();
+        assertConsistent();
+        form.getDataProvider().setSelected(0, !form.getDataProvider().isSelected(0));
+        calendar.syncSelection();
+        assertConsistent();
+    }
+
+    /**
+     * Checks that every dose of every day is indexed under that day, and that the index holds nothing else.
+     */
+    private void assertConsistent() {
+        List<ScheduleForDay> dates = calendar.get();
+        int doses = 0;
+        int previousDay = Integer.MIN_VALUE;
+        for (ScheduleForDay date : dates) {
+            assertTrue(date.getEpochDay() > previousDay, "days out of order");
+            previousDay = date.getEpochDay();
+            assertSame(date, calendar.getDate(date.getEpochDay()));
+            assertFalse(date.getDoses().isEmpty(), "empty day " + date.getDate());
+            for (Dose dose : date.getDoses()) {
+                assertEquals(date.getEpochDay(), dose.getDate().toEpochDay(), "dose dated on another day");
+                assertSame(date, calendar.getDateOf(dose), "dose indexed under another day");
+                assertSame(dose, calendar.findDose(dose.getType(), dose.getDoseIndex()));
+                doses++;
+            }
+        }
+
+        int indexed = 0;
+        VaccineCatalog catalog = form.getDataProvider().getCatalog();
+        for (int v = 0; v < catalog.size(); v++) {
+            for (Dose dose : calendar.getDosesOfType(catalog.get(v))) {
+                ScheduleForDay date = calendar.getDateOf(dose);
+                assertSame(date, calendar.getDate(date.getEpochDay()), "dose indexed under a removed day");
+                assertTrue(date.getDoses().contains(dose), "dose indexed under a day that doesn't hold it");
+                indexed++;
+            }
+        }
+        assertEquals(doses, indexed);
+    }
+
+    private int countDoses() {
+        int doses = 0;
+        for (ScheduleForDay date : calendar.get()) {
+            doses += date.getDoses().size();
+        }
+        return doses;
+    }
+}
@@ -0,0 +1,238 @@
+package org.dehydrogenaza.data.utils;
+
+import org.dehydrogenaza.data.Dose;
+import org.dehydrogenaza.data.ScheduleForDay;
+import org.dehydrogenaza.data.TestForms;
+import org.dehydrogenaza.data.VaccinationCalendar;
+import org.dehydrogenaza.data.VaccineCatalog;
+import org.dehydrogenaza.data.VaccineType;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the content lines written by the {@link ICalendarWriter}: escaping, folding by UTF-8 octets, and UIDs that
+ * follow the doses when days are merged or doses are moved.
+ */
+class ICalendarWriterTest {
+    /**
+     * The beginning of every SUMMARY line, 21 octets.
+     */
+    private static final String SUMMARY = "SUMMARY:Szczepienie: ";
+
+    @Test
+    void foldsPolishTextAtExactly75Octets() throws IOException {
+        //21 + 27 * 2 octets fill the line exactly
+        String name = repeat("ż", 27) + "ółć";
+        List<String> lines = summaryLines(name);
+
+        assertEquals(Arrays.asList(SUMMARY + repeat("ż", 27), " ółć"), lines);
+        assertEquals(75, octets(lines.get(0)));
+    }
+
+    @Test
+    void neverSplitsAMultiByteCharacter() throws IOException {
+        //one more octet in front, so the last "ż" doesn't fit any more
+        List<String> lines = summaryLines("a" + repeat("ż", 27));
+        assertEquals(Arrays.asList(SUMMARY + "a" + repeat("ż", 26), " ż"), lines);
+        assertEquals(74, octets(lines.get(0)));
+
+        //a 3-octet character that would end at octet 76
+        lines = summaryLines(repeat("a", 52) + "€");
+        assertEquals(Arrays.asList(SUMMARY + repeat("a", 52), " €"), lines);
+        assertEquals(73, octets(lines.get(0)));
+    }
+
+    @Test
+    void countsASurrogatePairAsFourOctets() throws IOException {
+        //ends at octet 75 exactly
+        List<String> lines = summaryLines(repeat("a", 50) + "💉b");
+        assertEquals(Arrays.asList(SUMMARY + repeat("a", 50) + "💉", " b"), lines);
+        assertEquals(75, octets(lines.get(0)));
+
+        //would end at octet 76: the whole pair moves to the next line
+        lines = summaryLines(repeat("a", 51) + "💉");
+        assertEquals(Arrays.asList(SUMMARY + repeat("a", 51), " 💉"), lines);
+        assertEquals(72, octets(lines.get(0)));
+    }
+
+    @Test
+    void escapesTextValues() throws IOException {
+        assertEquals(Collections.singletonList(SUMMARY + "A\\,B\\;C\\\\D"), summaryLines("A,B;C\\D"));
+
+        //an escape sequence is never split by a fold
+        List<String> lines = summaryLines(repeat("a", 53) + ",b");
+        assertEquals(Arrays.asList(SUMMARY + repeat("a", 53), " \\,b"), lines);
+        assertEquals(74, octets(lines.get(0)));
+    }
+
+    @Test
+    void uidsFollowTheDosesOfAMergedDay() throws IOException {
+        VaccinationCalendar calendar = new VaccinationCalendar(TestForms.submitted("1", "2021-05-14"));
+        Map<String, String> before = events(calendar);
+        List<ScheduleForDay> dates = calendar.get();
+        ScheduleForDay first = dates.get(0);
+        ScheduleForDay second = dates.get(1);
+        String firstUID = uidOf(first, before);
+        String secondUID = uidOf(second, before);
+        boolean firstWins = compare(firstDose(first), firstDose(second)) < 0;
+
+        second.setTempDate(first.getDate());
+        calendar.updateDate(second);
+        Map<String, String> after = events(calendar);
+
+        assertEquals(before.size() - 1, after.size());
+        String survivor = firstWins ? firstUID : secondUID;
+        assertEquals(first.getTinyDate().asNumber() + "", after.get(survivor));
+        assertNull(after.get(firstWins ? secondUID : firstUID));
+        //the other days keep their UIDs
+        before.remove(firstUID);
+        before.remove(secondUID);
+        after.remove(survivor);
+        assertEquals(before, after);
+    }
+
+    @Test
+    void uidsFollowAMovedDose() throws IOException {
+        VaccinationCalendar calendar = new VaccinationCalendar(TestForms.submitted("1", "2021-05-14"));
+        ScheduleForDay date = null;
+        for (ScheduleForDay candidate : calendar.get()) {
+            if (candidate.getDoses().size() > 1) {
+                date = candidate;
+                break;
+            }
+        }
+        assertTrue(date != null && calendar.getDate(date.getEpochDay() + 1) == null);
+        Map<String, String> before = events(calendar);
+        String uid = uidOf(date, before);
+        Dose moved = firstDose(date);
+        int newDay = date.getEpochDay() + 1;
+
+        //moving the dose that names the day: its UID goes with it, the day is named after its next dose
+        moved.setTempDate(TinyDate.ofEpochDay(newDay).toString());
+        calendar.updateDose(date, moved);
+        Map<String, String> after = events(calendar);
+
+        assertEquals(before.size() + 1, after.size());
+        assertEquals(TinyDate.ofEpochDay(newDay).asNumber() + "", after.get(uid));
+        String remaining = uidOf(date, after);
+        assertNotEquals(uid, remaining);
+        assertFalse(before.containsKey(remaining));
+        assertEquals(date.getTinyDate().asNumber() + "", after.get(remaining));
+
+        //moving it back merges it into its old day, which takes back the old UID
+        Dose back = calendar.getDate(newDay).getDoses().get(0);
+        back.setTempDate(date.getDate());
+        calendar.updateDose(calendar.getDate(newDay), back);
+        assertEquals(before, events(calendar));
+    }
+
+    /**
+     * @return
+     *          the physical (folded) lines of the SUMMARY of a single-day calendar with one dose of a vaccine named
+     *          <code>name</code>.
+     */
+    private static List<String> summaryLines(String name) throws IOException {
+        VaccineCatalog.Builder catalog = new VaccineCatalog.Builder();
+        VaccineType vaccine = new VaccineType.Builder(catalog).withDisease("gruźlica").create(name, true);
+        ScheduleForDay date = new ScheduleForDay(new TinyDate("2021-05-14"),
+                Collections.singletonList(new Dose(vaccine, new TinyDate("2021-05-14"), 0)));
+
+        StringBuilder out = new StringBuilder();
+        ICalendarWriter.write(Collections.singletonList(date), "c-17", 0, out, false);
+        List<String> lines = Arrays.asList(out.toString().split("\r\n"));
+        for (String line : lines) {
+            assertTrue(octets(line) <= 75, line);
+        }
+        assertTrue(lines.contains("DTSTAMP:19700101T000000Z"));
+
+        int start = 0;
+        while (!lines.get(start).startsWith("SUMMARY:")) {
+            start++;
+        }
+        int end = start + 1;
+        while (lines.get(end).startsWith(" ")) {
+            end++;
+        }
+        return lines.subList(start, end);
+    }
+
+    /**
+     * @return
+     *          the DTSTART (as YYYYMMDD) of every VEVENT of the exported calendar, keyed by UID.
+     */
+    private static Map<String, String> events(VaccinationCalendar calendar) throws IOException {
+        StringBuilder out = new StringBuilder();
+        ICalendarWriter.write(calendar.get(), calendar.getCalendarID(), 0, out, false);
+
+        Map<String, String> events = new HashMap<>();
+        String uid = null;
+        for (String line : out.toString().replace("\r\n ", "").split("\r\n")) {
+            if (line.startsWith("UID:")) {
+                uid = line.substring("UID:".length());
+            } else if (line.startsWith("DTSTART;VALUE=DATE:")) {
+                assertNull(events.put(uid, line.substring("DTSTART;VALUE=DATE:".length())), uid);
+            }
+        }
+        return events;
+    }
+
+    /**
+     * @return
+     *          the UID of the event holding the given day.
+     */
+    private static String uidOf(ScheduleForDay date, Map<String, String> events) {
+        String uid = null;
+        String start = date.getTinyDate().asNumber() + "";
+        for (Map.Entry<String, String> event : events.entrySet()) {
+            if (event.getValue().equals(start)) {
+                assertNull(uid, "two events on " + start);
+                uid = event.getKey();
+            }
+        }
+        return uid;
+    }
+
+    /**
+     * @return
+     *          the dose that names a day in its UID: the lowest vaccine ID, then the lowest dose index.
+     */
+    private static Dose firstDose(ScheduleForDay date) {
+        Dose first = date.getDoses().get(0);
+        for (Dose dose : date.getDoses()) {
+            if (compare(dose, first) < 0) {
+                first = dose;
+            }
+        }
+        return first;
+    }
+
+    private static int compare(Dose d1, Dose d2) {
+        int byType = Integer.compare(d1.getType().getId(), d2.getType().getId());
+        return byType != 0 ? byType : Integer.compare(d1.getDoseIndex(), d2.getDoseIndex());
+    }
+
+    private static int octets(String line) {
+        return line.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static String repeat(String text, int count) {
+        StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            repeated.append(text);
+        }
+        return repeated.toString();
+    }
+}
@@ -0,0 +1,51 @@
+package org.dehydrogenaza.data.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InputValidatorTest {
+
+    @Test
+    void withoutFormAppliesOnlyFixedBounds() {
+        InputValidator validator = InputValidator.WITHOUT_FORM;
+        assertTrue(validator.validateBounds("1900-01-01"));
+        assertTrue(validator.validateBounds("3000-12-31"));
+        assertTrue(validator.validateBounds(""));
+        assertFalse(validator.validateBounds("1899-12-31"));
+        assertFalse(validator.validateBounds("3001-01-01"));
+        assertFalse(validator.validateBounds("2021-02-30"));
+        assertEquals(0, validator.getVersion());
+    }
+
+    @Test
+    void formValidatorStartsOnDateOfBirth() {
+        FormInputValidator validator = new FormInputValidator();
+        int version = validator.getVersion();
+        validator.setDateOfBirth("2021-05-14");
+
+        assertNotEquals(version, validator.getVersion());
+        assertFalse(validator.validateBounds("2021-05-13"));
+        assertTrue(validator.validateBounds("2021-05-14"));
+        assertEquals(2, validator.getEvaluationCount());
+
+        //the shared validator is unaffected
+        assertTrue(InputValidator.WITHOUT_FORM.validateBounds("2021-05-13"));
+    }
+
+    @Test
+    void sameDateOfBirthKeepsVersion() {
+        FormInputValidator validator = new FormInputValidator();
+        validator.setDateOfBirth("2021-05-14");
+        int version = validator.getVersion();
+        validator.setDateOfBirth("2021-05-14");
+        assertEquals(version, validator.getVersion());
+
+        //malformed input removes the lower bound
+        validator.setDateOfBirth("2021-5-1");
+        assertTrue(validator.validateBounds("2000-01-01"));
+    }
+}
@@ -0,0 +1,54 @@
+package org.dehydrogenaza.data.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Checks the constant-time epoch day conversions of {@link TinyDate} against {@link LocalDate}, for every day of the
+ * range the app accepts (see {@link InputValidator}).
+ */
+class TinyDateTest {
+    private static final LocalDate FIRST = LocalDate.of(1900, 1, 1);
+    private static final LocalDate LAST = LocalDate.of(3000, 12, 31);
+
+    @Test
+    void epochDaysMatchLocalDate() {
+        for (LocalDate expected = FIRST; !expected.isAfter(LAST); expected = expected.plusDays(1)) {
+            int epochDay = (int) expected.toEpochDay();
+            String iso = expected.toString();
+
+            TinyDate parsed = new TinyDate(iso);
+            TinyDate fromEpochDay = TinyDate.ofEpochDay(epochDay);
+            if (parsed.toEpochDay() != epochDay
+                    || !fromEpochDay.equals(parsed)
+                    || !fromEpochDay.toString().equals(iso)
+                    || fromEpochDay.asNumber() != Integer.parseInt(iso.replace("-", ""))
+                    || !parsed.addDays(1).equals(TinyDate.ofEpochDay(epochDay + 1))) {
+                fail(iso + ": toEpochDay " + parsed.toEpochDay() + " (expected " + epochDay + "), ofEpochDay "
+                        + fromEpochDay);
+            }
+        }
+    }
+
+    @Test
+    void daysBetweenMatchesLocalDate() {
+        TinyDate first = new TinyDate(FIRST.toString());
+        TinyDate last = new TinyDate(LAST.toString());
+        assertEquals(LAST.toEpochDay() - FIRST.toEpochDay(), first.daysBetween(last));
+        assertEquals(FIRST.toEpochDay() - LAST.toEpochDay(), last.daysBetween(first));
+    }
+
+    @Test
+    void invalidDaysAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TinyDate("1900-02-29"));
+        assertThrows(IllegalArgumentException.class, () -> new TinyDate("2100-02-29"));
+        assertThrows(IllegalArgumentException.class, () -> new TinyDate("2021-04-31"));
+        assertThrows(IllegalArgumentException.class, () -> new TinyDate("2021-13-01"));
+        assertEquals("2000-02-29", new TinyDate("2000-02-29").toString());
+    }
+}
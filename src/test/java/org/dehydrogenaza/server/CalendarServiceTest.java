@@ -0,0 +1,126 @@
+package org.dehydrogenaza.server;
+
+import org.dehydrogenaza.data.DataProvider;
+import org.dehydrogenaza.data.Dose;
+import org.dehydrogenaza.data.ScheduleForDay;
+import org.dehydrogenaza.data.VaccinationCalendar;
+import org.dehydrogenaza.data.VaccineType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Stress test of the {@link CalendarService}: calendars computed by many threads at once, each going through the
+ * requests in its own order, must be identical to the ones computed one by one.
+ */
+class CalendarServiceTest {
+    private static final int THREADS = 8;
+    private static final int REQUESTS = 2_000;
+
+    @Test
+    void parallelResultsMatchSequential() throws Exception {
+        Random random = new Random(7);
+        String[][] requests = new String[REQUESTS][];
+        for (int i = 0; i < REQUESTS; i++) {
+            requests[i] = randomRequest(random);
+        }
+
+        String[] sequential = new String[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            sequential[i] = compute(requests[i]);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<String[]>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                List<Integer> order = new ArrayList<>();
+                for (int i = 0; i < REQUESTS; i++) {
+                    order.add(i);
+                }
+                Collections.shuffle(order, new Random(t));
+                results.add(pool.submit(() -> {
+                    start.await();
+                    String[] computed = new String[REQUESTS];
+                    for (int i : order) {
+                        computed[i] = compute(requests[i]);
+                    }
+                    return computed;
+                }));
+            }
+            start.countDown();
+
+            for (Future<String[]> result : results) {
+                assertArrayEquals(sequential, result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void unknownVaccineIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> CalendarService.compute("2021-05-14", null, "1", new String[]{"XYZ"}));
+        assertThrows(IllegalArgumentException.class,
+                () -> CalendarService.compute("2021-05-14", "2021-05-01", "1", null));
+    }
+
+    @Test
+    void unknownSchemeIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> CalendarService.compute("2021-05-14", null, "7", null));
+    }
+
+    /**
+     * @return
+     *          the date of birth, the date of the first vaccination, the scheme ID and the selected vaccines (joined
+     *          with ';', since the selection is part of the comparison).
+     */
+    private static String[] randomRequest(Random random) {
+        String scheme = random.nextInt(4) == 0 ? "0" : "1";
+        int year = 2000 + random.nextInt(25);
+        int month = 1 + random.nextInt(12);
+        int day = 1 + random.nextInt(28);
+        StringBuilder vaccines = new StringBuilder();
+        for (VaccineType vaccine : new DataProvider(scheme).getCatalog().getVaccines()) {
+            if (random.nextBoolean()) {
+                vaccines.append(vaccines.length() == 0 ? "" : ";").append(vaccine.getName());
+            }
+        }
+        return new String[]{
+                String.format("%d-%02d-%02d", year, month, day),
+                String.format("%d-%02d-%02d", year, month, Math.min(28, day + random.nextInt(5))),
+                scheme,
+                vaccines.toString()};
+    }
+
+    /**
+     * @return
+     *          the calendar of a request, as text: every day with its doses.
+     */
+    private static String compute(String[] request) {
+        String[] vaccines = request[3].isEmpty() ? new String[0] : request[3].split(";");
+        VaccinationCalendar calendar = CalendarService.compute(request[0], request[1], request[2], vaccines);
+        StringBuilder text = new StringBuilder();
+        for (ScheduleForDay date : calendar.get()) {
+            text.append(date.getDate());
+            for (Dose dose : date.getDoses()) {
+                text.append(' ').append(dose.getAltName()).append('#').append(dose.getDoseIndex());
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+}
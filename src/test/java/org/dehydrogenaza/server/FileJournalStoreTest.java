@@ -0,0 +1,72 @@
+package org.dehydrogenaza.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class FileJournalStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsFollowTheirSnapshot() {
+        FileJournalStore store = new FileJournalStore(directory, "calendar");
+        store.replaceSnapshot("first");
+        store.append("A");
+        store.append("B");
+        store.replaceSnapshot("second");
+        store.append("C");
+
+        FileJournalStore reopened = new FileJournalStore(directory, "calendar");
+        assertEquals("second", reopened.readSnapshot());
+        assertArrayEquals(new String[]{"C"}, reopened.readRecords());
+        assertEquals(1, reopened.size());
+    }
+
+    @Test
+    void clearDeletesEveryGeneration() throws IOException {
+        FileJournalStore store = new FileJournalStore(directory, "calendar");
+        store.replaceSnapshot("first");
+        store.append("A");
+        //left behind by an interrupted compaction, and by another calendar
+        writeJournal("calendar.7.journal", "B");
+        writeJournal("calendar-2.1.journal", "C");
+
+        store.clear();
+        assertNull(store.readSnapshot());
+        assertEquals(0, store.readRecords().length);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertArrayEquals(new Object[]{directory.resolve("calendar-2.1.journal")}, files.toArray());
+        }
+
+        store.replaceSnapshot("second");
+        assertEquals(0, store.readRecords().length);
+        assertEquals(0, new FileJournalStore(directory, "calendar").readRecords().length);
+    }
+
+    @Test
+    void staleRecordsAreNotReplayed() throws IOException {
+        //a journal of generation 1, without the snapshot it belonged to
+        writeJournal("calendar.1.journal", "A");
+
+        FileJournalStore store = new FileJournalStore(directory, "calendar");
+        store.replaceSnapshot("first");
+        assertEquals(0, store.readRecords().length);
+        assertEquals(0, store.size());
+        assertEquals(0, new FileJournalStore(directory, "calendar").readRecords().length);
+    }
+
+    private void writeJournal(String fileName, String record) throws IOException {
+        Files.write(directory.resolve(fileName), (record + "\n").getBytes(StandardCharsets.US_ASCII));
+    }
+}